@@ -1,3 +1,47 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
 /**
  *
@@ -9,1452 +53,7931 @@
 
 public class AVLTree {
 
+	private static final IAVLNode EXTERNAL_LEAF = new ExternalLeaf(); // the shared external leaf of all the trees
+	private static final int SNAPSHOT_MAGIC = 0x41564C53; // "AVLS", the start of a snapshot file
+	private static final int SNAPSHOT_HEADER = 16; // the magic number, the log sequence number and the count
+
 	private IAVLNode root; // the tree's field 
 	private IAVLNode max;
 	private IAVLNode min;
+	private int joinRebalances; // the rebalancing operations of the joins of the current batch operation
+	private TreeListener listener; // null when the metrics are off
+	private int[] cacheKeys; // the hot key cache of search, null when it is off
+	private IAVLNode[] cacheNodes; // cacheNodes[i] is the node of cacheKeys[i], or null for an empty slot
+	private int cacheShift; // 32 - log2(the capacity of the cache)
+	private long cacheHits;
+	private long cacheMisses;
+	private boolean fingerSearch; // whether searchNode starts from the finger
+	private IAVLNode finger; // the node searchNode found last, or null
+	private boolean threaded; // whether the nodes keep next and prev links in key order
 
 	/**
 	 *public AVLTree()
 	 *creates empty tree
-	 *contains only root - an external leaf
+	 *contains only root - the shared external leaf
 	 *complexity O(1)
 	 */
 
 	public AVLTree() { // the tree's constructor
-		this.root = new AVLNode();
+		this.root = EXTERNAL_LEAF;
 	}
 
 	/**
-	 * public boolean empty()
+	 * public static AVLTree fromSorted(int[] keys, String[] values)
 	 *
-	 * returns true if and only if the tree is empty
-	 *complexity O(1)
+	 * builds a perfectly balanced tree from keys sorted in increasing order
+	 * and their info, without insert and without rotations.
+	 * precondition: keys are sorted and distinct, keys.length == values.length
+	 * complexity O(n)
 	 */
-	public boolean empty() {
-		return (this.root.getValue() == null); // return true if root is null
+	public static AVLTree fromSorted(int[] keys, String[] values) {
+		return fromSorted(keys, values, false);
 	}
 
 	/**
-	 * public String search(int k)
+	 * public static AVLTree fromSorted(int[] keys, String[] values, boolean parallel)
 	 *
-	 * returns the info of an item with key k if it exists in the tree
-	 * otherwise, returns null
-	 * complexity O(log(n))
+	 * like fromSorted(keys, values), but if parallel the sub trees of large
+	 * inputs are built by different threads of the common fork-join pool.
+	 * complexity O(n)
 	 */
-	public String search(int k)
-	{
-		IAVLNode node=searchNode(k,0);//:we get the node with the key k if it exists
-		if( node == null) {
-			return null;
+	public static AVLTree fromSorted(int[] keys, String[] values, boolean parallel) {
+		if(keys.length != values.length) {
+			throw new IllegalArgumentException("there are " + keys.length + " keys and " + values.length + " values");
 		}
-		if (node.getKey()==k)
-			return node.getValue();
-		return null;	  
+		for(int i = 1; i < keys.length; i++) {
+			if(keys[i - 1] >= keys[i]) {
+				throw new IllegalArgumentException("keys must be sorted and distinct, but keys[" + i + "] = " + keys[i]);
+			}
+		}
+		AVLTree tree = new AVLTree();
+		if(parallel) {
+			tree.root = ForkJoinPool.commonPool().invoke(new BuildTask(tree, keys, values, 0, keys.length));
+		}
+		else {
+			tree.root = tree.buildBalanced(keys, values, 0, keys.length);
+		}
+		tree.min = tree.findMin();
+		tree.max = tree.findMax();
+		return tree;
 	}
+
 	/**
-	 * private IAVLNode searchNode(int k, int addToSize)
+	 * public static AVLTree fromSortedIterator(PrimitiveIterator.OfInt keys, Iterator<String> values)
 	 *
-	 * returns the node with key k if it exists in the tree
-	 * otherwise, returns the node it should be inserted below
-	 * updates the size of the nodes if needed
-	 * complexity O(log(n))
-	 */ 
-	private IAVLNode searchNode(int k, int addToSize) {
-		if(this.root.getValue() == null) {// empty tree
-			return null;
+	 * builds a balanced tree from a stream of keys sorted in increasing order
+	 * and their info, without knowing their number in advance and without insert.
+	 * perfect sub trees are combined like a binary counter - two perfect trees of
+	 * the same rank and the item between them make a perfect tree of the next rank -
+	 * and the O(log(n)) trees that are left at the end are joined.
+	 * precondition: keys are sorted and distinct, and there is an info for every key
+	 * complexity O(n)
+	 */
+	public static AVLTree fromSortedIterator(PrimitiveIterator.OfInt keys, Iterator<String> values) {
+		AVLTree tree = new AVLTree();
+		IAVLNode[] lefts = new IAVLNode[32]; // lefts[h] is a perfect tree of rank h that waits for a right tree of rank h
+		IAVLNode[] separators = new IAVLNode[32]; // separators[h] is the item between lefts[h] and that tree
+		IAVLNode waiting = null; // the last perfect tree that was completed, which waits for its separator
+		int waitingRank = 0;
+		boolean first = true;
+		int lastKey = 0;
+		while(keys.hasNext()) {
+			int k = keys.nextInt();
+			if(!values.hasNext()) {
+				throw new IllegalArgumentException("there is no info for the key " + k);
+			}
+			if(!first && (lastKey >= k)) {
+				throw new IllegalArgumentException("keys must be sorted and distinct, but " + k + " follows " + lastKey);
+			}
+			first = false;
+			lastKey = k;
+			IAVLNode node = tree.new AVLNode(k, values.next());
+			if(waiting != null) {// node separates the waiting tree from the next one
+				lefts[waitingRank] = waiting;
+				separators[waitingRank] = node;
+				waiting = null;
+				continue;
+			}
+			IAVLNode done = tree.linkNode(node, EXTERNAL_LEAF, EXTERNAL_LEAF);
+			int rank = 0;
+			while(separators[rank] != null) {// carry, like in a binary counter
+				done = tree.linkNode(separators[rank], lefts[rank], done);
+				separators[rank] = null;
+				lefts[rank] = null;
+				rank++;
+			}
+			waiting = done;
+			waitingRank = rank;
 		}
-		IAVLNode currNode = this.root;
-		while((currNode.getKey()!= -1) ){
-			currNode.setSize(currNode.getSize() + addToSize);
-
-			if( currNode.getKey() == k) {
-				return currNode;
+		if(values.hasNext()) {
+			throw new IllegalArgumentException("there are more values than keys");
+		}
+		if(waiting != null) {
+			tree.root = waiting;
+		}
+		for(int rank = 0; rank < separators.length; rank++) {// join the trees that are left, the smallest first
+			if(separators[rank] != null) {
+				AVLTree left = new AVLTree();
+				left.root = lefts[rank];
+				left.joinSetMinMax(separators[rank], tree, false);
+				tree = left;
 			}
-			else {
-				if(k<currNode.getKey()) {
-					currNode=currNode.getLeft();
+		}
+		tree.min = tree.findMin();
+		tree.max = tree.findMax();
+		return tree;
+	}
+
+	/**
+	 * public void writeSnapshot(Path path)
+	 *
+	 * writes the items of the tree to the file path in increasing order of keys:
+	 * a 4 byte magic number, an 8 byte log sequence number (0 here, see
+	 * LoggedAVLTree.checkpoint) and the number of items, then for every item its key
+	 * as a varint (the first zigzag coded, the rest as the difference from the key
+	 * before) and its info as a varint of the UTF-8 length + 1 (0 for null) and the
+	 * bytes, then a CRC32 of everything before it.
+	 * the file is written beside path and moved over it when it is on the disk,
+	 * so a crash leaves the old snapshot or the new one.
+	 * complexity O(n)
+	 */
+	public void writeSnapshot(Path path) throws IOException {
+		writeSnapshot(path, 0);
+	}
+
+	/**
+	 * private void writeSnapshot(Path path, long sequence)
+	 *
+	 * writes the snapshot like writeSnapshot(path), with the number of the last
+	 * log record whose operation is in the tree
+	 * complexity O(n)
+	 */
+	private void writeSnapshot(Path path, long sequence) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			CheckedOutputStream out = new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+			writeSnapshotInt(out, SNAPSHOT_MAGIC);
+			writeSnapshotInt(out, (int)(sequence >>> 32));
+			writeSnapshotInt(out, (int)sequence);
+			writeSnapshotInt(out, size());
+			long lastKey = 0;
+			for(IAVLNode node = this.min; node != null; node = successor(node)) {
+				int key = node.getKey();
+				if(node == this.min) {
+					writeVarint(out, ((key << 1) ^ (key >> 31)) & 0xFFFFFFFFL);// zigzag, so small negative keys are short
 				}
 				else {
-					currNode=currNode.getRight();  
+					writeVarint(out, key - lastKey);
 				}
-			}	  
-		}	  
-		return currNode.getParent(); 
+				lastKey = key;
+				String value = node.getValue();
+				if(value == null) {
+					writeVarint(out, 0);
+				}
+				else {
+					byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+					writeVarint(out, bytes.length + 1L);
+					out.write(bytes);
+				}
+			}
+			writeSnapshotInt(out, (int)out.getChecksum().getValue());
+			out.flush();
+			channel.force(true);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 	}
 
 	/**
+	 * public static AVLTree readSnapshot(Path path)
 	 *
-	 * private void rightRotation(IAVLNode x, IAVLNode y)
-	 *
-	 * right rotation between the nodes x and y
-	 * complexity O(1)
-	 *
+	 * reads a tree written by writeSnapshot. the file is mapped and checked against its
+	 * CRC32, and the tree is built straight from the decoded items, perfectly balanced
+	 * and without insert.
+	 * throws IOException if the file is not a whole snapshot
+	 * complexity O(n)
 	 */
-	private void rightRotation(IAVLNode x, IAVLNode y) {// x is the parent , y is the son
-		// rotation
-		IAVLNode parent = x.getParent();
-		y.setParent(parent);
-		x.setLeft(y.getRight());
-		y.getRight().setParent(x);
-		y.setRight(x);
-		x.setParent(y);
-
-		if(y.getParent() == null) {
-			this.root = y;
+	public static AVLTree readSnapshot(Path path) throws IOException {
+		MappedByteBuffer in;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("the snapshot " + path + " is larger than 2GB");
+			}
+			if(channel.size() < SNAPSHOT_HEADER + 4) {
+				throw new IOException("the snapshot " + path + " is truncated");
+			}
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
 		}
-		else {
-			if(parent.getKey() > x.getKey()) {
-				parent.setLeft(y);
+		int end = in.limit() - 4;
+		CRC32 crc = new CRC32();
+		ByteBuffer body = in.duplicate();
+		body.limit(end);
+		crc.update(body);
+		if((in.getInt(0) != SNAPSHOT_MAGIC) || ((int)crc.getValue() != in.getInt(end))) {
+			throw new IOException("the snapshot " + path + " is corrupt");
 		}
-			else {
-				parent.setRight(y);
+		in.position(SNAPSHOT_HEADER - 4);
+		in.limit(end);
+		int count = in.getInt();
+		if((count < 0) || (count > end)) {// every item takes at least two bytes
+			throw new IOException("the snapshot " + path + " is corrupt");
+		}
+		int[] keys = new int[count];
+		String[] values = new String[count];
+		try {
+			long key = 0;
+			for(int i = 0; i < count; i++) {
+				long code = readVarint(in);
+				key = (i == 0) ? ((code >>> 1) ^ -(code & 1)) : (key + code);
+				if(((i > 0) && (code == 0)) || (key > Integer.MAX_VALUE) || (key < Integer.MIN_VALUE)) {
+					throw new IOException("the snapshot " + path + " has keys out of order");
+				}
+				keys[i] = (int)key;
+				long length = readVarint(in) - 1;
+				if(length >= 0) {
+					byte[] bytes = new byte[(int)length];
+					in.get(bytes);
+					values[i] = new String(bytes, StandardCharsets.UTF_8);
+				}
 			}
-		// updating the size
 		}
-		x.setSize(x.getLeft().getSize() + x.getRight().getSize() +1);
-		y.setSize(x.getSize() + y.getLeft().getSize() +1);	
+		catch(BufferUnderflowException | NegativeArraySizeException e) {
+			throw new IOException("the snapshot " + path + " is corrupt", e);
+		}
+		AVLTree tree = new AVLTree();
+		tree.setRootAfterBatch(tree.buildBalanced(keys, values, 0, count));
+		return tree;
 	}
+
 	/**
-	 * private void leftRotation(IAVLNode y, IAVLNode x)
+	 * private static long readSnapshotSequence(Path path)
 	 *
-	 * left rotation between the nodes y and x
+	 * returns the log sequence number in the header of a snapshot that readSnapshot
+	 * accepted
 	 * complexity O(1)
-	 *
 	 */
-	private void leftRotation(IAVLNode y, IAVLNode x) {//y is the parent , x is the son
-		// rotation
-		IAVLNode parent = y.getParent();
-		x.setParent(parent);
-		y.setRight(x.getLeft());
-		x.getLeft().setParent(y);
-		x.setLeft(y);
-		y.setParent(x);
-
-		if(x.getParent() == null) {
-			this.root = x;
-		}
-		else {
-			if(parent.getKey() < x.getKey()) {	
-			parent.setRight(x);
+	private static long readSnapshotSequence(Path path) throws IOException {
+		try(DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+			in.readInt();// the magic number
+			return in.readLong();
 		}
-			else {
-				parent.setLeft(x);
-			}
-		// update the size
+		catch(EOFException e) {
+			throw new IOException("the snapshot " + path + " is truncated", e);
 		}
-		y.setSize(y.getLeft().getSize() + y.getRight().getSize() + 1);
-		x.setSize(y.getSize() + x.getRight().getSize() + 1);
 	}
-	
+
+	private static void writeSnapshotInt(OutputStream out, int value) throws IOException {
+		out.write(value >>> 24);
+		out.write(value >>> 16);
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
 	/**
+	 * private static void writeVarint(OutputStream out, long value)
 	 *
-	 * private void promote(IAVLNode node)
-	 *
-	 * promote the node's rank by 1
+	 * writes a non negative value 7 bits at a time, the lowest first,
+	 * with the high bit of every byte but the last set
 	 * complexity O(1)
-	 *
 	 */
-	private void promote(IAVLNode node) {
-		node.setHeight(node.getHeight()+1);
+	private static void writeVarint(OutputStream out, long value) throws IOException {
+		while(value >= 0x80) {
+			out.write((int)(value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+
+	private static long readVarint(ByteBuffer in) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			if(b >= 0) {
+				return value;
+			}
+		}
+		throw new IOException("a varint of the snapshot is too long");
 	}
 
 	/**
+	 * private IAVLNode buildBalanced(int[] keys, String[] values, int from, int to)
 	 *
-	 * private void demote(IAVLNode node)
+	 * builds a perfectly balanced sub tree from keys[from..to) and values[from..to).
+	 * returns its root, or the external leaf if the range is empty
+	 * complexity O(to - from)
+	 */
+	private IAVLNode buildBalanced(int[] keys, String[] values, int from, int to) {
+		if(from >= to) {
+			return EXTERNAL_LEAF;
+		}
+		int middle = (from + to) >>> 1;
+		IAVLNode left = buildBalanced(keys, values, from, middle);
+		IAVLNode right = buildBalanced(keys, values, middle + 1, to);
+		return linkNode(new AVLNode(keys[middle], values[middle]), left, right);
+	}
+
+	/**
+	 * private IAVLNode linkNode(IAVLNode node, IAVLNode left, IAVLNode right)
 	 *
-	 * decrease the node's rank by 1
+	 * makes left and right the sons of node and sets its rank and size.
+	 * returns node
+	 * precondition: the ranks of left and right differ by at most 1
 	 * complexity O(1)
-	 *
 	 */
-	private void demote(IAVLNode node) {
-		node.setHeight(node.getHeight()-1);
+	private IAVLNode linkNode(IAVLNode node, IAVLNode left, IAVLNode right) {
+		node.setLeft(left);
+		node.setRight(right);
+		if(left.isRealNode()) {
+			left.setParent(node);
+		}
+		if(right.isRealNode()) {
+			right.setParent(node);
+		}
+		node.setHeight(Math.max(left.getHeight(), right.getHeight()) + 1);
+		node.setSize(left.getSize() + right.getSize() + 1);
+		return node;
 	}
 
 	/**
-	 * private int rebalanceInsertion(IAVLNode node)
-	 *
-	 * Rebalance the tree after insertion according to the cases we saw in class
-	 * complexity O(log(n))
+	 * private static class BuildTask
 	 *
+	 * builds the sub tree of a range of sorted keys, forking the two halves
+	 * while the range is large enough to be worth another thread.
 	 */
-	private int rebalanceInsertion(IAVLNode node) {
-		int cnt =0;
-		while(node != null) {
-			int deltaRankRight = node.getHeight()-node.getRight().getHeight();// delta rank between node and its right son
-			int deltaRankLeft = node.getHeight()-node.getLeft().getHeight(); // delta rank between node and its left son
-			// the node is 0-1 or 1-0 node
-			if (((deltaRankRight==0)&&(deltaRankLeft==1))||(((deltaRankRight==1)&&(deltaRankLeft==0)))) {//
-				promote(node);
-				cnt++;
-			}
-			// case 0,2
-			if ((deltaRankRight==2)&&(deltaRankLeft==0)){
-				int deltaLeftSonRight=node.getLeft().getHeight()-node.getLeft().getRight().getHeight();// delta rank between left son and his right son
-				int deltaLeftSonLeft=node.getLeft().getHeight()-node.getLeft().getLeft().getHeight();// delta rank between left son and his left son
-				// 0-2 node and it's son is 1-2 node
-				if(((deltaLeftSonRight==2)&&(deltaLeftSonLeft==1))) {
-					case02And12Rebalance(node);
-					cnt += 2 ;// rotation and demote
-				}
-				// 0-2 node and it's son is 2-1 node
-				if((deltaLeftSonRight==1)&&(deltaLeftSonLeft==2)) {
-					case02And21Rebalance(node);
-					cnt+=5; // double rotation , 2 demotes,  1 promote
-				}
-				if((deltaLeftSonRight==1)&&(deltaLeftSonLeft==1)) {
-					case02And11Rebalance(node);
-					cnt += 2;					
-				}
-			}
-			//case 2,0
-			if((deltaRankRight==0)&&(deltaRankLeft==2)) {
-				int deltaRightSonleft=node.getRight().getHeight()-node.getRight().getLeft().getHeight();// delta rank between right son and his left son
-				int deltaRightSonRight=node.getRight().getHeight()-node.getRight().getRight().getHeight(); // delta rank between right son and his right son
-				// 2-0 node and his son is 2-1 node
-				if(( deltaRightSonleft==1)&& (deltaRightSonRight==2)) {
-					case20And21Rebalance(node);
-					cnt += 5;	//: 2*1rotataion + 2*1demote + 1promote
-				}
-				// 2-0 node and it's son is 1-2 node
-				if(( deltaRightSonleft==2)&& (deltaRightSonRight==1)) {
-					case20And12Rebalance(node);
-					cnt += 2; //: 2*2rotataions + 1*2demotes + 1*1promotion			  
-				}
-				if(( deltaRightSonleft==1)&& (deltaRightSonRight==1)) {
-					case20And11Rebalance(node);
-					cnt += 2;
-				}
+	private static class BuildTask extends RecursiveTask<IAVLNode> {
+		private static final long serialVersionUID = 1L;
+		private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+		private final AVLTree tree;
+		private final int[] keys;
+		private final String[] values;
+		private final int from;
+		private final int to;
+
+		private BuildTask(AVLTree tree, int[] keys, String[] values, int from, int to) {
+			this.tree = tree;
+			this.keys = keys;
+			this.values = values;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected IAVLNode compute() {
+			if(to - from <= SEQUENTIAL_THRESHOLD) {
+				return tree.buildBalanced(keys, values, from, to);
 			}
-			node = node.getParent();
-		} 
-		return cnt;
+			int middle = (from + to) >>> 1;
+			BuildTask left = new BuildTask(tree, keys, values, from, middle);
+			left.fork();
+			IAVLNode right = new BuildTask(tree, keys, values, middle + 1, to).compute();
+			return tree.linkNode(tree.new AVLNode(keys[middle], values[middle]), left.join(), right);
+		}
 	}
-	
+
 	/**
-	 * private void case02And11Rebalance(IAVLNode node) 
+	 * public static AVLTree union(AVLTree a, AVLTree b, BinaryOperator<String> merge)
 	 *
-	 * rebalance the case: 0-2 node and it's son is 1-1 node.
-	 * complexity O(1).
+	 * returns a tree of the items of a and b. the info of a key that is in both
+	 * is merge.apply(info in a, info in b).
+	 * the nodes of a and b are reused, so both are empty afterwards.
+	 * precondition: a != b
+	 * complexity O(m log(n/m + 1)) for m <= n the sizes of the trees
 	 */
-	private void case02And11Rebalance(IAVLNode node) {
-		IAVLNode tempLeftNode = node.getLeft();
-		rightRotation(node, node.getLeft());
-		promote(tempLeftNode);		
+	public static AVLTree union(AVLTree a, AVLTree b, BinaryOperator<String> merge) {
+		return combine(SetOperation.UNION, a, b, merge, false);
 	}
+
 	/**
-	 * private void case20And11Rebalance(IAVLNode node) 
-	 * 
-	 * rebalance the case: 2-0 node and it's son is 1-1 node.
-	 * complexity O(1).
+	 * public static AVLTree union(AVLTree a, AVLTree b, BinaryOperator<String> merge, boolean parallel)
+	 *
+	 * like union(a, b, merge), but if parallel the two sides of large inputs are
+	 * combined by different threads of the common fork-join pool.
+	 * complexity O(m log(n/m + 1))
 	 */
-	private void case20And11Rebalance(IAVLNode node) {
-		IAVLNode tempLeftNode = node.getRight();
-		leftRotation(node, node.getRight());
-		promote(tempLeftNode);		
+	public static AVLTree union(AVLTree a, AVLTree b, BinaryOperator<String> merge, boolean parallel) {
+		return combine(SetOperation.UNION, a, b, merge, parallel);
 	}
-	
+
 	/**
-	 * private void case02And12Rebalance(IAVLNode node) 
-	 * 
-	 * rebalance the case: 0-2 node and it's son is 1-2 node.
-	 * complexity O(1).
+	 * public static AVLTree intersect(AVLTree a, AVLTree b, BinaryOperator<String> merge)
+	 *
+	 * returns a tree of the keys that are in both a and b, with the info
+	 * merge.apply(info in a, info in b).
+	 * the nodes of a and b are reused, so both are empty afterwards.
+	 * precondition: a != b
+	 * complexity O(m log(n/m + 1)) for m <= n the sizes of the trees
 	 */
-	private void case02And12Rebalance(IAVLNode node) {
-		rightRotation(node,node.getLeft());
-		demote(node);
+	public static AVLTree intersect(AVLTree a, AVLTree b, BinaryOperator<String> merge) {
+		return combine(SetOperation.INTERSECTION, a, b, merge, false);
 	}
-	
+
 	/**
-	 * private void case02And21Rebalance(IAVLNode node) 
-	 * 
-	 * rebalance the case: 0-2 node and it's son is 2-1 node.
-	 * complexity O(1).
+	 * public static AVLTree intersect(AVLTree a, AVLTree b, BinaryOperator<String> merge, boolean parallel)
+	 *
+	 * like intersect(a, b, merge), but if parallel the two sides of large inputs are
+	 * combined by different threads of the common fork-join pool.
+	 * complexity O(m log(n/m + 1))
 	 */
-	private void case02And21Rebalance(IAVLNode node) {
-		leftRotation(node.getLeft(),node.getLeft().getRight());
-		rightRotation(node,node.getLeft());
-		demote(node);
-		demote(node.getParent().getLeft());
-		promote(node.getParent());
+	public static AVLTree intersect(AVLTree a, AVLTree b, BinaryOperator<String> merge, boolean parallel) {
+		return combine(SetOperation.INTERSECTION, a, b, merge, parallel);
 	}
 
 	/**
-	 * private void case20And21Rebalance(IAVLNode node) 
-	 * 
-	 * rebalance the case: 2-0 node and it's son is 2-1 node.
-	 * complexity O(1).
+	 * public static AVLTree difference(AVLTree a, AVLTree b)
+	 *
+	 * returns a tree of the items of a whose keys are not in b.
+	 * the nodes of a and b are reused, so both are empty afterwards.
+	 * precondition: a != b
+	 * complexity O(m log(n/m + 1)) for m <= n the sizes of the trees
 	 */
-	private void case20And21Rebalance(IAVLNode node) {
-		rightRotation(node.getRight(),node.getRight().getLeft());
-		leftRotation(node,node.getRight());
-		demote(node);
-		demote(node.getParent().getRight());
-		promote(node.getParent());
+	public static AVLTree difference(AVLTree a, AVLTree b) {
+		return combine(SetOperation.DIFFERENCE, a, b, null, false);
 	}
+
 	/**
-	 * private void case20And12Rebalance(IAVLNode node) 
-	 * 
-	 * rebalance the case: 2-0 node and it's son is 1-2 node.
-	 * complexity O(1).
+	 * public static AVLTree difference(AVLTree a, AVLTree b, boolean parallel)
+	 *
+	 * like difference(a, b), but if parallel the two sides of large inputs are
+	 * combined by different threads of the common fork-join pool.
+	 * complexity O(m log(n/m + 1))
 	 */
-	private void case20And12Rebalance(IAVLNode node) {
-		leftRotation(node,node.getRight());
-		demote(node);
+	public static AVLTree difference(AVLTree a, AVLTree b, boolean parallel) {
+		return combine(SetOperation.DIFFERENCE, a, b, null, parallel);
 	}
 
-
 	/**
-	 * public int insert(int k, String i)
+	 * private static AVLTree combine(SetOperation operation, AVLTree a, AVLTree b, BinaryOperator<String> merge, boolean parallel)
 	 *
-	 * inserts an item with key k and info i to the AVL tree.
-	 * the tree must remain valid (keep its invariants).
-	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
-	 * returns -1 if an item with key k already exists in the tree.
-	 * complexity O(log(n)).
+	 * runs the set operation on the roots of a and b and empties a and b.
+	 * if a is threaded, so is the result, and b is threaded first if it is not.
+	 * complexity O(m log(n/m + 1)), and O(|b|) more if b has to be threaded
 	 */
-	public int insert(int k, String i) {
-		int numOfRebalanceOpp= 0 ;
-		IAVLNode node = createLeaf(k,i);
-		if(this.root.getValue() == null) {// empty tree
-			this.root = node;
-			this.max = node;
-			this.min = node;
-			return 0;
+	private static AVLTree combine(SetOperation operation, AVLTree a, AVLTree b, BinaryOperator<String> merge, boolean parallel) {
+		if(a == b) {
+			throw new IllegalArgumentException("a tree cannot be combined with itself");
 		}
-		else {// the tree was not empty
-			if ((this.min!=null) && (k<this.min.getKey()) ){// update the min pointer
-				this.min = node;
-			}
-			if((this.max!=null)&&(k>this.max.getKey())) { // update the max pointer
-				this.max = node;
-			}
-			if( search(k) == null) { // tree is not empty and node does not exist
-				IAVLNode parentNode = searchNode(k,1);
-				if(parentNode.getKey()> k) {		
-					parentNode.setLeft(node);	
-					node.setParent(parentNode);	
-					numOfRebalanceOpp = rebalanceInsertion(parentNode);		  	
-				}else {
-					parentNode.setRight(node);		 
-					node.setParent(parentNode);
-					numOfRebalanceOpp = rebalanceInsertion(parentNode);
-				}
-				return numOfRebalanceOpp;
-			}
-			else {
-				return -1;
-			} 
-		} 
+		AVLTree tree = new AVLTree();
+		tree.listener = a.listener;
+		tree.threaded = a.threaded;
+		if(tree.threaded) {// the sub trees of b are kept whole, with their links
+			b.setThreaded(true);
+		}
+		IAVLNode result;
+		if(parallel) {
+			result = ForkJoinPool.commonPool().invoke(new SetTask(operation, a.root, b.root, merge, tree.threaded));
+		}
+		else {
+			result = tree.combineNodes(operation, a.root, b.root, merge);
+		}
+		a.clear();
+		b.clear();
+		tree.setRootAfterBatch(result);
+		return tree;
 	}
+
 	/**
-	 * private IAVLNode createLeaf(int k, String val) 
-	 * 
-	 * create a new node and set it's right an left sons to be an external leaf.
-	 * complexity O(1).
+	 * private IAVLNode combineNodes(SetOperation operation, IAVLNode a, IAVLNode b, BinaryOperator<String> merge)
+	 *
+	 * runs the set operation on the sub trees of a and b by divide and conquer:
+	 * b is split by the key of a, the sides of a are combined with the sides of b,
+	 * and the results are joined back with or without the key of a.
+	 * returns the root of the result
+	 * complexity O(m log(n/m + 1))
 	 */
-	private IAVLNode createLeaf(int k, String val) {// create a leaf node
-	
-		AVLNode rightExternalLeaf = new AVLNode();
-		AVLNode leftExternalLeaf = new AVLNode();
-		IAVLNode node= new AVLNode(k,val);
-		node.setLeft(leftExternalLeaf);
-		rightExternalLeaf.setParent(node);
-		node.setRight(rightExternalLeaf);
-		leftExternalLeaf.setParent(node);
-		return node;
+	private IAVLNode combineNodes(SetOperation operation, IAVLNode a, IAVLNode b, BinaryOperator<String> merge) {
+		if(!a.isRealNode() || !b.isRealNode()) {
+			return combineWithEmpty(operation, a, b);
+		}
+		IAVLNode aLeft = a.getLeft();
+		IAVLNode aRight = a.getRight();
+		IAVLNode[] parts = splitNodes(b, a.getKey());
+		IAVLNode left = combineNodes(operation, aLeft, parts[0], merge);
+		IAVLNode right = combineNodes(operation, aRight, parts[2], merge);
+		return joinCombined(operation, left, a, parts[1], right, merge);
 	}
 
+	/**
+	 * private static IAVLNode combineWithEmpty(SetOperation operation, IAVLNode a, IAVLNode b)
+	 *
+	 * returns the result of the set operation when a or b is an empty sub tree
+	 * complexity O(1)
+	 */
+	private static IAVLNode combineWithEmpty(SetOperation operation, IAVLNode a, IAVLNode b) {
+		switch(operation) {
+			case UNION:
+				return a.isRealNode() ? a : b;
+			case INTERSECTION:
+				return EXTERNAL_LEAF;
+			default:
+				return a;
+		}
+	}
 
 	/**
-	 * public int delete(int k)
+	 * private IAVLNode joinCombined(SetOperation operation, IAVLNode left, IAVLNode node, IAVLNode match, IAVLNode right, BinaryOperator<String> merge)
 	 *
-	 * deletes an item with key k from the binary tree, if it is there;
-	 * the tree must remain valid (keep its invariants).
-	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
-	 * returns -1 if an item with key k was not found in the tree.
-	 * updates the min and max fields 
+	 * joins the combined sides, with node between them if the set operation keeps
+	 * its key. match is the node of b with the same key, or null.
 	 * complexity O(log(n))
 	 */
-	public int delete(int k)
-	{
-		int numOfRebalance = 0;
-		if(this.root.getValue() == null) {
-			return -1;
-		}		
-		if(search(k) != null) {// node exsit in tree;
-			IAVLNode deleteNode = searchNode(k,-1);// return the node and changes nodes' size
-			IAVLNode deleteParent = deleteNode.getParent();		
-			if(isLeaf(deleteNode)) {// node is leaf				
-				deleteLeaf(deleteNode);
-				numOfRebalance = rebalanceDeletion(deleteParent);
-			}
-			else {				
-				if(isUnary(deleteNode)) {// node is unary
-					deleteUnary(deleteNode);
-					numOfRebalance = rebalanceDeletion(deleteParent);
-			}
-				else {// node has two sons
-					IAVLNode deleteSuccessor = successor(deleteNode, -1);// find successor and update the nodes' size
-					switchSuccessor(deleteNode, deleteSuccessor);
-					deleteSuccessor.setSize(deleteSuccessor.getLeft().getSize() + deleteSuccessor.getRight().getSize() + 1);
-					deleteParent = deleteNode.getParent();
-					if(isLeaf(deleteNode)) {
-						deleteLeaf(deleteNode);
-						numOfRebalance = rebalanceDeletion(deleteParent);
-					}
-					else {
-						deleteUnary(deleteNode);
-						numOfRebalance = rebalanceDeletion(deleteParent);
-					}
-				}
-			}
+	private IAVLNode joinCombined(SetOperation operation, IAVLNode left, IAVLNode node, IAVLNode match, IAVLNode right, BinaryOperator<String> merge) {
+		boolean keep = (operation == SetOperation.UNION) || ((operation == SetOperation.INTERSECTION) == (match != null));
+		if(!keep) {
+			return joinSeams(left, null, right);
 		}
-		if(this.root==null) {
-			this.root=new AVLNode();
+		if(match != null) {
+			node = new AVLNode(node.getKey(), merge.apply(node.getValue(), match.getValue()));
 		}
-		this.min = this.findMin();
-		this.max = this.findMax();
-		return numOfRebalance;
+		return joinSeams(left, node, right);
 	}
+
 	/**
-	 * private void switchSuccessorNotRightSon(IAVLNode node, IAVLNode successor) 
-		
-	 * switchig between a node and it's successor, when the node.getRight() != successor
-	 * complexity O(1).
+	 * private void clear()
+	 *
+	 * makes the tree empty, without touching its nodes
+	 * complexity O(1)
 	 */
-	private void switchSuccessorNotRightSon(IAVLNode node, IAVLNode successor) {
-		int tempHeight = node.getHeight();
-		IAVLNode tempParent = successor.getParent();// parent of the successor node
-		IAVLNode tempSuccessorRight1 = successor.getRight();
-		IAVLNode tempSuccessorLeft1 = successor.getLeft();
-		if(node.getParent() == null) {//  node is root
-			this.root = successor;// update the tree root
-			successor.setParent(node.getParent());	
+	private void clear() {
+		invalidateCache();
+		this.finger = null;
+		this.root = EXTERNAL_LEAF;
+		this.min = null;
+		this.max = null;
 	}
-		else {// node is not root
-			successor.setParent(node.getParent());
-			if (node.getParent().getKey() > node.getKey()) {// node is left son
-				node.getParent().setLeft(successor);		
-			}
-			else {
-				node.getParent().setRight(successor);
-			}
-		}// updating the pointers of the successor's left and right son:
-		successor.setRight(node.getRight());
-		successor.setLeft(node.getLeft());
-		successor.getLeft().setParent(successor);
-		successor.getRight().setParent(successor);
-		tempParent.setLeft(node);// updating successor's left son pointer
-		// updating the pointers of the node's left son, right son and parent:
-		node.setRight(tempSuccessorRight1);
-		node.setLeft(tempSuccessorLeft1);
-		node.getRight().setParent(node);
-		node.getLeft().setParent(node);
-		node.setParent(tempParent);
-		successor.setHeight(tempHeight);
+
+	/**
+	 * private enum SetOperation
+	 *
+	 * the set operations of union, intersect and difference.
+	 */
+	private enum SetOperation {
+		UNION, INTERSECTION, DIFFERENCE
 	}
-	
-	
+
 	/**
-	 * private void switchSuccessorNotRightSon(IAVLNode node, IAVLNode successor) 
-		
-	 * switchig between a node and it's successor, when the node.getRight() == successor
-	 * complexity O(1).
+	 * private static class SetTask
+	 *
+	 * runs a set operation on two sub trees, forking the left sides while the
+	 * sub trees are large enough to be worth another thread. every task works in
+	 * its own scratch tree, since joins may write the root of the tree they run in.
 	 */
-		private void switchSuccessorRightSon(IAVLNode node, IAVLNode successor) {
-			int tempHeight = node.getHeight();
-			IAVLNode parent = node.getParent();
-			IAVLNode tempLeft = node.getLeft();
-			if(node.getParent() == null) {// node is the root
-				successor.setParent(parent);
-				this.root = successor;
-			}		
-			else {// node is not root
-				successor.setParent(parent);
-				if (parent.getKey() > node.getKey()) {// node is left son
-					parent.setLeft(successor);// updating the parent's left son		
-				}
-				else {
-					parent.setRight(successor);// updating the parent's right son
-				}
-			}// updating the pointers of the node's left son, right son and parent:
-				node.setLeft(successor.getLeft());
-				node.setRight(successor.getRight());
-				node.getRight().setParent(node);
-				node.getLeft().setParent(node);
-				node.setParent(successor);
-				// updating the pointers of the successor's left son, right son:
-				successor.setLeft(tempLeft);
-				tempLeft.setParent(successor);
-				successor.setRight(node);
-				successor.setHeight(tempHeight);		
-	}		
-		/**
-		 * private void switchSuccessor(IAVLNode node, IAVLNode successor)
-			
-		 * switchig between a node and it's successor
-		 * complexity O(1).
-		 *
-		 */
-		private void switchSuccessor(IAVLNode node, IAVLNode successor) {// switch between node and it's successor
-			if (node.getRight().getKey() == successor.getKey()) {// successor is node's right son
-				 switchSuccessorRightSon( node,successor);
+	private static class SetTask extends RecursiveTask<IAVLNode> {
+		private static final long serialVersionUID = 1L;
+		private final SetOperation operation;
+		private final IAVLNode a;
+		private final IAVLNode b;
+		private final BinaryOperator<String> merge;
+		private final boolean threaded; // whether the joins link the seams
+
+		private SetTask(SetOperation operation, IAVLNode a, IAVLNode b, BinaryOperator<String> merge, boolean threaded) {
+			this.operation = operation;
+			this.a = a;
+			this.b = b;
+			this.merge = merge;
+			this.threaded = threaded;
+		}
+
+		protected IAVLNode compute() {
+			AVLTree scratch = new AVLTree();
+			scratch.threaded = threaded;
+			if(a.getSize() + b.getSize() <= BuildTask.SEQUENTIAL_THRESHOLD) {
+				return scratch.combineNodes(operation, a, b, merge);
 			}
-			else {
-				 switchSuccessorNotRightSon( node, successor);
+			if(!a.isRealNode() || !b.isRealNode()) {
+				return combineWithEmpty(operation, a, b);
 			}
+			IAVLNode aRight = a.getRight();
+			IAVLNode[] parts = scratch.splitNodes(b, a.getKey());
+			SetTask left = new SetTask(operation, a.getLeft(), parts[0], merge, threaded);
+			left.fork();
+			IAVLNode right = new SetTask(operation, aRight, parts[2], merge, threaded).compute();
+			return scratch.joinCombined(operation, left.join(), a, parts[1], right, merge);
 		}
-	
-	/**
-	 * private boolean isLeaf(IAVLNode node)
-		
-	 * return true if node is leaf
-	 * complexity O(1).
-	 *
-	 */
-	
-	private boolean isLeaf(IAVLNode node) {// return true if node is leaf
-		return ((node.getLeft().getKey() == -1) && (node.getRight().getKey() == -1));
-	}	
+	}
+
 	/**
-	 * private boolean isUnary(IAVLNode node)
-		
-	 * return true if node is unary
-	 * complexity O(1).
+	 * public boolean empty()
 	 *
+	 * returns true if and only if the tree is empty
+	 *complexity O(1)
 	 */
-	private boolean isUnary(IAVLNode node) { // return true if node is unary
-		return (!(isLeaf(node)) && ((node.getLeft().getKey() == -1) || (node.getRight().getKey() == -1)));
-		
+	public boolean empty() {
+		return (!this.root.isRealNode()); // return true if root is the external leaf
 	}
-		
+
 	/**
-	 * private void deleteLeaf(IAVLNode node)
-		
-	 * @ pre isLeaf(node) == true
-	 * delete node from the tree
-	 * complexity O(1).
+	 * public String search(int k)
 	 *
+	 * returns the info of an item with key k if it exists in the tree
+	 * otherwise, returns null
+	 * complexity O(log(n))
 	 */
-	private void deleteLeaf(IAVLNode node) {// delete a leaf
-		if(node.getParent() == null) {//the node is root
-			this.root = new AVLNode();
-		}
-		else {
-			if(node.getParent().getLeft().getKey() == node.getKey()) {// the node is left's son of its parent
-				IAVLNode newExt = new AVLNode();
-				IAVLNode newParent = node.getParent();
-				newParent.setLeft(newExt);
-				newExt.setParent(newParent);		
-		}
-			else {// the node is right's son of its parent
-				IAVLNode newExt = new AVLNode();
-				IAVLNode newParent = node.getParent();
-				newParent.setRight(newExt);
-				newExt.setParent(newParent);
+	public String search(int k)
+	{
+		if(this.cacheNodes != null) {
+			return searchCached(k);
 		}
-			node.setParent(null);
+		IAVLNode node=searchNode(k);//:we get the node with the key k if it exists
+		if( node == null) {
+			return null;
 		}
+		if (node.getKey()==k)
+			return node.getValue();
+		return null;	  
 	}
-	
+
 	/**
-	 * private void deleteUnary(IAVLNode node)
-		
-	 * @ pre isUnary(node) == true
-	 * delete node from the tree
-	 * complexity O(1).
+	 * private String searchCached(int k)
 	 *
+	 * search through the hot key cache: a key has one slot, chosen by its hash,
+	 * and a found node takes the slot over from whatever node was there
+	 * complexity O(1) for a hit, O(log(n)) for a miss
 	 */
-	private void deleteUnary(IAVLNode node) {
-		IAVLNode newSon;
-		if(node.getRight().getKey() != -1) {
-			newSon = node.getRight();
-		}
-		else {
-			newSon = node.getLeft();
-		}
-		if(node.getParent() == null) { // node is root
-			this.root = newSon;
-			newSon.setParent(null);
+	private String searchCached(int k) {
+		int slot = (k * 0x9E3779B9) >>> this.cacheShift;
+		IAVLNode node = this.cacheNodes[slot];
+		if((node != null) && (this.cacheKeys[slot] == k)) {
+			this.cacheHits++;
+			return node.getValue();
 		}
-		else { // node is not root
-			if(node.getKey() < node.getParent().getKey()) {// the node is left's son of its parent
-				node.getParent().setLeft(newSon);
-				newSon.setParent(node.getParent());
-				node.setParent(null);			
-			}
-			else {// the node is right's son of its parent
-				node.getParent().setRight(newSon);
-				newSon.setParent(node.getParent());
-				node.setParent(null);
-			}
+		this.cacheMisses++;
+		node = searchNode(k);
+		if((node == null) || (node.getKey() != k)) {
+			return null;
 		}
+		this.cacheKeys[slot] = k;
+		this.cacheNodes[slot] = node;
+		return node.getValue();
 	}
-	
+
 	/**
-	 * private IAVLNode successor(IAVLNode node, int increaseSize)	
-	 *finding node's successor and changing the size of the nodes in the route to the successor by increaseSize
-	 * 
-	 * complexity O(log(n)).
+	 * public void enableCache(int capacity)
 	 *
+	 * puts a direct mapped cache of the nodes of recently found keys in front of search,
+	 * for reads that are skewed to a few hot keys. capacity is rounded up to a power of 2.
+	 * since search then writes to the cache, concurrent searches need a lock like writes do.
+	 * precondition: capacity > 0
+	 * complexity O(capacity)
 	 */
-	private IAVLNode successor(IAVLNode node, int increaseSize) {
-		if (node.getRight().getKey() != -1) {// the node has a right child
-			node = node.getRight();
-			while(node.getKey() != -1) {
-				node.setSize(node.getSize() + increaseSize);
-				node = node.getLeft();
-			}
-			return node.getParent();
+	public void enableCache(int capacity) {
+		if((capacity <= 0) || (capacity > (1 << 30))) {
+			throw new IllegalArgumentException("the capacity of the cache must be in [1, 2^30], not " + capacity);
 		}
-		else {// the node does not have a right son
-			IAVLNode parent = node.getParent();
-			while((parent != null) && (node.getKey() == parent.getRight().getKey()) ) {
-				node = parent;
-				parent = node.getParent();
-			}
-			return parent;
-		}		
+		int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(capacity - 1));// a shift by 32 would be a shift by 0
+		this.cacheKeys = new int[1 << bits];
+		this.cacheNodes = new IAVLNode[1 << bits];
+		this.cacheShift = 32 - bits;
+		this.cacheHits = 0;
+		this.cacheMisses = 0;
 	}
-		
+
 	/**
-	 * private void case31And11Rebalance(IAVLNode node)
-	 * 
-	 * rebalance the case : 3-1 node and it's right son is 1-1 node.
+	 * public void disableCache()
+	 *
+	 * removes the cache of search
 	 * complexity O(1)
 	 */
-	private void case31And11Rebalance(IAVLNode node) {//node is z and node.right is y
-		leftRotation(node,node.getRight());
-		demote(node);
-		promote(node.getParent());
-	}
-	
-	/**
-	 * private void case13And11Rebalance(IAVLNode node)
-	 * rebalance the case : 1-3 node and it's left son is 1-1 node.
-	 * complexity O(1)
-	 */
-	private void case13And11Rebalance(IAVLNode node) {
-		rightRotation(node,node.getLeft());
-		demote(node);
-		promote(node.getParent());		
+	public void disableCache() {
+		this.cacheKeys = null;
+		this.cacheNodes = null;
 	}
+
 	/**
-	 * private void case31And21Rebalance(IAVLNode node)
-	 * rebalance the case : 3-1 node and it's right son is 2-1 node.
+	 * public long cacheHits()
+	 *
+	 * Returns the number of searches the cache answered since it was enabled
 	 * complexity O(1)
 	 */
-	private void case31And21Rebalance(IAVLNode node) {// 
-		leftRotation(node,node.getRight());
-		demote(node);
-		demote(node);
+	public long cacheHits() {
+		return this.cacheHits;
 	}
+
 	/**
-	 * private void case13And12Rebalance(IAVLNode node)
-	 * rebalance the case : 1-3 node and it's right son is 1-2 node.
+	 * public long cacheMisses()
+	 *
+	 * Returns the number of searches that went down the tree since the cache was enabled
 	 * complexity O(1)
 	 */
-	private void case13And12Rebalance(IAVLNode node) {//lior changed name
-		rightRotation(node,node.getLeft());
-		demote(node);
-		demote(node);
+	public long cacheMisses() {
+		return this.cacheMisses;
 	}
+
 	/**
-	 * private void case31And12Rebalance(IAVLNode node)
-	 * 
-	 * rebalance the case : 3-1 node and it's right son is 1-2 node.
+	 * private void invalidateCache(int k)
+	 *
+	 * forgets the node of k, if it is in the cache
 	 * complexity O(1)
 	 */
-	private void case31And12Rebalance(IAVLNode node) {// 
-		rightRotation(node.getRight(),node.getRight().getLeft());
-		leftRotation(node,node.getRight());
-		demote(node);
-		demote(node);//demote z by two
-		promote(node.getParent());//promote a by 1
-		demote(node.getParent().getRight());//demote y by 1	
+	private void invalidateCache(int k) {
+		if(this.cacheNodes != null) {
+			int slot = (k * 0x9E3779B9) >>> this.cacheShift;
+			if(this.cacheKeys[slot] == k) {
+				this.cacheNodes[slot] = null;
+			}
+		}
 	}
-	
+
 	/**
-	 * private void case13And21Rebalance(IAVLNode node)
-	 * 
-	 * rebalance the case : 1-3 node and it's right son is 2-1 node.
-	 * complexity O(1)
+	 * private void invalidateCache()
+	 *
+	 * empties the cache, when nodes may have left the tree in bulk
+	 * complexity O(capacity)
 	 */
-	private void case13And21Rebalance(IAVLNode node) {//
-		leftRotation(node.getLeft(),node.getLeft().getRight());
-		rightRotation(node,node.getLeft());
-		demote(node);
-		demote(node);//demote z by two
-		promote(node.getParent());//promote a by 1
-		demote(node.getParent().getLeft());//demote y by 1	
+	private void invalidateCache() {
+		if(this.cacheNodes != null) {
+			Arrays.fill(this.cacheNodes, null);
+		}
 	}
-	
 	/**
-	 * private int rebalanceDeletion(IAVLNode node)
-	 * 
-	 * rebalance the case : 1-3 node and it's right son is 2-1 node.
-	 * complexity O(1)
-	 */
-	private int rebalanceDeletion(IAVLNode node) {
-		if(node==null)
-			return 0;
-		int cnt =0;
-		while(node != null) {
-			int deltaRankRight = node.getHeight()-node.getRight().getHeight();// delta rank between node and its right son
-			int deltaRankLeft = node.getHeight()-node.getLeft().getHeight(); // delta rank between node and its left son
-			// the tree is rebalanced
-			if ((deltaRankRight == 1 && deltaRankLeft==1)||(deltaRankRight == 2 && deltaRankLeft == 1)||(deltaRankRight == 1 && deltaRankLeft==2)) {// the tree is rebalanced
-				//break;
-				node = node.getParent();
-				continue;
-			}
-			else {
-			// the node is 2-2 
-			if (deltaRankRight== 2 && deltaRankLeft== 2){
-				demote(node);
-				cnt++;
-				node = node.getParent();
-				continue;			
+	 * private IAVLNode searchNode(int k)
+	 *
+	 * returns the node with key k if it exists in the tree
+	 * otherwise, returns the node it should be inserted below.
+	 * keys beyond the min or the max are answered by them without a descent, and
+	 * with finger search the descent starts from the finger instead of the root.
+	 * complexity O(1) beyond the min and the max, O(log(n)) otherwise
+	 */ 
+	private IAVLNode searchNode(int k) {
+		if(!this.root.isRealNode()) {// empty tree
+			return null;
+		}
+		if(k >= this.max.getKey()) {// the max, or the node a bigger key goes below
+			return foundNode(this.max, 1);
+		}
+		if(k <= this.min.getKey()) {
+			return foundNode(this.min, 1);
+		}
+		IAVLNode currNode = this.root;
+		int depth = 0;
+		if(this.fingerSearch && (this.finger != null)) {
+			currNode = this.finger;
+			while((currNode.getParent() != null) && !fingerCovers(currNode, k)) {
+				currNode = currNode.getParent();
+				depth++;
 			}
-			else {
-			// case 3,1
-			if ((deltaRankRight==1)&&(deltaRankLeft==3)){
-				int deltaRightSonRight = node.getRight().getHeight()-node.getRight().getRight().getHeight();// delta rank between left son and his right son
-				int deltaRightSonLeft = node.getRight().getHeight()-node.getRight().getLeft().getHeight();// delta rank between left son and his left son
-				// 3-1 node and it's right son is 1-1 node
-				if(((deltaRightSonRight==1)&&(deltaRightSonLeft==1))) {
-					case31And11Rebalance(node);
-					cnt += 3 ;// rotation, demote, promote - one of each
-					node = node.getParent().getParent();
-					continue;					
-				}
-				// 3-1 node and it's right son is 1-2 node
-				if((deltaRightSonRight==2)&&(deltaRightSonLeft==1)) {
-					case31And12Rebalance(node);
-					cnt += 6; // 2*rotation, 4*demote
-					node = node.getParent().getParent();
-					continue;
-				}
-				// 3-1 node and it's right son is 2-1 node
-				if((deltaRightSonRight==1)&&(deltaRightSonLeft==2)) {
-					case31And21Rebalance(node);
-					cnt += 3;//1*rotation, 2*demote
-					node = node.getParent().getParent();
-					continue;
-				}
+		}
+		IAVLNode parentNode = null; // the external leaf does not know its parent
+		while((currNode.isRealNode()) ){
+			depth++;
+			if( currNode.getKey() == k) {
+				return foundNode(currNode, depth);
 			}
 			else {
-			//case 1,3
-			if((deltaRankRight==3)&&(deltaRankLeft==1)) {
-				int deltaLeftSonleft=node.getLeft().getHeight()-node.getLeft().getLeft().getHeight();// delta rank between right son and his left son
-				int deltaLeftSonRight=node.getLeft().getHeight()-node.getLeft().getRight().getHeight(); // delta rank between right son and his right son
-				// 1-3 node and it's left son is 1-1 node
-				if(( deltaLeftSonleft==1)&& (deltaLeftSonRight==1)) {
-					case13And11Rebalance(node);
-					cnt += 3;	//:rotation, demote, promote - one of each
-					node = node.getParent().getParent();
-					continue;
-				}
-				// 1-3 node and it's  left son is 2-1 node
-				if(( deltaLeftSonleft==2)&& (deltaLeftSonRight==1)) {
-					case13And21Rebalance(node);
-					cnt += 6; //:2*rotation, 4*demote 
-					node = node.getParent().getParent();
-					continue;
+				parentNode = currNode;
+				if(k<currNode.getKey()) {
+					currNode=currNode.getLeft();
 				}
-				// 1-3 node and it's  left son is 1-2 node
-				if(( deltaLeftSonleft==1)&& (deltaLeftSonRight==2)) {
-					case13And12Rebalance(node);
-					cnt += 3; //:1*rotation, 2*demote 	
-					node = node.getParent().getParent();
-					continue;
+				else {
+					currNode=currNode.getRight();  
 				}
-			}
-			}
-		node = node.getParent();
-			}
-			} 
-		}
-		return cnt;
-	}	
+			}	  
+		}	  
+		return foundNode(parentNode, depth); 
+	}
 
 	/**
-	 * public String min()
+	 * private IAVLNode foundNode(IAVLNode node, int depth)
 	 *
-	 * Returns the info of the item with the smallest key in the tree,
-	 * or null if the tree is empty
+	 * the end of searchNode: remembers node as the finger if finger search is on and
+	 * tells the listener how many nodes the search visited. returns node
 	 * complexity O(1)
 	 */
-	public String min()
-	{
-		if(this.min != null) {
-			return this.min.getValue();
+	private IAVLNode foundNode(IAVLNode node, int depth) {
+		if(this.fingerSearch) {// otherwise search stays read only, for the read locks of the wrappers
+			this.finger = node;
 		}
-		return null; 
+		if(this.listener != null) {
+			this.listener.onSearch(depth);
+		}
+		return node;
 	}
 
 	/**
-	 * public String max()
+	 * private boolean fingerCovers(IAVLNode node, int k)
 	 *
-	 * Returns the info of the item with the largest key in the tree,
-	 * or null if the tree is empty
+	 * returns true if the place of k is node or in its sub tree, as far as the parent of node tells:
+	 * the keys between a left son and its parent are all in the right sub tree of the son
+	 * (and the other way around for a right son), while the keys beyond the son's
+	 * other side may be anywhere above it.
+	 * precondition: node.getParent() != null
 	 * complexity O(1)
 	 */
-	public String max() {
-		if(this.max != null) {
-			return this.max.getValue();
+	private boolean fingerCovers(IAVLNode node, int k) {
+		if(k == node.getKey()) {
+			return true;
 		}
-		return null;
-
+		IAVLNode parent = node.getParent();
+		if(parent.getLeft() == node) {
+			return (k > node.getKey()) && (k < parent.getKey());
+		}
+		return (k < node.getKey()) && (k > parent.getKey());
 	}
-	
+
 	/**
-	 * private IAVLNode findMin()
+	 * public void setFingerSearch(boolean enabled)
 	 *
-	 * Returns the node with the smallest key in the tree,
-	 * or null if the tree is empty
-	 * complexity O(log(n))
+	 * if enabled, search, insert and delete start from the node the last of them reached
+	 * and climb from it only until the place of the key is below, instead of
+	 * starting from the root. this costs O(log(d)) for a key d places away from the last
+	 * one when no high node lies between them, as with keys that come in order or close
+	 * to each other; keys on the two sides of a high node climb up to it.
+	 * keys beyond the min or the max take O(1) to find whether or not this is enabled.
+	 * since search then writes the finger, concurrent searches need a lock like writes do;
+	 * the thread safe wrappers never enable it.
+	 * complexity O(1)
 	 */
-	private IAVLNode findMin() {
-		if(this.root.getValue() == null) {
-			return null;
-		}
-		IAVLNode node = this.root;
-		while(node.getLeft().getKey() != -1){
-			
-			node = node.getLeft();
-		}
-		return node;
+	public void setFingerSearch(boolean enabled) {
+		this.fingerSearch = enabled;
+		this.finger = null;
 	}
-		
+
 	/**
-	 * private IAVLNode findMax()
 	 *
-	 * Returns the node with the greatest key in the tree,
-	 * or null if the tree is empty
-	 * complexity O(log(n))
+	 * private void rightRotation(IAVLNode x, IAVLNode y)
+	 *
+	 * right rotation between the nodes x and y
+	 * complexity O(1)
+	 *
 	 */
-	private IAVLNode findMax() {
-		if(this.root.getValue() == null) {
-			return null;
+	private void rightRotation(IAVLNode x, IAVLNode y) {// x is the parent , y is the son
+		// rotation
+		IAVLNode parent = x.getParent();
+		y.setParent(parent);
+		x.setLeft(y.getRight());
+		if(y.getRight().isRealNode()) {// the shared external leaf has no parent
+			y.getRight().setParent(x);
 		}
-		IAVLNode node = this.root;
-		while(node.getRight().getKey() != -1){
-			node = node.getRight();
+		y.setRight(x);
+		x.setParent(y);
+
+		if(y.getParent() == null) {
+			this.root = y;
 		}
-		return node;	
+		else {
+			if(parent.getKey() > x.getKey()) {
+				parent.setLeft(y);
+		}
+			else {
+				parent.setRight(y);
+			}
+		// updating the size
+		}
+		x.setSize(x.getLeft().getSize() + x.getRight().getSize() +1);
+		y.setSize(x.getSize() + y.getLeft().getSize() +1);	
 	}
-
 	/**
-	 * public int[] keysToArray()
+	 * private void leftRotation(IAVLNode y, IAVLNode x)
 	 *
-	 * Returns a sorted array which contains all keys in the tree,
-	 * or an empty array if the tree is empty.
-	 * complexity O(n)
-	 */
-	public int[] keysToArray()
-	{
-		int[] arr = new int[this.size()]; 
-		int[] index = new int[1];
-		index[0]=0;
-		keysToArrayRec(this.root, arr,index );
-		return arr;  
-	}
-	
-	/**
-	 * private void keysToArrayRec(IAVLNode node, int[] keysArray, int[] index)
+	 * left rotation between the nodes y and x
+	 * complexity O(1)
 	 *
-	 * updates the array which contains all keys, sorted
-	 * recursively
-	 * complexity O(n)
 	 */
-	private void keysToArrayRec(IAVLNode node, int[] keysArray, int[] index) {
-		if((node.getKey() == -1)||(index[0]==keysArray.length)) {
-			return ;
+	private void leftRotation(IAVLNode y, IAVLNode x) {//y is the parent , x is the son
+		// rotation
+		IAVLNode parent = y.getParent();
+		x.setParent(parent);
+		y.setRight(x.getLeft());
+		if(x.getLeft().isRealNode()) {// the shared external leaf has no parent
+			x.getLeft().setParent(y);
 		}
-		keysToArrayRec(node.getLeft(),keysArray, index);
-		keysArray[index[0]] = node.getKey();
-		index[0]+=1;
-		keysToArrayRec(node.getRight(),keysArray, index);
-		
-		
-	}
+		x.setLeft(y);
+		y.setParent(x);
 
-	/**
-	 * public String[] infoToArray()
-	 *
-	 * Returns an array which contains all info in the tree,
-	 * sorted by their respective keys,
-	 * or an empty array if the tree is empty.
-	 * complexity O(n)
-	 */
-	public String[] infoToArray()
-	{
-		String[] arr = new String[this.size()]; 
-		int[] index = new int[1];
-		index[0]=0;
-		infoToArrayRec(this.root, arr,index );
-		return arr;  
+		if(x.getParent() == null) {
+			this.root = x;
+		}
+		else {
+			if(parent.getKey() < x.getKey()) {	
+			parent.setRight(x);
+		}
+			else {
+				parent.setLeft(x);
+			}
+		// update the size
+		}
+		y.setSize(y.getLeft().getSize() + y.getRight().getSize() + 1);
+		x.setSize(y.getSize() + x.getRight().getSize() + 1);
 	}
 	
 	/**
-	 * private void infoToArrayRec(IAVLNode node, String[] infoArray, int[] index)
-	 * 
-	 * updates the array which contains all info in the tree 
-	 * sorted by their respective keys,
-	 * recursively
-	 * complexity O(n)
+	 * private void rotated(boolean doubleRotation)
+	 *
+	 * tells the listener about a single or double rotation, if there is one
+	 * complexity O(1)
 	 */
-	private void infoToArrayRec(IAVLNode node, String[] infoArray, int[] index) {
-		if((node.getKey() == -1)||(index[0]==infoArray.length)) {
-			return ;
+	private void rotated(boolean doubleRotation) {
+		if(this.listener != null) {
+			this.listener.onRotation(doubleRotation);
 		}
-		infoToArrayRec(node.getLeft(),infoArray, index);
-		infoArray[index[0]] = node.getValue();
-		index[0]+=1;
-		infoToArrayRec(node.getRight(),infoArray, index);			
 	}
 
 	/**
-	 * public int size()
 	 *
-	 * Returns the number of nodes in the tree.
-	 * 
-	 * prcondition: none
-	 * postcondition: none
-	 * 
+	 * private void promote(IAVLNode node)
+	 *
+	 * promote the node's rank by 1
 	 * complexity O(1)
+	 *
 	 */
-	public int size()
-	{
-		return this.root.getSize(); // to be replaced by student code
+	private void promote(IAVLNode node) {
+		node.setHeight(node.getHeight()+1);
+		if(this.listener != null) {
+			this.listener.onPromote();
+		}
 	}
 
 	/**
-	 * public int getRoot()
 	 *
-	 * Returns the root AVL node, or null if the tree is empty
-	 * 
-	 * precondition: none
-	 * postcondition: none
-	 * 
+	 * private void demote(IAVLNode node)
+	 *
+	 * decrease the node's rank by 1
 	 * complexity O(1)
-	 * 
-	 */
-	public IAVLNode getRoot()
-	{
-		if(this.root.getKey() == -1) {
-			return null;
-		}
-		return this.root;
-	}
-	/**
-	 * public string split(int x)
 	 *
-	 * splits the tree into 2 trees according to the key x. 
-	 * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
-	 * precondition: search(x) != null
-	 * postcondition: none
-	 * 
-	 * complexity O(log(n))
-	 * 
-	 */   
-	public AVLTree[] split(int x)
-	{
-		IAVLNode root = this.root;
-		
-		AVLTree[] treeArray = new AVLTree[2];
-		IAVLNode node=this.searchNode(x,0); //the node that splits
-		AVLTree smaller=new AVLTree();
-		if(node.getLeft().getKey() != -1) {// this tree is the left sub tree of the node
-			smaller.root=node.getLeft(); 
-			
+	 */
+	private void demote(IAVLNode node) {
+		node.setHeight(node.getHeight()-1);
+		if(this.listener != null) {
+			this.listener.onDemote();
 		}
-	
-		AVLTree bigger=new AVLTree();
-		
-		if(node.getRight().getKey() != -1){//// this tree is the right sub tree of the node
-			bigger.root=node.getRight();
-		}
-		IAVLNode tempParent= node.getParent();//parent of the node so we can access
-
-		//start splitting
-		while(node.getKey()!= root.getKey()) {
-			 if(tempParent.getRight().getKey() == node.getKey()) {// arriving the parent from right
-				AVLTree tempTree = new AVLTree(); //this is the tree we are adding
-				 if(tempParent.getLeft().getKey() != -1) {//left son isnt external leaf
-					 tempTree.root = tempParent.getLeft(); 
-					 tempTree.root.setParent(null);
-					 tempParent.setRight(null);
-					 tempParent.setLeft(null);				 
-				 }			
-				 node = tempParent;
-				 tempParent = tempParent.getParent();
-				 node.setParent(null);
-				 smaller.joinSetMinMax(node, tempTree,false); //join the parnt left sub tree with parent and smaller
-			 }
-			 
-			 else {// arriving the parent from the left
-				 AVLTree tempTree = new AVLTree();
-				 if(tempParent.getRight().getKey() != -1) {//the right son isnt externaleaf
-					 tempTree.root = tempParent.getRight(); 
-					 tempTree.root.setParent(null);
-					 tempParent.setRight(null);
-					 tempParent.setLeft(null);
-				 }
-				 node = tempParent;
-				 tempParent = tempParent.getParent();
-				 node.setParent(null);
-				 bigger.joinSetMinMax(node, tempTree,false); //join the parnt left sub tree with parent and smaller
-			 }	
-		}
-		smaller.min = smaller.findMin();
-		smaller.max = smaller.findMax();
-		bigger.min = bigger.findMin();
-		bigger.max = bigger.findMax();
-		 treeArray[0] = smaller;
-		 treeArray[1] = bigger;		 
-		return treeArray; 
 	}
-	
+
 	/**
-	 * public join(IAVLNode x, AVLTree t)
+	 * private int rebalanceInsertion(IAVLNode node)
 	 *
-	 * joins t and x with the tree. 	
-	 * Returns the complexity of the operation (rank difference between the tree and t + 1)
-	 * precondition: keys(x,t) < keys() or keys(x,t) > keys()
-	 * x isnt empty - no null no external leaf
-	 * postcondition: none
+	 * Rebalance the tree after insertion according to the cases we saw in class
+	 * and fixes the size of the nodes on the way up to the root
 	 * complexity O(log(n))
-	 */  
-	public int join(IAVLNode x, AVLTree t) {
-		return joinSetMinMax(x, t, true);
-	}
-	/**
-	 * public joinSetMinMax(IAVLNode x, AVLTree t, boolean updateMinMax)
 	 *
-	 * joins t and x with the tree. 	
-	 * Returns the complexity of the operation (rank difference between the tree and t + 1)
-	 * precondition: keys(x,t) < keys() or keys(x,t) > keys()
-	 * x isnt empty - no null no external leaf
-	 * postcondition: none
-	 * complexity O(log(n))
-	 */   
-	public int joinSetMinMax(IAVLNode x, AVLTree t, boolean updateMinMax)
-	{
-		if((t.getRoot()==null)&&(this.getRoot()==null)) {// both trees are empty
-				IAVLNode exteralRight= new AVLNode();
-				IAVLNode exteralLeft= new AVLNode();
-				x.setLeft(exteralLeft);
-				x.setRight(exteralRight);
-				exteralRight.setParent(x);
-				exteralLeft.setParent(x);
-			    this.root=x;
-			    this.min=x;
-				this.max=x;
-				x.setSize(1);
-				x.setHeight(0);
-				return 1;			
-		}
-		// x isnt empty either 		
-		boolean myTreeIsLeft=false;
-		if((this.root.getKey()!=-1)&&(t.root.getKey()!=-1)) {//if both not empty
-			 myTreeIsLeft = this.root.getKey() < x.getKey(); 
-		}
-		//one is empty the other one isnt
-		else {
-			if(this.root.getKey()==-1) {//my tree is empty
-				if(t.root.getKey()>x.getKey()) {//t isnt empty
-					myTreeIsLeft=true;
-				}
-			}
-			else {
-				if(this.root.getKey()<x.getKey()) {
-					myTreeIsLeft=true;
-			}
-		}
-		}	
-		int heightOfMyTree= this.root.getHeight();
-		int heightOfT=t.root.getHeight();
-		//start joining
-		if (myTreeIsLeft) {
-			if( heightOfMyTree > heightOfT) {//my tree is left and bigger
-			joinBiggerTreeIsLeft(t,x,this,false);
-			if(updateMinMax) {
-			this.min = this.findMin();
-			this.max = this.findMax();
-			}
-			return heightOfMyTree - heightOfT + 1;
-			}
-			else {
-				if (heightOfMyTree == heightOfT) {//my tree is left and heights are equal
-					joinSameHeights(this,x,t);
-					this.min = this.findMin();
-					this.max = this.findMax();
-					return 1;				
-				}
-				else{//my tree is left and smaller		
-					joinBiggerTreeIsRight(this,x,t,true);
-					if(updateMinMax) {
-						this.min = this.findMin();
-						this.max = this.findMax();
-						}
-					this.min = this.findMin();
-					this.max = this.findMax();
-					return heightOfT - heightOfMyTree + 1;
-				}		
+	 */
+	private int rebalanceInsertion(IAVLNode node) {
+		int cnt =0;
+		while(node != null) {
+			node.setSize(node.getLeft().getSize() + node.getRight().getSize() + 1);
+			int deltaRankRight = node.getHeight()-node.getRight().getHeight();// delta rank between node and its right son
+			int deltaRankLeft = node.getHeight()-node.getLeft().getHeight(); // delta rank between node and its left son
+			// the node is 0-1 or 1-0 node
+			if (((deltaRankRight==0)&&(deltaRankLeft==1))||(((deltaRankRight==1)&&(deltaRankLeft==0)))) {//
+				promote(node);
+				cnt++;
 			}
-		}			
-		//my tree goes right
-		else {	
-			if(heightOfMyTree>heightOfT) {//my tree is right and bigger
-				joinBiggerTreeIsRight(t ,x ,this,false);
-				if(updateMinMax) {
-					this.min = this.findMin();
-					this.max = this.findMax();
-					}
-				return heightOfMyTree - heightOfT + 1;
+			// case 0,2
+			if ((deltaRankRight==2)&&(deltaRankLeft==0)){
+				int deltaLeftSonRight=node.getLeft().getHeight()-node.getLeft().getRight().getHeight();// delta rank between left son and his right son
+				int deltaLeftSonLeft=node.getLeft().getHeight()-node.getLeft().getLeft().getHeight();// delta rank between left son and his left son
+				// 0-2 node and it's son is 1-2 node
+				if(((deltaLeftSonRight==2)&&(deltaLeftSonLeft==1))) {
+					case02And12Rebalance(node);
+					cnt += 2 ;// rotation and demote
+				}
+				// 0-2 node and it's son is 2-1 node
+				if((deltaLeftSonRight==1)&&(deltaLeftSonLeft==2)) {
+					case02And21Rebalance(node);
+					cnt+=5; // double rotation , 2 demotes,  1 promote
+				}
+				if((deltaLeftSonRight==1)&&(deltaLeftSonLeft==1)) {
+					case02And11Rebalance(node);
+					cnt += 2;					
+				}
 			}
-			else {
-				if(heightOfMyTree == heightOfT) {
-					joinSameHeights(t,x,this);
-					if(updateMinMax) {
-						this.min = this.findMin();
-						this.max = this.findMax();
-						}
-					return 1;
+			//case 2,0
+			if((deltaRankRight==0)&&(deltaRankLeft==2)) {
+				int deltaRightSonleft=node.getRight().getHeight()-node.getRight().getLeft().getHeight();// delta rank between right son and his left son
+				int deltaRightSonRight=node.getRight().getHeight()-node.getRight().getRight().getHeight(); // delta rank between right son and his right son
+				// 2-0 node and his son is 2-1 node
+				if(( deltaRightSonleft==1)&& (deltaRightSonRight==2)) {
+					case20And21Rebalance(node);
+					cnt += 5;	//: 2*1rotataion + 2*1demote + 1promote
+				}
+				// 2-0 node and it's son is 1-2 node
+				if(( deltaRightSonleft==2)&& (deltaRightSonRight==1)) {
+					case20And12Rebalance(node);
+					cnt += 2; //: 2*2rotataions + 1*2demotes + 1*1promotion			  
+				}
+				if(( deltaRightSonleft==1)&& (deltaRightSonRight==1)) {
+					case20And11Rebalance(node);
+					cnt += 2;
 				}
-				else {//my tree is right and smaller
-					joinBiggerTreeIsLeft(this,x,t,true);
-					if(updateMinMax) {
-						this.min = this.findMin();
-						this.max = this.findMax();
-						}
-					
-					return heightOfT - heightOfMyTree + 1;		
-				}			
 			}
-		}
+			node = node.getParent();
+		} 
+		return cnt;
 	}
 	
 	/**
-	 * private void joinSameHeights(AVLTree leftSon,IAVLNode x,AVLTree rightSon)
-	 * joins leftSon and x and rightSon	  
-	 * pre:leftSon and rightSon are in the same height
-	 * post: the tree this is balanced
+	 * private void case02And11Rebalance(IAVLNode node) 
+	 *
+	 * rebalance the case: 0-2 node and it's son is 1-1 node.
+	 * complexity O(1).
+	 */
+	private void case02And11Rebalance(IAVLNode node) {
+		rotated(false);
+		IAVLNode tempLeftNode = node.getLeft();
+		rightRotation(node, node.getLeft());
+		promote(tempLeftNode);		
+	}
+	/**
+	 * private void case20And11Rebalance(IAVLNode node) 
 	 * 
-	 * complexity O(1) 
-	 */   
-	private void joinSameHeights(AVLTree leftSon,IAVLNode x,AVLTree rightSon) {
-		x.setRight(rightSon.root);
-		rightSon.root.setParent(x);
-		x.setLeft(leftSon.root);
-		leftSon.root.setParent(x);
-		x.setSize(leftSon.root.getSize() + rightSon.root.getSize()+1);
-		x.setHeight(rightSon.root.getHeight()+1);
-		this.root=x;
-		x.setParent(null);
+	 * rebalance the case: 2-0 node and it's son is 1-1 node.
+	 * complexity O(1).
+	 */
+	private void case20And11Rebalance(IAVLNode node) {
+		rotated(false);
+		IAVLNode tempLeftNode = node.getRight();
+		leftRotation(node, node.getRight());
+		promote(tempLeftNode);		
 	}
+	
 	/**
-	 * private void joinBiggerTreeIsLeft(AVLTree smaller,IAVLNode x,AVLTree bigger, boolean myTreeIsSmaller)
-	 * joins smaller and x and bigger	  
-	 * pre: bigger goes left, smaller goes right 
-	 * post: the tree this is balanced - calls rebalanceInsertion
-	 *
-	 * complexity O(log(n))
-	 */   
-	private void joinBiggerTreeIsLeft(AVLTree smaller,IAVLNode x,AVLTree bigger, boolean myTreeIsSmaller) {
-		IAVLNode newLeftSon=searchRankNodeLeftJoin(bigger.root,smaller.root.getHeight(),smaller.root.getSize()+1);
-		IAVLNode parentOfNewLeftSon = newLeftSon.getParent();
-		x.setLeft(newLeftSon);
-		newLeftSon.setParent(x);
-		x.setRight(smaller.root);
-		smaller.root.setParent(x);
-		parentOfNewLeftSon.setRight(x);
-		x.setParent(parentOfNewLeftSon);
-		x.setHeight(smaller.root.getHeight()+1);
-		x.setSize(smaller.root.getSize()+newLeftSon.getSize()+1);
-		if(myTreeIsSmaller) {
-			smaller.root=bigger.root;
-		}
-		rebalanceInsertion(x.getParent());			
+	 * private void case02And12Rebalance(IAVLNode node) 
+	 * 
+	 * rebalance the case: 0-2 node and it's son is 1-2 node.
+	 * complexity O(1).
+	 */
+	private void case02And12Rebalance(IAVLNode node) {
+		rotated(false);
+		rightRotation(node,node.getLeft());
+		demote(node);
 	}
 	
 	/**
-	 * private void joinBiggerTreeIsRight(AVLTree smaller,IAVLNode x,AVLTree bigger, boolean myTreeIsSmaller)
-	 * joins smaller and x and bigger	  
-	 * pre: bigger goes right, smaller goes left 
-	 * post: the tree this is balanced - calls rebalanceInsertion
+	 * private void case02And21Rebalance(IAVLNode node) 
 	 * 
+	 * rebalance the case: 0-2 node and it's son is 2-1 node.
+	 * complexity O(1).
+	 */
+	private void case02And21Rebalance(IAVLNode node) {
+		rotated(true);
+		leftRotation(node.getLeft(),node.getLeft().getRight());
+		rightRotation(node,node.getLeft());
+		demote(node);
+		demote(node.getParent().getLeft());
+		promote(node.getParent());
+	}
+
+	/**
+	 * private void case20And21Rebalance(IAVLNode node) 
+	 * 
+	 * rebalance the case: 2-0 node and it's son is 2-1 node.
+	 * complexity O(1).
+	 */
+	private void case20And21Rebalance(IAVLNode node) {
+		rotated(true);
+		rightRotation(node.getRight(),node.getRight().getLeft());
+		leftRotation(node,node.getRight());
+		demote(node);
+		demote(node.getParent().getRight());
+		promote(node.getParent());
+	}
+	/**
+	 * private void case20And12Rebalance(IAVLNode node) 
+	 * 
+	 * rebalance the case: 2-0 node and it's son is 1-2 node.
+	 * complexity O(1).
+	 */
+	private void case20And12Rebalance(IAVLNode node) {
+		rotated(false);
+		leftRotation(node,node.getRight());
+		demote(node);
+	}
+
+
+	/**
+	 * public int insert(int k, String i)
+	 *
+	 * inserts an item with key k and info i to the AVL tree.
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+	 * returns -1 if an item with key k already exists in the tree.
+	 * complexity O(log(n)).
+	 */
+	public int insert(int k, String i) {
+		if(!this.root.isRealNode()) {// empty tree
+			IAVLNode node = createLeaf(k,i);
+			this.root = node;
+			this.max = node;
+			this.min = node;
+			return 0;
+		}
+		IAVLNode parentNode = searchNode(k);// the only descent - the sizes are fixed by the rebalance on the way up
+		if(parentNode.getKey() == k) {// node already exists
+			return -1;
+		}
+		IAVLNode node = createLeaf(k,i);
+		if(parentNode.getKey()> k) {		
+			parentNode.setLeft(node);	
+		}else {
+			parentNode.setRight(node);		 
+		}
+		node.setParent(parentNode);
+		if(k<this.min.getKey()) {// update the min pointer
+			this.min = node;
+		}
+		if(k>this.max.getKey()) { // update the max pointer
+			this.max = node;
+		}
+		if(this.fingerSearch) {
+			this.finger = node;
+		}
+		if(this.threaded) {// node is between its parent and the parent's neighbor on its side
+			if(parentNode.getLeft() == node) {
+				linkThreads(((AVLNode)parentNode).prev, node);
+				linkThreads(node, parentNode);
+			}
+			else {
+				linkThreads(node, ((AVLNode)parentNode).next);
+				linkThreads(parentNode, node);
+			}
+		}
+		return rebalanceInsertion(parentNode);
+	}
+	/**
+	 * private IAVLNode createLeaf(int k, String val) 
+	 * 
+	 * create a new node and set it's right an left sons to be the shared external leaf.
+	 * complexity O(1).
+	 */
+	private IAVLNode createLeaf(int k, String val) {// create a leaf node
+		IAVLNode node= new AVLNode(k,val);
+		node.setLeft(EXTERNAL_LEAF);
+		node.setRight(EXTERNAL_LEAF);
+		return node;
+	}
+
+
+	/**
+	 * public int delete(int k)
+	 *
+	 * deletes an item with key k from the binary tree, if it is there;
+	 * the tree must remain valid (keep its invariants).
+	 * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+	 * returns -1 if an item with key k was not found in the tree.
+	 * updates the min and max fields 
 	 * complexity O(log(n))
-	 */   
-	private void joinBiggerTreeIsRight(AVLTree smaller,IAVLNode x,AVLTree bigger,boolean myTreeIsSmaller ) {
-		IAVLNode newRightSon = searchRankNodeRightJoin(bigger.root, smaller.root.getHeight(), smaller.root.getSize()+1);
-		IAVLNode parentOfNewRightSon = newRightSon.getParent();
-		x.setRight(newRightSon);
-		newRightSon.setParent(x);
-		x.setLeft(smaller.root);
-		smaller.root.setParent(x);
-		parentOfNewRightSon.setLeft(x);
-		x.setParent(parentOfNewRightSon);
-		x.setHeight(smaller.root.getHeight()+1);
-		x.setSize(smaller.root.getSize()+newRightSon.getSize()+1);
-		if(myTreeIsSmaller) {
-			smaller.root=bigger.root;
+	 */
+	public int delete(int k)
+	{
+		if(!this.root.isRealNode()) {
+			return -1;
+		}		
+		IAVLNode deleteNode = searchNode(k);// the only descent - the sizes are fixed by the rebalance on the way up
+		if(deleteNode.getKey() != k) {// node does not exist in tree
+			return -1;
 		}
-		rebalanceInsertion(x.getParent());	
+		return removeNode(deleteNode);
 	}
 
 	/**
-	 * private IAVLNode searchRankNodeRightJoin(IAVLNode node, int rank, int newSize)
-	 * search the new right son of x on the left spine of the tree of node	  
-	 * returns it
+	 * public IAVLNode pollFirst()
+	 *
+	 * removes the item with the smallest key from the tree and returns its node,
+	 * detached so it can be the x of a join, or null if the tree is empty.
+	 * there is no search: the min is known, and the next min is its successor,
+	 * which is its right son (a leaf) or its parent.
+	 * complexity O(log(n)) for the sizes on the way up, amortized O(1) rebalancing operations
+	 */
+	public IAVLNode pollFirst() {
+		if(!this.root.isRealNode()) {
+			return null;
+		}
+		IAVLNode node = this.min;
+		removeNode(node);
+		return detach(node);
+	}
+
+	/**
+	 * public IAVLNode pollLast()
+	 *
+	 * removes the item with the largest key from the tree and returns its node,
+	 * detached so it can be the x of a join, or null if the tree is empty.
+	 * complexity O(log(n)) for the sizes on the way up, amortized O(1) rebalancing operations
+	 */
+	public IAVLNode pollLast() {
+		if(!this.root.isRealNode()) {
+			return null;
+		}
+		IAVLNode node = this.max;
+		removeNode(node);
+		return detach(node);
+	}
+
+	/**
+	 * private IAVLNode detach(IAVLNode node)
+	 *
+	 * clears the links of a node that left the tree. returns node
+	 * complexity O(1)
+	 */
+	private IAVLNode detach(IAVLNode node) {
+		node.setParent(null);
+		node.setLeft(EXTERNAL_LEAF);
+		node.setRight(EXTERNAL_LEAF);
+		node.setHeight(0);
+		node.setSize(1);
+		return node;
+	}
+
+	/**
+	 * private int removeNode(IAVLNode deleteNode)
+	 *
+	 * removes deleteNode from the tree, stepping the min and the max to their
+	 * successor and predecessor if it was one of them.
+	 * returns the number of rebalancing operations
 	 * complexity O(log(n))
-	 */   
-	private IAVLNode searchRankNodeRightJoin(IAVLNode node, int rank, int newSize) {// the keys of the tallest tree are greater then the node
-		if(rank+1 == node.getHeight()){
-			node.setSize(newSize + node.getSize());
+	 */
+	private int removeNode(IAVLNode deleteNode) {
+		invalidateCache(deleteNode.getKey());
+		if(deleteNode == this.min) {// the min is a leaf or has only a right son, so this is O(1)
+			this.min = successor(deleteNode);
 		}
-		while((node.getHeight() > rank +1) && (node.getLeft().getKey() != -1)) {
-			node.setSize(newSize + node.getSize());
-			node = node.getLeft();
+		if(deleteNode == this.max) {// the max is a leaf or has only a left son, so this is O(1)
+			this.max = predecessor(deleteNode);
+		}
+		if(!isLeaf(deleteNode) && !isUnary(deleteNode)) {// node has two sons
+			switchSuccessor(deleteNode, successor(deleteNode));
 		}
-		return node.getLeft() ;
+		if(this.threaded) {
+			AVLNode removed = (AVLNode)deleteNode;
+			linkThreads(removed.prev, removed.next);
+			removed.prev = null;
+			removed.next = null;
+		}
+		IAVLNode deleteParent = deleteNode.getParent();
+		if(isLeaf(deleteNode)) {// node is leaf				
+			deleteLeaf(deleteNode);
+		}
+		else {// node is unary
+			deleteUnary(deleteNode);
+		}
+		if(this.fingerSearch) {
+			this.finger = deleteParent;// deleteNode left the tree
+		}
+		return rebalanceDeletion(deleteParent);
 	}
 	/**
-	 * private IAVLNode searchRankNodeLeftJoin(IAVLNode node, int rank, int newSize)
-	 * search the new left son of x on the right spine of the tree of node	  
-	 * returns it
+	 * public int insertAll(int[] keys, String[] values)
+	 *
+	 * inserts the items keys[i], values[i] to the tree, as if insert was called for each of them in order:
+	 * keys that are already in the tree, and repeated keys after their first time, are skipped.
+	 * the batch is sorted and then merged into the tree by divide and conquer -
+	 * split the tree at the middle key of the batch, merge each half of the batch into
+	 * its side and join the sides back - or, if the batch is at least as large as the tree,
+	 * by merging both in order and rebuilding.
+	 * returns the total number of rebalancing operations.
+	 * precondition: keys.length == values.length
+	 * complexity O(m log(m) + m log(n/m + 1)) for a batch of m keys
+	 */
+	public int insertAll(int[] keys, String[] values) {
+		if(keys.length != values.length) {
+			throw new IllegalArgumentException("there are " + keys.length + " keys and " + values.length + " values");
+		}
+		long[] order = new long[keys.length];// the key in the high half and the index in the low half
+		for(int i = 0; i < keys.length; i++) {
+			order[i] = ((long)keys[i] << 32) | i;
+		}
+		Arrays.sort(order);
+		int m = 0;
+		int[] sortedKeys = new int[keys.length];
+		String[] sortedValues = new String[keys.length];
+		for(int i = 0; i < order.length; i++) {
+			int key = (int)(order[i] >> 32);
+			if((m > 0) && (sortedKeys[m - 1] == key)) {// only the first item with a key counts
+				continue;
+			}
+			sortedKeys[m] = key;
+			sortedValues[m] = values[(int)order[i]];
+			m++;
+		}
+		this.joinRebalances = 0;
+		if(m >= this.size()) {// rebuilding is cheaper
+			mergeAndRebuild(sortedKeys, sortedValues, m);
+		}
+		else {
+			setRootAfterBatch(insertSorted(this.root, sortedKeys, sortedValues, 0, m));
+		}
+		return this.joinRebalances;
+	}
+
+	/**
+	 * public int deleteAll(int[] keys)
+	 *
+	 * deletes the items with the given keys from the tree, those that are there.
+	 * the batch is sorted and then removed by divide and conquer - split the tree
+	 * at the middle key of the batch, remove each half of the batch from its side and
+	 * join the sides back without the middle key.
+	 * returns the total number of rebalancing operations.
+	 * complexity O(m log(m) + m log(n/m + 1)) for a batch of m keys
+	 */
+	public int deleteAll(int[] keys) {
+		int[] sortedKeys = keys.clone();
+		Arrays.sort(sortedKeys);
+		int m = 0;
+		for(int i = 0; i < sortedKeys.length; i++) {
+			if((m == 0) || (sortedKeys[m - 1] != sortedKeys[i])) {
+				sortedKeys[m++] = sortedKeys[i];
+			}
+		}
+		this.joinRebalances = 0;
+		setRootAfterBatch(deleteSorted(this.root, sortedKeys, 0, m));
+		return this.joinRebalances;
+	}
+
+	/**
+	 * private IAVLNode insertSorted(IAVLNode node, int[] keys, String[] values, int from, int to)
+	 *
+	 * merges the sorted distinct keys[from..to) into the sub tree of node.
+	 * returns the root of the merged sub tree
+	 * complexity O(m log(n/m + 1))
+	 */
+	private IAVLNode insertSorted(IAVLNode node, int[] keys, String[] values, int from, int to) {
+		if(from >= to) {
+			return node;
+		}
+		if(!node.isRealNode()) {
+			IAVLNode built = buildBalanced(keys, values, from, to);
+			if(this.threaded) {
+				thread(built);
+			}
+			return built;
+		}
+		int middle = (from + to) >>> 1;
+		IAVLNode[] parts = splitNodes(node, keys[middle]);
+		IAVLNode pivot = parts[1];
+		if(pivot == null) {// an existing item keeps its info, like in insert
+			pivot = new AVLNode(keys[middle], values[middle]);
+		}
+		IAVLNode left = insertSorted(parts[0], keys, values, from, middle);
+		IAVLNode right = insertSorted(parts[2], keys, values, middle + 1, to);
+		return joinSeams(left, pivot, right);
+	}
+
+	/**
+	 * private IAVLNode deleteSorted(IAVLNode node, int[] keys, int from, int to)
+	 *
+	 * removes the sorted distinct keys[from..to) from the sub tree of node.
+	 * returns the root of what is left of the sub tree
+	 * complexity O(m log(n/m + 1))
+	 */
+	private IAVLNode deleteSorted(IAVLNode node, int[] keys, int from, int to) {
+		if((from >= to) || !node.isRealNode()) {
+			return node;
+		}
+		int middle = (from + to) >>> 1;
+		IAVLNode[] parts = splitNodes(node, keys[middle]);
+		if(this.threaded && (parts[1] != null)) {// the removed node is not kept alive by its neighbors
+			linkThreads(null, parts[1]);
+			linkThreads(parts[1], null);
+		}
+		IAVLNode left = deleteSorted(parts[0], keys, from, middle);
+		IAVLNode right = deleteSorted(parts[2], keys, middle + 1, to);
+		return joinSeams(left, null, right);
+	}
+
+	/**
+	 * private IAVLNode joinSeams(IAVLNode left, IAVLNode x, IAVLNode right)
+	 *
+	 * joins like joinNodes(left, x, right), or like joinNodes(left, right) if x is null.
+	 * in a threaded tree it also links the nodes on the two sides of x (or of the gap),
+	 * the only neighbors that the sub trees do not know: the batch and set operations
+	 * build their results from sub trees whose links are right inside.
+	 * the walks down the spines cost no more than the split that made the sub trees.
 	 * complexity O(log(n))
-	 */   
-	private IAVLNode searchRankNodeLeftJoin(IAVLNode node, int rank, int newSize) {// the keys of the taller tree are smaller then the node
-		if(rank+1 == node.getHeight()){
-			node.setSize(newSize + node.getSize());
+	 */
+	private IAVLNode joinSeams(IAVLNode left, IAVLNode x, IAVLNode right) {
+		if(this.threaded) {
+			IAVLNode last = left.isRealNode() ? left : null;
+			while((last != null) && last.getRight().isRealNode()) {
+				last = last.getRight();
+			}
+			IAVLNode first = right.isRealNode() ? right : null;
+			while((first != null) && first.getLeft().isRealNode()) {
+				first = first.getLeft();
+			}
+			if(x == null) {
+				linkThreads(last, first);
+			}
+			else {
+				linkThreads(last, x);
+				linkThreads(x, first);
+			}
+		}
+		return (x == null) ? joinNodes(left, right) : joinNodes(left, x, right);
+	}
 
+	/**
+	 * private void mergeAndRebuild(int[] keys, String[] values, int m)
+	 *
+	 * merges the items of the tree with the sorted distinct keys[0..m) in order
+	 * (an existing item keeps its info) and rebuilds the tree from the result
+	 * complexity O(n + m)
+	 */
+	private void mergeAndRebuild(int[] keys, String[] values, int m) {
+		int[] mergedKeys = new int[this.size() + m];
+		String[] mergedValues = new String[mergedKeys.length];
+		int count = 0;
+		int i = 0;
+		for(IAVLNode node = this.min; node != null; node = successor(node)) {
+			while((i < m) && (keys[i] < node.getKey())) {
+				mergedKeys[count] = keys[i];
+				mergedValues[count++] = values[i++];
+			}
+			if((i < m) && (keys[i] == node.getKey())) {
+				i++;
+			}
+			mergedKeys[count] = node.getKey();
+			mergedValues[count++] = node.getValue();
 		}
-		while((node.getHeight() > rank + 1) && (node.getRight().getKey() != -1)) {
-			node.setSize(newSize + node.getSize());
-			node = node.getRight();
+		while(i < m) {
+			mergedKeys[count] = keys[i];
+			mergedValues[count++] = values[i++];
 		}
-		return node.getRight();
+		IAVLNode built = buildBalanced(mergedKeys, mergedValues, 0, count);
+		if(this.threaded) {
+			thread(built);
+		}
+		setRootAfterBatch(built);
 	}
+
 	/**
-	 * public interface IAVLNode
-	 * ! Do not delete or modify this - otherwise all tests will fail !
+	 * private void setRootAfterBatch(IAVLNode node)
+	 *
+	 * makes node the root and sets the min and max.
+	 * (the rotations of the joins may leave a sub tree in this.root meanwhile)
+	 * in a threaded tree, the links inside the sub tree of node must be right already.
+	 * complexity O(log(n))
 	 */
-	public interface IAVLNode{	
-		public int getKey(); //returns node's key (for virtuval node return -1)
-		public String getValue(); //returns node's value [info] (for virtuval node return null)
-		public void setLeft(IAVLNode node); //sets left child
-		public IAVLNode getLeft(); //returns left child (if there is no left child return null)
-		public void setRight(IAVLNode node); //sets right child
-		public IAVLNode getRight(); //returns right child (if there is no right child return null)
-		public void setParent(IAVLNode node); //sets parent
-		public IAVLNode getParent(); //returns the parent (if there is no parent return null)
-		public boolean isRealNode(); // Returns True if this is a non-virtual AVL node
-		public void setHeight(int height); // sets the height of the node
-		public int getHeight(); // Returns the height of the node (-1 for virtual nodes)
-		public void setSize(int newSize); // sets the node's size
-		public int getSize();// return the node's size
+	private void setRootAfterBatch(IAVLNode node) {
+		invalidateCache();// the batch may have removed or replaced nodes
+		this.finger = null;
+		if(node.isRealNode()) {
+			node.setParent(null);
+		}
+		this.root = node;
+		this.min = findMin();
+		this.max = findMax();
+		if(this.threaded && (this.min != null)) {// cut the links to the nodes that left
+			linkThreads(null, this.min);
+			linkThreads(this.max, null);
+		}
+	}
+
+	/**
+	 * private IAVLNode[] splitNodes(IAVLNode node, int k)
+	 *
+	 * splits the sub tree of node by the key k, which does not have to be in it.
+	 * returns [smaller, pivot, bigger]: the roots of the sub trees of the keys below
+	 * and above k (maybe external leaves) and the detached node with key k, or null.
+	 * the sub trees are joined bottom up on the way from k to node.
+	 * complexity O(log(n))
+	 */
+	private IAVLNode[] splitNodes(IAVLNode node, int k) {
+		IAVLNode top = node;
+		IAVLNode parent = null;
+		int iterations = 0;
+		while(node.isRealNode() && (node.getKey() != k)) {
+			parent = node;
+			node = (k < node.getKey()) ? node.getLeft() : node.getRight();
+		}
+		IAVLNode smaller = EXTERNAL_LEAF;
+		IAVLNode bigger = EXTERNAL_LEAF;
+		IAVLNode pivot = null;
+		if(node.isRealNode()) {// k is in the tree
+			pivot = node;
+			smaller = node.getLeft();
+			bigger = node.getRight();
+			parent = node.getParent();
+		}
+		while((parent != null) && (pivot == null || pivot != top)) {
+			IAVLNode grandParent = (parent == top) ? null : parent.getParent();
+			if(k > parent.getKey()) {// arriving the parent from right
+				smaller = joinNodes(parent.getLeft(), parent, smaller);
+			}
+			else {// arriving the parent from left
+				bigger = joinNodes(bigger, parent, parent.getRight());
+			}
+			parent = grandParent;
+			iterations++;
+		}
+		if(this.listener != null) {
+			this.listener.onSplit(iterations);
+		}
+		if(pivot != null) {
+			pivot.setParent(null);
+			pivot.setLeft(EXTERNAL_LEAF);
+			pivot.setRight(EXTERNAL_LEAF);
+		}
+		return new IAVLNode[] {smaller, pivot, bigger};
+	}
+
+	/**
+	 * private IAVLNode joinNodes(IAVLNode left, IAVLNode x, IAVLNode right)
+	 *
+	 * joins the sub trees left and right with the node x between them.
+	 * returns the root of the joined tree, and adds its rebalancing operations to joinRebalances
+	 * precondition: keys(left) < key(x) < keys(right)
+	 * complexity O(|rank(left) - rank(right)| + 1)
+	 */
+	private IAVLNode joinNodes(IAVLNode left, IAVLNode x, IAVLNode right) {
+		if(left.isRealNode()) {
+			left.setParent(null);
+		}
+		if(right.isRealNode()) {
+			right.setParent(null);
+		}
+		int leftRank = left.getHeight();
+		int rightRank = right.getHeight();
+		if(this.listener != null) {
+			this.listener.onJoin(Math.abs(leftRank - rightRank));
+		}
+		IAVLNode parent = null;
+		if(leftRank > rightRank + 1) {// hang x on the right spine of left
+			IAVLNode node = left;
+			while(node.getHeight() > rightRank + 1) {
+				parent = node;
+				node = node.getRight();
+			}
+			linkNode(x, node, right);
+			parent.setRight(x);
+		}
+		else if(rightRank > leftRank + 1) {// hang x on the left spine of right
+			IAVLNode node = right;
+			while(node.getHeight() > leftRank + 1) {
+				parent = node;
+				node = node.getLeft();
+			}
+			linkNode(x, left, node);
+			parent.setLeft(x);
+		}
+		else {
+			linkNode(x, left, right);
+		}
+		x.setParent(parent);
+		if(parent == null) {
+			return x;
+		}
+		this.joinRebalances += rebalanceInsertion(parent);
+		IAVLNode top = x;
+		while(top.getParent() != null) {
+			top = top.getParent();
+		}
+		return top;
+	}
+
+	/**
+	 * private IAVLNode joinNodes(IAVLNode left, IAVLNode right)
+	 *
+	 * joins the sub trees left and right, using the max of left as the node between them.
+	 * returns the root of the joined tree
+	 * precondition: keys(left) < keys(right)
+	 * complexity O(log(n))
+	 */
+	private IAVLNode joinNodes(IAVLNode left, IAVLNode right) {
+		if(!left.isRealNode()) {
+			return right;
+		}
+		if(!right.isRealNode()) {
+			return left;
+		}
+		IAVLNode last = left;
+		while(last.getRight().isRealNode()) {
+			last = last.getRight();
+		}
+		IAVLNode[] parts = splitNodes(left, last.getKey());
+		return joinNodes(parts[0], parts[1], right);
+	}
+
+	/**
+	 * private void switchSuccessorNotRightSon(IAVLNode node, IAVLNode successor) 
+		
+	 * switchig between a node and it's successor, when the node.getRight() != successor
+	 * complexity O(1).
+	 */
+	private void switchSuccessorNotRightSon(IAVLNode node, IAVLNode successor) {
+		int tempHeight = node.getHeight();
+		IAVLNode tempParent = successor.getParent();// parent of the successor node
+		IAVLNode tempSuccessorRight1 = successor.getRight();
+		IAVLNode tempSuccessorLeft1 = successor.getLeft();
+		if(node.getParent() == null) {//  node is root
+			this.root = successor;// update the tree root
+			successor.setParent(node.getParent());	
+	}
+		else {// node is not root
+			successor.setParent(node.getParent());
+			if (node.getParent().getKey() > node.getKey()) {// node is left son
+				node.getParent().setLeft(successor);		
+			}
+			else {
+				node.getParent().setRight(successor);
+			}
+		}// updating the pointers of the successor's left and right son:
+		successor.setRight(node.getRight());
+		successor.setLeft(node.getLeft());
+		successor.getLeft().setParent(successor);
+		successor.getRight().setParent(successor);
+		tempParent.setLeft(node);// updating successor's left son pointer
+		// updating the pointers of the node's left son, right son and parent:
+		node.setRight(tempSuccessorRight1);
+		node.setLeft(tempSuccessorLeft1);
+		if(node.getRight().isRealNode()) {// the shared external leaf has no parent
+			node.getRight().setParent(node);
+		}
+		node.setParent(tempParent);
+		successor.setHeight(tempHeight);
+	}
+	
+	
+	/**
+	 * private void switchSuccessorNotRightSon(IAVLNode node, IAVLNode successor) 
+		
+	 * switchig between a node and it's successor, when the node.getRight() == successor
+	 * complexity O(1).
+	 */
+		private void switchSuccessorRightSon(IAVLNode node, IAVLNode successor) {
+			int tempHeight = node.getHeight();
+			IAVLNode parent = node.getParent();
+			IAVLNode tempLeft = node.getLeft();
+			if(node.getParent() == null) {// node is the root
+				successor.setParent(parent);
+				this.root = successor;
+			}		
+			else {// node is not root
+				successor.setParent(parent);
+				if (parent.getKey() > node.getKey()) {// node is left son
+					parent.setLeft(successor);// updating the parent's left son		
+				}
+				else {
+					parent.setRight(successor);// updating the parent's right son
+				}
+			}// updating the pointers of the node's left son, right son and parent:
+				node.setLeft(successor.getLeft());
+				node.setRight(successor.getRight());
+				if(node.getRight().isRealNode()) {// the shared external leaf has no parent
+					node.getRight().setParent(node);
+				}
+				node.setParent(successor);
+				// updating the pointers of the successor's left son, right son:
+				successor.setLeft(tempLeft);
+				tempLeft.setParent(successor);
+				successor.setRight(node);
+				successor.setHeight(tempHeight);		
+	}		
+		/**
+		 * private void switchSuccessor(IAVLNode node, IAVLNode successor)
+			
+		 * switchig between a node and it's successor
+		 * complexity O(1).
+		 *
+		 */
+		private void switchSuccessor(IAVLNode node, IAVLNode successor) {// switch between node and it's successor
+			if (node.getRight() == successor) {// successor is node's right son
+				 switchSuccessorRightSon( node,successor);
+			}
+			else {
+				 switchSuccessorNotRightSon( node, successor);
+			}
+		}
+	
+	/**
+	 * private boolean isLeaf(IAVLNode node)
+		
+	 * return true if node is leaf
+	 * complexity O(1).
+	 *
+	 */
+	
+	private boolean isLeaf(IAVLNode node) {// return true if node is leaf
+		return ((!node.getLeft().isRealNode()) && (!node.getRight().isRealNode()));
+	}	
+	/**
+	 * private boolean isUnary(IAVLNode node)
+		
+	 * return true if node is unary
+	 * complexity O(1).
+	 *
+	 */
+	private boolean isUnary(IAVLNode node) { // return true if node is unary
+		return (!(isLeaf(node)) && ((!node.getLeft().isRealNode()) || (!node.getRight().isRealNode())));
+		
+	}
+		
+	/**
+	 * private void deleteLeaf(IAVLNode node)
+		
+	 * @ pre isLeaf(node) == true
+	 * delete node from the tree
+	 * complexity O(1).
+	 *
+	 */
+	private void deleteLeaf(IAVLNode node) {// delete a leaf
+		if(node.getParent() == null) {//the node is root
+			this.root = EXTERNAL_LEAF;
+		}
+		else {
+			if(node.getParent().getLeft() == node) {// the node is left's son of its parent
+				node.getParent().setLeft(EXTERNAL_LEAF);
+		}
+			else {// the node is right's son of its parent
+				node.getParent().setRight(EXTERNAL_LEAF);
+		}
+			node.setParent(null);
+		}
+	}
+	
+	/**
+	 * private void deleteUnary(IAVLNode node)
+		
+	 * @ pre isUnary(node) == true
+	 * delete node from the tree
+	 * complexity O(1).
+	 *
+	 */
+	private void deleteUnary(IAVLNode node) {
+		IAVLNode newSon;
+		if(node.getRight().isRealNode()) {
+			newSon = node.getRight();
+		}
+		else {
+			newSon = node.getLeft();
+		}
+		if(node.getParent() == null) { // node is root
+			this.root = newSon;
+			newSon.setParent(null);
+		}
+		else { // node is not root
+			if(node.getParent().getLeft() == node) {// the node is left's son of its parent (keys can't tell after switchSuccessor)
+				node.getParent().setLeft(newSon);
+				newSon.setParent(node.getParent());
+				node.setParent(null);			
+			}
+			else {// the node is right's son of its parent
+				node.getParent().setRight(newSon);
+				newSon.setParent(node.getParent());
+				node.setParent(null);
+			}
+		}
+	}
+	
+	/**
+	 * private IAVLNode successor(IAVLNode node)	
+	 *finding node's successor, or null if node is the max
+	 * 
+	 * complexity O(1) if the tree is threaded, O(log(n)) otherwise.
+	 *
+	 */
+	private IAVLNode successor(IAVLNode node) {
+		if(this.threaded) {
+			return ((AVLNode)node).next;
+		}
+		return successorByParents(node);
+	}
+
+	/**
+	 * private IAVLNode successorByParents(IAVLNode node)	
+	 *finding node's successor by walking the tree, or null if node is the max
+	 * 
+	 * complexity O(log(n)).
+	 *
+	 */
+	private IAVLNode successorByParents(IAVLNode node) {
+		if (node.getRight().isRealNode()) {// the node has a right child
+			node = node.getRight();
+			while(node.getLeft().isRealNode()) {
+				node = node.getLeft();
+			}
+			return node;
+		}
+		else {// the node does not have a right son
+			IAVLNode parent = node.getParent();
+			while((parent != null) && (node == parent.getRight()) ) {
+				node = parent;
+				parent = node.getParent();
+			}
+			return parent;
+		}		
+	}
+		
+	/**
+	 * private IAVLNode predecessor(IAVLNode node)	
+	 *finding node's predecessor, or null if node is the min
+	 * 
+	 * complexity O(1) if the tree is threaded, O(log(n)) otherwise.
+	 *
+	 */
+	private IAVLNode predecessor(IAVLNode node) {
+		if(this.threaded) {
+			return ((AVLNode)node).prev;
+		}
+		if (node.getLeft().isRealNode()) {// the node has a left child
+			node = node.getLeft();
+			while(node.getRight().isRealNode()) {
+				node = node.getRight();
+			}
+			return node;
+		}
+		else {// the node does not have a left son
+			IAVLNode parent = node.getParent();
+			while((parent != null) && (node == parent.getLeft()) ) {
+				node = parent;
+				parent = node.getParent();
+			}
+			return parent;
+		}		
+	}
+		
+	/**
+	 * public void setThreaded(boolean enabled)
+	 *
+	 * if enabled, every node keeps links to the nodes with the next and the previous
+	 * keys, so successor and predecessor - and with them the iterators, range scans,
+	 * streams, keysToArray and the min and max updates of delete - are one pointer hop.
+	 * insert, delete, pollFirst, pollLast, split and join keep the links in O(1);
+	 * join threads t first if it is not threaded. insertAll, deleteAll and the set
+	 * operations link only the seams of their joins, within their own bounds, but a set
+	 * operation threads b first if it is not threaded, and a rebuild by insertAll
+	 * threads the new tree in O(n).
+	 * the nodes of a threaded tree must be AVLNodes. the links cost two fields per node and
+	 * pay off most when the tree fits in cache; a large tree built from random keys is bound
+	 * by cache misses either way.
+	 * complexity O(n)
+	 */
+	public void setThreaded(boolean enabled) {
+		if(enabled == this.threaded) {
+			return;
+		}
+		if(enabled) {
+			this.threaded = true;
+			thread(this.root);
+			return;
+		}
+		for(IAVLNode node = this.min; node != null; ) {// unlink, so removed nodes are not kept alive
+			AVLNode current = (AVLNode)node;
+			node = current.next;
+			current.next = null;
+			current.prev = null;
+		}
+		this.threaded = false;
+	}
+
+	/**
+	 * private void thread(IAVLNode top)
+	 *
+	 * links every node in the sub tree of top to its neighbors in key order,
+	 * and the ends of the sub tree to null
+	 * precondition: top is the root of the tree or of a sub tree without a parent
+	 * complexity O(n) for n nodes in the sub tree
+	 */
+	private void thread(IAVLNode top) {
+		if(!top.isRealNode()) {
+			return;
+		}
+		IAVLNode first = top;
+		while(first.getLeft().isRealNode()) {
+			first = first.getLeft();
+		}
+		AVLNode last = null;
+		for(IAVLNode node = first; node != null; node = successorByParents(node)) {
+			AVLNode current = (AVLNode)node;
+			current.prev = last;
+			if(last != null) {
+				last.next = current;
+			}
+			last = current;
+		}
+		if(last != null) {
+			last.next = null;
+		}
+	}
+
+	/**
+	 * private static void linkThreads(IAVLNode smaller, IAVLNode bigger)
+	 *
+	 * makes smaller and bigger neighbors in key order. either may be null
+	 * complexity O(1)
+	 */
+	private static void linkThreads(IAVLNode smaller, IAVLNode bigger) {
+		if(smaller != null) {
+			((AVLNode)smaller).next = (AVLNode)bigger;
+		}
+		if(bigger != null) {
+			((AVLNode)bigger).prev = (AVLNode)smaller;
+		}
+	}
+
+	/**
+	 * private void case31And11Rebalance(IAVLNode node)
+	 * 
+	 * rebalance the case : 3-1 node and it's right son is 1-1 node.
+	 * complexity O(1)
+	 */
+	private void case31And11Rebalance(IAVLNode node) {//node is z and node.right is y
+		rotated(false);
+		leftRotation(node,node.getRight());
+		demote(node);
+		promote(node.getParent());
+	}
+	
+	/**
+	 * private void case13And11Rebalance(IAVLNode node)
+	 * rebalance the case : 1-3 node and it's left son is 1-1 node.
+	 * complexity O(1)
+	 */
+	private void case13And11Rebalance(IAVLNode node) {
+		rotated(false);
+		rightRotation(node,node.getLeft());
+		demote(node);
+		promote(node.getParent());		
+	}
+	/**
+	 * private void case31And21Rebalance(IAVLNode node)
+	 * rebalance the case : 3-1 node and it's right son is 2-1 node.
+	 * complexity O(1)
+	 */
+	private void case31And21Rebalance(IAVLNode node) {// 
+		rotated(false);
+		leftRotation(node,node.getRight());
+		demote(node);
+		demote(node);
+	}
+	/**
+	 * private void case13And12Rebalance(IAVLNode node)
+	 * rebalance the case : 1-3 node and it's right son is 1-2 node.
+	 * complexity O(1)
+	 */
+	private void case13And12Rebalance(IAVLNode node) {//lior changed name
+		rotated(false);
+		rightRotation(node,node.getLeft());
+		demote(node);
+		demote(node);
+	}
+	/**
+	 * private void case31And12Rebalance(IAVLNode node)
+	 * 
+	 * rebalance the case : 3-1 node and it's right son is 1-2 node.
+	 * complexity O(1)
+	 */
+	private void case31And12Rebalance(IAVLNode node) {// 
+		rotated(true);
+		rightRotation(node.getRight(),node.getRight().getLeft());
+		leftRotation(node,node.getRight());
+		demote(node);
+		demote(node);//demote z by two
+		promote(node.getParent());//promote a by 1
+		demote(node.getParent().getRight());//demote y by 1	
+	}
+	
+	/**
+	 * private void case13And21Rebalance(IAVLNode node)
+	 * 
+	 * rebalance the case : 1-3 node and it's right son is 2-1 node.
+	 * complexity O(1)
+	 */
+	private void case13And21Rebalance(IAVLNode node) {//
+		rotated(true);
+		leftRotation(node.getLeft(),node.getLeft().getRight());
+		rightRotation(node,node.getLeft());
+		demote(node);
+		demote(node);//demote z by two
+		promote(node.getParent());//promote a by 1
+		demote(node.getParent().getLeft());//demote y by 1	
+	}
+	
+	/**
+	 * private int rebalanceDeletion(IAVLNode node)
+	 * 
+	 * Rebalance the tree after deletion according to the cases we saw in class
+	 * and fixes the size of the nodes on the way up to the root
+	 * complexity O(log(n))
+	 */
+	private int rebalanceDeletion(IAVLNode node) {
+		if(node==null)
+			return 0;
+		int cnt =0;
+		while(node != null) {
+			node.setSize(node.getLeft().getSize() + node.getRight().getSize() + 1);
+			int deltaRankRight = node.getHeight()-node.getRight().getHeight();// delta rank between node and its right son
+			int deltaRankLeft = node.getHeight()-node.getLeft().getHeight(); // delta rank between node and its left son
+			// the tree is rebalanced
+			if ((deltaRankRight == 1 && deltaRankLeft==1)||(deltaRankRight == 2 && deltaRankLeft == 1)||(deltaRankRight == 1 && deltaRankLeft==2)) {// the tree is rebalanced
+				//break;
+				node = node.getParent();
+				continue;
+			}
+			else {
+			// the node is 2-2 
+			if (deltaRankRight== 2 && deltaRankLeft== 2){
+				demote(node);
+				cnt++;
+				node = node.getParent();
+				continue;			
+			}
+			else {
+			// case 3,1
+			if ((deltaRankRight==1)&&(deltaRankLeft==3)){
+				int deltaRightSonRight = node.getRight().getHeight()-node.getRight().getRight().getHeight();// delta rank between left son and his right son
+				int deltaRightSonLeft = node.getRight().getHeight()-node.getRight().getLeft().getHeight();// delta rank between left son and his left son
+				// 3-1 node and it's right son is 1-1 node
+				if(((deltaRightSonRight==1)&&(deltaRightSonLeft==1))) {
+					case31And11Rebalance(node);
+					cnt += 3 ;// rotation, demote, promote - one of each
+					node = node.getParent().getParent();
+					continue;					
+				}
+				// 3-1 node and it's right son is 1-2 node
+				if((deltaRightSonRight==2)&&(deltaRightSonLeft==1)) {
+					case31And12Rebalance(node);
+					cnt += 6; // 2*rotation, 4*demote
+					node = node.getParent().getParent();
+					continue;
+				}
+				// 3-1 node and it's right son is 2-1 node
+				if((deltaRightSonRight==1)&&(deltaRightSonLeft==2)) {
+					case31And21Rebalance(node);
+					cnt += 3;//1*rotation, 2*demote
+					node = node.getParent().getParent();
+					continue;
+				}
+			}
+			else {
+			//case 1,3
+			if((deltaRankRight==3)&&(deltaRankLeft==1)) {
+				int deltaLeftSonleft=node.getLeft().getHeight()-node.getLeft().getLeft().getHeight();// delta rank between right son and his left son
+				int deltaLeftSonRight=node.getLeft().getHeight()-node.getLeft().getRight().getHeight(); // delta rank between right son and his right son
+				// 1-3 node and it's left son is 1-1 node
+				if(( deltaLeftSonleft==1)&& (deltaLeftSonRight==1)) {
+					case13And11Rebalance(node);
+					cnt += 3;	//:rotation, demote, promote - one of each
+					node = node.getParent().getParent();
+					continue;
+				}
+				// 1-3 node and it's  left son is 2-1 node
+				if(( deltaLeftSonleft==2)&& (deltaLeftSonRight==1)) {
+					case13And21Rebalance(node);
+					cnt += 6; //:2*rotation, 4*demote 
+					node = node.getParent().getParent();
+					continue;
+				}
+				// 1-3 node and it's  left son is 1-2 node
+				if(( deltaLeftSonleft==1)&& (deltaLeftSonRight==2)) {
+					case13And12Rebalance(node);
+					cnt += 3; //:1*rotation, 2*demote 	
+					node = node.getParent().getParent();
+					continue;
+				}
+			}
+			}
+		node = node.getParent();
+			}
+			} 
+		}
+		return cnt;
+	}	
+
+	/**
+	 * public String min()
+	 *
+	 * Returns the info of the item with the smallest key in the tree,
+	 * or null if the tree is empty
+	 * complexity O(1)
+	 */
+	public String min()
+	{
+		if(this.min != null) {
+			return this.min.getValue();
+		}
+		return null; 
+	}
+
+	/**
+	 * public String max()
+	 *
+	 * Returns the info of the item with the largest key in the tree,
+	 * or null if the tree is empty
+	 * complexity O(1)
+	 */
+	public String max() {
+		if(this.max != null) {
+			return this.max.getValue();
+		}
+		return null;
+
+	}
+	
+	/**
+	 * private IAVLNode findMin()
+	 *
+	 * Returns the node with the smallest key in the tree,
+	 * or null if the tree is empty
+	 * complexity O(log(n))
+	 */
+	private IAVLNode findMin() {
+		if(!this.root.isRealNode()) {
+			return null;
+		}
+		IAVLNode node = this.root;
+		while(node.getLeft().isRealNode()){
+			
+			node = node.getLeft();
+		}
+		return node;
+	}
+		
+	/**
+	 * private IAVLNode findMax()
+	 *
+	 * Returns the node with the greatest key in the tree,
+	 * or null if the tree is empty
+	 * complexity O(log(n))
+	 */
+	private IAVLNode findMax() {
+		if(!this.root.isRealNode()) {
+			return null;
+		}
+		IAVLNode node = this.root;
+		while(node.getRight().isRealNode()){
+			node = node.getRight();
+		}
+		return node;	
+	}
+
+	/**
+	 * public int[] keysToArray()
+	 *
+	 * Returns a sorted array which contains all keys in the tree,
+	 * or an empty array if the tree is empty.
+	 * complexity O(n)
+	 */
+	public int[] keysToArray()
+	{
+		int[] arr = new int[this.size()]; 
+		IAVLNode node = this.min;
+		for(int i = 0; i < arr.length; i++) {// in order, without recursion
+			arr[i] = node.getKey();
+			node = successor(node);
+		}
+		return arr;  
+	}
+
+	/**
+	 * public String[] infoToArray()
+	 *
+	 * Returns an array which contains all info in the tree,
+	 * sorted by their respective keys,
+	 * or an empty array if the tree is empty.
+	 * complexity O(n)
+	 */
+	public String[] infoToArray()
+	{
+		String[] arr = new String[this.size()]; 
+		IAVLNode node = this.min;
+		for(int i = 0; i < arr.length; i++) {// in order, without recursion
+			arr[i] = node.getValue();
+			node = successor(node);
+		}
+		return arr;  
+	}
+
+	/**
+	 * public void forEach(IntObjConsumer<String> action)
+	 *
+	 * calls action with the key and info of every item, in the order of the keys,
+	 * in a single pass that copies nothing.
+	 * complexity O(n)
+	 */
+	public void forEach(IntObjConsumer<String> action)
+	{
+		for(IAVLNode node = this.min; node != null; node = successor(node)) {
+			action.accept(node.getKey(), node.getValue());
+		}
+	}
+
+	/**
+	 * public Spliterator<IAVLNode> spliterator()
+	 *
+	 * Returns a SIZED, SORTED and ORDERED spliterator over the nodes, in the order of the keys.
+	 * it splits into halves of exact size using the size field, so stream().parallel() scales.
+	 * the tree must not be changed while it is used.
+	 * complexity O(1) to create, O(1) amortized per node
+	 */
+	public Spliterator<IAVLNode> spliterator()
+	{
+		return new NodeSpliterator(this.min, this.size());
+	}
+
+	/**
+	 * public Stream<IAVLNode> stream()
+	 *
+	 * Returns a stream of the nodes, in the order of the keys.
+	 * call parallel() on it to split the work between threads.
+	 * complexity O(1) to create
+	 */
+	public Stream<IAVLNode> stream()
+	{
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * public IntStream keyStream()
+	 *
+	 * Returns a sorted stream of the keys, without boxing them
+	 * complexity O(1) to create
+	 */
+	public IntStream keyStream()
+	{
+		return StreamSupport.intStream(new KeySpliterator(new NodeSpliterator(this.min, this.size())), false);
+	}
+
+	/**
+	 * public Stream<String> infoStream()
+	 *
+	 * Returns a stream of the info, sorted by their respective keys
+	 * complexity O(1) to create
+	 */
+	public Stream<String> infoStream()
+	{
+		return stream().map(IAVLNode::getValue);
+	}
+
+	/**
+	 * private class NodeSpliterator
+	 *
+	 * walks a run of consecutive nodes, stepping with successor.
+	 * trySplit gives away the first half of the run - the node that starts
+	 * the second half is found by its index, using the size field.
+	 */
+	private class NodeSpliterator implements Spliterator<IAVLNode> {
+		private IAVLNode next; // the next node, or null at the end
+		private int remaining; // the number of nodes left
+
+		private NodeSpliterator(IAVLNode first, int count) {
+			this.next = first;
+			this.remaining = count;
+		}
+
+		public boolean tryAdvance(Consumer<? super IAVLNode> action) {
+			if(this.remaining == 0) {
+				return false;
+			}
+			IAVLNode node = this.next;
+			this.remaining--;
+			this.next = (this.remaining == 0) ? null : successor(node);
+			action.accept(node);
+			return true;
+		}
+
+		public void forEachRemaining(Consumer<? super IAVLNode> action) {
+			IAVLNode node = this.next;
+			int count = this.remaining;
+			this.next = null;
+			this.remaining = 0;
+			for(; count > 0; count--) {
+				action.accept(node);
+				node = (count == 1) ? null : successor(node);
+			}
+		}
+
+		public Spliterator<IAVLNode> trySplit() {
+			if(this.remaining < 2) {
+				return null;
+			}
+			int half = this.remaining / 2;
+			Spliterator<IAVLNode> prefix = new NodeSpliterator(this.next, half);
+			this.next = selectNode(indexOf(this.next) + half);
+			this.remaining -= half;
+			return prefix;
+		}
+
+		public long estimateSize() {
+			return this.remaining;
+		}
+
+		public int characteristics() {
+			return SIZED | SUBSIZED | SORTED | ORDERED | DISTINCT | NONNULL;
+		}
+
+		public Comparator<? super IAVLNode> getComparator() {
+			return Comparator.comparingInt(IAVLNode::getKey);
+		}
+	}
+
+	/**
+	 * private static class KeySpliterator
+	 *
+	 * the keys of the nodes of a NodeSpliterator, as ints.
+	 */
+	private static class KeySpliterator implements Spliterator.OfInt {
+		private final Spliterator<IAVLNode> nodes;
+
+		private KeySpliterator(Spliterator<IAVLNode> nodes) {
+			this.nodes = nodes;
+		}
+
+		public boolean tryAdvance(IntConsumer action) {
+			return this.nodes.tryAdvance(node -> action.accept(node.getKey()));
+		}
+
+		public void forEachRemaining(IntConsumer action) {
+			this.nodes.forEachRemaining(node -> action.accept(node.getKey()));
+		}
+
+		public Spliterator.OfInt trySplit() {
+			Spliterator<IAVLNode> prefix = this.nodes.trySplit();
+			return (prefix == null) ? null : new KeySpliterator(prefix);
+		}
+
+		public long estimateSize() {
+			return this.nodes.estimateSize();
+		}
+
+		public int characteristics() {
+			return this.nodes.characteristics();
+		}
+
+		public Comparator<? super Integer> getComparator() {
+			return null;// the natural order of the keys
+		}
+	}
+
+	/**
+	 * public int size()
+	 *
+	 * Returns the number of nodes in the tree.
+	 * 
+	 * prcondition: none
+	 * postcondition: none
+	 * 
+	 * complexity O(1)
+	 */
+	public int size()
+	{
+		return this.root.getSize(); // to be replaced by student code
+	}
+
+	/**
+	 * public int getRoot()
+	 *
+	 * Returns the root AVL node, or null if the tree is empty
+	 * 
+	 * precondition: none
+	 * postcondition: none
+	 * 
+	 * complexity O(1)
+	 * 
+	 */
+	public IAVLNode getRoot()
+	{
+		if(!this.root.isRealNode()) {
+			return null;
+		}
+		return this.root;
+	}
+
+	/**
+	 * public void setListener(TreeListener listener)
+	 *
+	 * sets the listener that is told about the rotations, rank changes, searches,
+	 * joins and splits of the tree, or turns the metrics off if listener is null.
+	 * trees made by split get the same listener.
+	 * complexity O(1)
+	 */
+	public void setListener(TreeListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * public TreeListener getListener()
+	 *
+	 * Returns the listener of the tree, or null if the metrics are off
+	 * complexity O(1)
+	 */
+	public TreeListener getListener() {
+		return this.listener;
+	}
+
+	/**
+	 * public String select(int i)
+	 *
+	 * Returns the info of the item with the i-th smallest key (counting from 0),
+	 * the same item as infoToArray()[i], or null if i is out of range.
+	 * uses the size field, so nothing is copied.
+	 * complexity O(log(n))
+	 */
+	public String select(int i)
+	{
+		IAVLNode node = selectNode(i);
+		if(node == null) {
+			return null;
+		}
+		return node.getValue();
+	}
+
+	/**
+	 * public int selectKey(int i)
+	 *
+	 * Returns the i-th smallest key (counting from 0), the same key as keysToArray()[i]
+	 * precondition: 0 <= i < size()
+	 * complexity O(log(n))
+	 */
+	public int selectKey(int i)
+	{
+		IAVLNode node = selectNode(i);
+		if(node == null) {
+			throw new IndexOutOfBoundsException("index " + i + " out of bounds for size " + size());
+		}
+		return node.getKey();
+	}
+
+	/**
+	 * public int rank(int k)
+	 *
+	 * Returns the number of keys in the tree that are smaller than k
+	 * (the index of k in keysToArray() if k is in the tree).
+	 * complexity O(log(n))
+	 */
+	public int rank(int k)
+	{
+		return countBelow(k, false);
+	}
+
+	/**
+	 * public int countRange(int lo, int hi)
+	 *
+	 * Returns the number of keys in the tree between lo and hi, inclusive,
+	 * or 0 if lo > hi.
+	 * complexity O(log(n))
+	 */
+	public int countRange(int lo, int hi)
+	{
+		if(lo > hi) {
+			return 0;
+		}
+		return countBelow(hi, true) - countBelow(lo, false);
+	}
+
+	/**
+	 * public String median()
+	 *
+	 * Returns the info of the item with the median key
+	 * (the lower one if the size is even), or null if the tree is empty.
+	 * complexity O(log(n))
+	 */
+	public String median()
+	{
+		return select((size() - 1) / 2);
+	}
+
+	/**
+	 * public IAVLNode floor(int k)
+	 *
+	 * Returns the node with the greatest key that is smaller than or equal to k,
+	 * or null if there is no such key
+	 * complexity O(log(n))
+	 */
+	public IAVLNode floor(int k)
+	{
+		return searchNear(k, true, true);
+	}
+
+	/**
+	 * public IAVLNode ceiling(int k)
+	 *
+	 * Returns the node with the smallest key that is greater than or equal to k,
+	 * or null if there is no such key
+	 * complexity O(log(n))
+	 */
+	public IAVLNode ceiling(int k)
+	{
+		return searchNear(k, false, true);
+	}
+
+	/**
+	 * public IAVLNode lower(int k)
+	 *
+	 * Returns the node with the greatest key that is strictly smaller than k,
+	 * or null if there is no such key
+	 * complexity O(log(n))
+	 */
+	public IAVLNode lower(int k)
+	{
+		return searchNear(k, true, false);
+	}
+
+	/**
+	 * public IAVLNode higher(int k)
+	 *
+	 * Returns the node with the smallest key that is strictly greater than k,
+	 * or null if there is no such key
+	 * complexity O(log(n))
+	 */
+	public IAVLNode higher(int k)
+	{
+		return searchNear(k, false, false);
+	}
+
+	/**
+	 * public Iterator<IAVLNode> rangeIterator(int lo, int hi)
+	 *
+	 * Returns an iterator over the nodes with lo <= key <= hi, in ascending order of keys.
+	 * the nodes are found lazily by walking the parent pointers - nothing is copied.
+	 * the tree must not be changed while the iterator is used.
+	 * complexity O(log(n)) to create, O(1) amortized per node
+	 */
+	public Iterator<IAVLNode> rangeIterator(int lo, int hi)
+	{
+		return new RangeIterator(ceiling(lo), hi, true);
+	}
+
+	/**
+	 * public Iterator<IAVLNode> descendingRangeIterator(int lo, int hi)
+	 *
+	 * Returns an iterator over the nodes with lo <= key <= hi, in descending order of keys.
+	 * the tree must not be changed while the iterator is used.
+	 * complexity O(log(n)) to create, O(1) amortized per node
+	 */
+	public Iterator<IAVLNode> descendingRangeIterator(int lo, int hi)
+	{
+		return new RangeIterator(floor(hi), lo, false);
+	}
+
+	/**
+	 * private IAVLNode searchNear(int k, boolean below, boolean inclusive)
+	 *
+	 * Returns the closest node below k (if below) or above k (otherwise),
+	 * where a node with key k counts only if inclusive. returns null if there is none.
+	 * complexity O(log(n))
+	 */
+	private IAVLNode searchNear(int k, boolean below, boolean inclusive) {
+		IAVLNode best = null;
+		IAVLNode node = this.root;
+		while(node.isRealNode()) {
+			if(node.getKey() == k) {
+				if(inclusive) {
+					return node;
+				}
+				node = below ? node.getLeft() : node.getRight();
+			}
+			else if((node.getKey() < k) == below) {// node is on the wanted side of k
+				best = node;
+				node = below ? node.getRight() : node.getLeft();
+			}
+			else {
+				node = below ? node.getLeft() : node.getRight();
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * private class RangeIterator
+	 *
+	 * iterates from a first node up to (or down to) a bound key,
+	 * stepping with successor or predecessor.
+	 */
+	private class RangeIterator implements Iterator<IAVLNode> {
+		private IAVLNode next; // the node next() returns, or null at the end
+		private final int bound; // the last key in range
+		private final boolean ascending;
+
+		private RangeIterator(IAVLNode first, int bound, boolean ascending) {
+			this.bound = bound;
+			this.ascending = ascending;
+			this.next = inRange(first) ? first : null;
+		}
+
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		public IAVLNode next() {
+			if(this.next == null) {
+				throw new NoSuchElementException();
+			}
+			IAVLNode node = this.next;
+			IAVLNode step = this.ascending ? successor(node) : predecessor(node);
+			this.next = inRange(step) ? step : null;
+			return node;
+		}
+
+		private boolean inRange(IAVLNode node) {
+			if(node == null) {
+				return false;
+			}
+			return this.ascending ? (node.getKey() <= this.bound) : (node.getKey() >= this.bound);
+		}
+	}
+
+	/**
+	 * private IAVLNode selectNode(int i)
+	 *
+	 * Returns the node with the i-th smallest key (counting from 0),
+	 * or null if i is out of range.
+	 * complexity O(log(n))
+	 */
+	private IAVLNode selectNode(int i) {
+		if((i < 0) || (i >= size())) {
+			return null;
+		}
+		IAVLNode node = this.root;
+		while(true) {
+			int leftSize = node.getLeft().getSize();
+			if(i == leftSize) {
+				return node;
+			}
+			if(i < leftSize) {
+				node = node.getLeft();
+			}
+			else {// skip the left sub tree and the node
+				i -= leftSize + 1;
+				node = node.getRight();
+			}
+		}
+	}
+
+	/**
+	 * private int indexOf(IAVLNode node)
+	 *
+	 * Returns the number of keys smaller than the key of node,
+	 * climbing the parent pointers and summing the sizes on the way.
+	 * complexity O(log(n))
+	 */
+	private int indexOf(IAVLNode node) {
+		int index = node.getLeft().getSize();
+		while(node.getParent() != null) {
+			IAVLNode parent = node.getParent();
+			if(parent.getRight() == node) {// the parent and its left sub tree are smaller
+				index += parent.getLeft().getSize() + 1;
+			}
+			node = parent;
+		}
+		return index;
+	}
+
+	/**
+	 * private int countBelow(int k, boolean inclusive)
+	 *
+	 * Returns the number of keys smaller than k,
+	 * or smaller than or equal to k if inclusive.
+	 * complexity O(log(n))
+	 */
+	private int countBelow(int k, boolean inclusive) {
+		int count = 0;
+		IAVLNode node = this.root;
+		while(node.isRealNode()) {
+			if((k > node.getKey()) || (inclusive && (k == node.getKey()))) {// the node and its left sub tree are below
+				count += node.getLeft().getSize() + 1;
+				node = node.getRight();
+			}
+			else {
+				node = node.getLeft();
+			}
+		}
+		return count;
+	}
+	/**
+	 * public string split(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x, which does not have to be in the tree.
+	 * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+	 * the item with key x, if there is one, is in neither of them.
+	 * the nodes are reused, so the tree is empty afterwards.
+	 * postcondition: none
+	 * 
+	 * complexity O(log(n))
+	 * 
+	 */   
+	public AVLTree[] split(int x)
+	{
+		SplitResult parts = splitWithPivot(x);
+		return new AVLTree[] {parts.smaller, parts.bigger};
+	}
+
+	/**
+	 * public SplitResult splitWithPivot(int x)
+	 *
+	 * splits the tree into 2 trees according to the key x, which does not have to be in the tree,
+	 * and keeps the node with key x apart.
+	 * Returns (t1, pivot, t2) where keys(t1) < x < keys(t2) and pivot is the detached
+	 * node with key x, or null if x is not in the tree.
+	 * the nodes are reused, so the tree is empty afterwards.
+	 * complexity O(log(n))
+	 */
+	public SplitResult splitWithPivot(int x) {
+		IAVLNode oldMin = this.min;
+		IAVLNode oldMax = this.max;
+		IAVLNode[] parts = splitNodes(this.root, x);
+		clear();
+		if(this.threaded && (parts[1] != null)) {
+			linkThreads(null, parts[1]);
+			linkThreads(parts[1], null);
+		}
+		return new SplitResult(treeOf(parts[0], oldMin, null), parts[1], treeOf(parts[2], null, oldMax));
+	}
+
+	/**
+	 * public AVLTree[] splitAtRank(int i)
+	 *
+	 * splits the tree into 2 trees by position, using the sizes of the nodes.
+	 * Returns an array [t1, t2] where t1 has the i smallest items and t2 has the rest.
+	 * the nodes are reused, so the tree is empty afterwards.
+	 * precondition: 0 <= i <= size()
+	 * complexity O(log(n))
+	 */
+	public AVLTree[] splitAtRank(int i) {
+		if((i < 0) || (i > size())) {
+			throw new IndexOutOfBoundsException("rank " + i + " is out of range for size " + size());
+		}
+		IAVLNode smaller = this.root;
+		IAVLNode bigger = EXTERNAL_LEAF;
+		IAVLNode biggerMin = null;
+		IAVLNode oldMin = this.min;
+		IAVLNode oldMax = this.max;
+		if(i < size()) {// the i-th item starts the bigger tree
+			biggerMin = selectNode(i);
+			IAVLNode[] parts = splitNodes(this.root, biggerMin.getKey());
+			smaller = parts[0];
+			bigger = joinNodes(EXTERNAL_LEAF, parts[1], parts[2]);
+		}
+		clear();
+		return new AVLTree[] {treeOf(smaller, oldMin, null), treeOf(bigger, biggerMin, oldMax)};
+	}
+
+	/**
+	 * private AVLTree treeOf(IAVLNode node, IAVLNode knownMin, IAVLNode knownMax)
+	 *
+	 * Returns a tree whose root is node, with the listener of this tree.
+	 * the min and the max are knownMin and knownMax, or found if they are null
+	 * (they are only used if the tree is not empty).
+	 * complexity O(1) if both are known, O(log(n)) otherwise
+	 */
+	private AVLTree treeOf(IAVLNode node, IAVLNode knownMin, IAVLNode knownMax) {
+		AVLTree tree = new AVLTree();
+		tree.listener = this.listener;
+		tree.threaded = this.threaded;
+		if(node.isRealNode()) {
+			node.setParent(null);
+			tree.root = node;
+			tree.min = (knownMin != null) ? knownMin : tree.findMin();
+			tree.max = (knownMax != null) ? knownMax : tree.findMax();
+			if(tree.threaded) {// cut the links to the other side of the split
+				linkThreads(null, tree.min);
+				linkThreads(tree.max, null);
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * public static class SplitResult
+	 *
+	 * the result of splitWithPivot: the trees of the smaller and bigger keys
+	 * and the node of the split key, or null if it was not in the tree.
+	 */
+	public static class SplitResult {
+		public final AVLTree smaller;
+		public final IAVLNode pivot;
+		public final AVLTree bigger;
+
+		private SplitResult(AVLTree smaller, IAVLNode pivot, AVLTree bigger) {
+			this.smaller = smaller;
+			this.pivot = pivot;
+			this.bigger = bigger;
+		}
+	}
+	
+	/**
+	 * public interface TreeListener
+	 *
+	 * is told about the work of an AVLTree, for finding degenerate workloads.
+	 * the calls come from the thread that changes the tree, in the middle of the
+	 * operation, so they should be short and must not touch the tree.
+	 * a tree without a listener only checks that it has none.
+	 */
+	public interface TreeListener {
+		default void onRotation(boolean doubleRotation) {} // a single rotation, or a double one counted once
+		default void onPromote() {} // a rank was increased by 1
+		default void onDemote() {} // a rank was decreased by 1
+		default void onSearch(int pathLength) {} // a descent from the root of search, insert or delete visited pathLength nodes
+		default void onJoin(int rankDifference) {} // two trees whose ranks differ by rankDifference were joined
+		default void onSplit(int iterations) {} // a split joined iterations sub trees on its way up
+	}
+
+	/**
+	 * public interface TreeMetricsMBean
+	 *
+	 * the JMX view of TreeMetrics.
+	 */
+	public interface TreeMetricsMBean {
+		long getSingleRotations();
+		long getDoubleRotations();
+		long getPromotions();
+		long getDemotions();
+		long getSearches();
+		long getSearchPathLength();
+		long getJoins();
+		long getJoinRankDifference();
+		long getSplits();
+		long getSplitIterations();
+		void reset();
+	}
+
+	/**
+	 * public static class TreeMetrics
+	 *
+	 * a TreeListener that adds everything up in LongAdders, so many trees in many
+	 * threads can share it. the path lengths, rank differences and iterations are
+	 * totals - divided by the number of searches, joins and splits they are averages.
+	 * it can be registered as a standard MBean, for example
+	 * ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("avl:type=TreeMetrics")).
+	 */
+	public static class TreeMetrics implements TreeListener, TreeMetricsMBean {
+		private final LongAdder singleRotations = new LongAdder();
+		private final LongAdder doubleRotations = new LongAdder();
+		private final LongAdder promotions = new LongAdder();
+		private final LongAdder demotions = new LongAdder();
+		private final LongAdder searches = new LongAdder();
+		private final LongAdder searchPathLength = new LongAdder();
+		private final LongAdder joins = new LongAdder();
+		private final LongAdder joinRankDifference = new LongAdder();
+		private final LongAdder splits = new LongAdder();
+		private final LongAdder splitIterations = new LongAdder();
+
+		public void onRotation(boolean doubleRotation) {
+			(doubleRotation ? doubleRotations : singleRotations).increment();
+		}
+
+		public void onPromote() {
+			promotions.increment();
+		}
+
+		public void onDemote() {
+			demotions.increment();
+		}
+
+		public void onSearch(int pathLength) {
+			searches.increment();
+			searchPathLength.add(pathLength);
+		}
+
+		public void onJoin(int rankDifference) {
+			joins.increment();
+			joinRankDifference.add(rankDifference);
+		}
+
+		public void onSplit(int iterations) {
+			splits.increment();
+			splitIterations.add(iterations);
+		}
+
+		public long getSingleRotations() {
+			return singleRotations.sum();
+		}
+
+		public long getDoubleRotations() {
+			return doubleRotations.sum();
+		}
+
+		public long getPromotions() {
+			return promotions.sum();
+		}
+
+		public long getDemotions() {
+			return demotions.sum();
+		}
+
+		public long getSearches() {
+			return searches.sum();
+		}
+
+		public long getSearchPathLength() {
+			return searchPathLength.sum();
+		}
+
+		public long getJoins() {
+			return joins.sum();
+		}
+
+		public long getJoinRankDifference() {
+			return joinRankDifference.sum();
+		}
+
+		public long getSplits() {
+			return splits.sum();
+		}
+
+		public long getSplitIterations() {
+			return splitIterations.sum();
+		}
+
+		/**
+		 * public void reset()
+		 *
+		 * sets all of the counters to 0. counts that happen meanwhile may be lost
+		 * complexity O(1)
+		 */
+		public void reset() {
+			for(LongAdder adder : new LongAdder[] {singleRotations, doubleRotations, promotions, demotions,
+					searches, searchPathLength, joins, joinRankDifference, splits, splitIterations}) {
+				adder.reset();
+			}
+		}
+	}
+
+	/**
+	 * public join(IAVLNode x, AVLTree t)
+	 *
+	 * joins t and x with the tree. 	
+	 * Returns the complexity of the operation (rank difference between the tree and t + 1)
+	 * precondition: keys(x,t) < keys() or keys(x,t) > keys()
+	 * x isnt empty - no null no external leaf
+	 * postcondition: none
+	 * complexity O(log(n))
+	 */  
+	public int join(IAVLNode x, AVLTree t) {
+		t.invalidateCache();// the nodes of t move to this tree
+		t.finger = null;
+		int complexity = joinSetMinMax(x, t, true);
+		if(this.listener != null) {
+			this.listener.onJoin(complexity - 1);
+		}
+		return complexity;
+	}
+	/**
+	 * public joinSetMinMax(IAVLNode x, AVLTree t, boolean updateMinMax)
+	 *
+	 * joins t and x with the tree. 	
+	 * Returns the complexity of the operation (rank difference between the tree and t + 1)
+	 * precondition: keys(x,t) < keys() or keys(x,t) > keys()
+	 * x isnt empty - no null no external leaf
+	 * postcondition: none
+	 * complexity O(log(n))
+	 */   
+	public int joinSetMinMax(IAVLNode x, AVLTree t, boolean updateMinMax)
+	{
+		if(this.threaded) {
+			if(!(x instanceof AVLNode)) {
+				throw new IllegalArgumentException("the nodes of a threaded tree must be AVLNodes");
+			}
+			t.setThreaded(true);
+			linkThreads(null, x);
+			linkThreads(x, null);
+		}
+		if((t.getRoot()==null)&&(this.getRoot()==null)) {// both trees are empty
+				x.setLeft(EXTERNAL_LEAF);
+				x.setRight(EXTERNAL_LEAF);
+				x.setParent(null);
+			    this.root=x;
+			    this.min=x;
+				this.max=x;
+				x.setSize(1);
+				x.setHeight(0);
+				return 1;			
+		}
+		// x isnt empty either 		
+		boolean myTreeIsLeft=false;
+		if((this.root.isRealNode())&&(t.root.isRealNode())) {//if both not empty
+			 myTreeIsLeft = this.root.getKey() < x.getKey(); 
+		}
+		//one is empty the other one isnt
+		else {
+			if(!this.root.isRealNode()) {//my tree is empty
+				if(t.root.getKey()>x.getKey()) {//t isnt empty
+					myTreeIsLeft=true;
+				}
+			}
+			else {
+				if(this.root.getKey()<x.getKey()) {
+					myTreeIsLeft=true;
+			}
+		}
+		}	
+		AVLTree leftTree = myTreeIsLeft ? this : t;
+		AVLTree rightTree = myTreeIsLeft ? t : this;
+		IAVLNode newMin = leftTree.root.isRealNode() ? leftTree.min : x;// known before the join, so no walk is needed
+		IAVLNode newMax = rightTree.root.isRealNode() ? rightTree.max : x;
+		if(this.threaded) {
+			linkThreads(leftTree.root.isRealNode() ? leftTree.max : null, x);
+			linkThreads(x, rightTree.root.isRealNode() ? rightTree.min : null);
+		}
+		int heightOfMyTree= this.root.getHeight();
+		int heightOfT=t.root.getHeight();
+		int complexity;
+		//start joining
+		if (myTreeIsLeft) {
+			if( heightOfMyTree > heightOfT) {//my tree is left and bigger
+				joinBiggerTreeIsLeft(t,x,this,false);
+				complexity = heightOfMyTree - heightOfT + 1;
+			}
+			else if (heightOfMyTree == heightOfT) {//my tree is left and heights are equal
+				joinSameHeights(this,x,t);
+				complexity = 1;
+			}
+			else {//my tree is left and smaller		
+				joinBiggerTreeIsRight(this,x,t,true);
+				complexity = heightOfT - heightOfMyTree + 1;
+			}
+		}			
+		//my tree goes right
+		else {	
+			if(heightOfMyTree>heightOfT) {//my tree is right and bigger
+				joinBiggerTreeIsRight(t ,x ,this,false);
+				complexity = heightOfMyTree - heightOfT + 1;
+			}
+			else if(heightOfMyTree == heightOfT) {
+				joinSameHeights(t,x,this);
+				complexity = 1;
+			}
+			else {//my tree is right and smaller
+				joinBiggerTreeIsLeft(this,x,t,true);
+				complexity = heightOfT - heightOfMyTree + 1;
+			}
+		}
+		if(updateMinMax) {
+			this.min = newMin;
+			this.max = newMax;
+		}
+		return complexity;
+	}
+	
+	/**
+	 * private void joinSameHeights(AVLTree leftSon,IAVLNode x,AVLTree rightSon)
+	 * joins leftSon and x and rightSon	  
+	 * pre:leftSon and rightSon are in the same height
+	 * post: the tree this is balanced
+	 * 
+	 * complexity O(1) 
+	 */   
+	private void joinSameHeights(AVLTree leftSon,IAVLNode x,AVLTree rightSon) {
+		x.setRight(rightSon.root);
+		rightSon.root.setParent(x);
+		x.setLeft(leftSon.root);
+		leftSon.root.setParent(x);
+		x.setSize(leftSon.root.getSize() + rightSon.root.getSize()+1);
+		x.setHeight(rightSon.root.getHeight()+1);
+		this.root=x;
+		x.setParent(null);
+	}
+	/**
+	 * private void joinBiggerTreeIsLeft(AVLTree smaller,IAVLNode x,AVLTree bigger, boolean myTreeIsSmaller)
+	 * joins smaller and x and bigger	  
+	 * pre: bigger goes left, smaller goes right 
+	 * post: the tree this is balanced - calls rebalanceInsertion
+	 *
+	 * complexity O(log(n))
+	 */   
+	private void joinBiggerTreeIsLeft(AVLTree smaller,IAVLNode x,AVLTree bigger, boolean myTreeIsSmaller) {
+		IAVLNode parentOfX=searchRankNodeLeftJoin(bigger.root,smaller.root.getHeight(),smaller.root.getSize()+1);
+		IAVLNode newLeftSon = (parentOfX == null) ? bigger.root : parentOfX.getRight();
+		x.setLeft(newLeftSon);
+		if(newLeftSon.isRealNode()) {// the shared external leaf has no parent
+			newLeftSon.setParent(x);
+		}
+		x.setRight(smaller.root);
+		if(smaller.root.isRealNode()) {
+			smaller.root.setParent(x);
+		}
+		x.setHeight(smaller.root.getHeight()+1);
+		x.setSize(smaller.root.getSize()+newLeftSon.getSize()+1);
+		x.setParent(parentOfX);
+		if(parentOfX == null) {// x replaces the root of bigger
+			bigger.root = x;
+		}
+		else {
+			parentOfX.setRight(x);
+		}
+		if(myTreeIsSmaller) {
+			smaller.root=bigger.root;
+		}
+		rebalanceInsertion(x);			
+	}
+	
+	/**
+	 * private void joinBiggerTreeIsRight(AVLTree smaller,IAVLNode x,AVLTree bigger, boolean myTreeIsSmaller)
+	 * joins smaller and x and bigger	  
+	 * pre: bigger goes right, smaller goes left 
+	 * post: the tree this is balanced - calls rebalanceInsertion
+	 * 
+	 * complexity O(log(n))
+	 */   
+	private void joinBiggerTreeIsRight(AVLTree smaller,IAVLNode x,AVLTree bigger,boolean myTreeIsSmaller ) {
+		IAVLNode parentOfX = searchRankNodeRightJoin(bigger.root, smaller.root.getHeight(), smaller.root.getSize()+1);
+		IAVLNode newRightSon = (parentOfX == null) ? bigger.root : parentOfX.getLeft();
+		x.setRight(newRightSon);
+		if(newRightSon.isRealNode()) {// the shared external leaf has no parent
+			newRightSon.setParent(x);
+		}
+		x.setLeft(smaller.root);
+		if(smaller.root.isRealNode()) {
+			smaller.root.setParent(x);
+		}
+		x.setHeight(smaller.root.getHeight()+1);
+		x.setSize(smaller.root.getSize()+newRightSon.getSize()+1);
+		x.setParent(parentOfX);
+		if(parentOfX == null) {// x replaces the root of bigger
+			bigger.root = x;
+		}
+		else {
+			parentOfX.setLeft(x);
+		}
+		if(myTreeIsSmaller) {
+			smaller.root=bigger.root;
+		}
+		rebalanceInsertion(x);	
+	}
+
+	/**
+	 * private IAVLNode searchRankNodeRightJoin(IAVLNode node, int rank, int newSize)
+	 * search the new right son of x on the left spine of the tree of node -
+	 * the first node whose rank is at most rank+1.
+	 * returns its parent (the new parent of x), or null if it is the root
+	 * complexity O(log(n))
+	 */   
+	private IAVLNode searchRankNodeRightJoin(IAVLNode node, int rank, int newSize) {// the keys of the tallest tree are greater then the node
+		IAVLNode parent = null;
+		while((node.isRealNode()) && (node.getHeight() > rank +1)) {
+			node.setSize(newSize + node.getSize());
+			parent = node;
+			node = node.getLeft();
+		}
+		return parent;
+	}
+	/**
+	 * private IAVLNode searchRankNodeLeftJoin(IAVLNode node, int rank, int newSize)
+	 * search the new left son of x on the right spine of the tree of node -
+	 * the first node whose rank is at most rank+1.
+	 * returns its parent (the new parent of x), or null if it is the root
+	 * complexity O(log(n))
+	 */   
+	private IAVLNode searchRankNodeLeftJoin(IAVLNode node, int rank, int newSize) {// the keys of the taller tree are smaller then the node
+		IAVLNode parent = null;
+		while((node.isRealNode()) && (node.getHeight() > rank + 1)) {
+			node.setSize(newSize + node.getSize());
+			parent = node;
+			node = node.getRight();
+		}
+		return parent;
+	}
+	/**
+	 * public interface IAVLNode
+	 * ! Do not delete or modify this - otherwise all tests will fail !
+	 */
+	public interface IAVLNode{	
+		public int getKey(); //returns node's key (for virtuval node return -1)
+		public String getValue(); //returns node's value [info] (for virtuval node return null)
+		public void setLeft(IAVLNode node); //sets left child
+		public IAVLNode getLeft(); //returns left child (if there is no left child return null)
+		public void setRight(IAVLNode node); //sets right child
+		public IAVLNode getRight(); //returns right child (if there is no right child return null)
+		public void setParent(IAVLNode node); //sets parent
+		public IAVLNode getParent(); //returns the parent (if there is no parent return null)
+		public boolean isRealNode(); // Returns True if this is a non-virtual AVL node
+		public void setHeight(int height); // sets the height of the node
+		public int getHeight(); // Returns the height of the node (-1 for virtual nodes)
+		public void setSize(int newSize); // sets the node's size
+		public int getSize();// return the node's size
+	}
+
+	/**
+	 * public class AVLNode
+	 *
+	 * If you wish to implement classes other than AVLTree
+	 * (for example AVLNode), do it in this file, not in 
+	 * another file.
+	 * This class can and must be modified.
+	 * (It must implement IAVLNode)
+	 */
+	public class AVLNode implements IAVLNode{
+		//:Fields of class AVLNode
+		private int key;
+		private String value;
+		private int rank;
+		private IAVLNode left;
+		private IAVLNode right;
+		private IAVLNode parent;
+		private int size; //:each node holds the number of nodes in the subtree that this node is the root of
+		private AVLNode next; // the node with the next key, while the tree is threaded
+		private AVLNode prev; // the node with the previous key, while the tree is threaded
+
+		/**
+		 * public AVLNode(int newKey, String newValue)
+		 *
+		 * constructor
+		 * complexity O(1)
+		 */
+		public AVLNode(int newKey, String newValue) {
+			this.key=newKey;
+			this.value=newValue;
+			this.rank=0;
+			this.left=null;
+			this.right=null;
+			this.parent=null;
+			this.size=1;	    	
+		}
+		
+		/**
+		 * public int getKey()
+		 *
+		 * getter of field key
+		 * complexity O(1)
+		 */
+		public int getKey()
+		{
+			return this.key; 
+		}
+
+		/**
+		 * public String getValue()
+		 *
+		 * getter of field value
+		 * complexity O(1)
+		 */
+		public String getValue()
+		{
+			return this.value; 
+		}
+
+		/**
+		 * public void setLeft(IAVLNode node)
+		 *
+		 * setter of field left
+		 * complexity O(1)
+		 */
+		public void setLeft(IAVLNode node)
+		{	
+			this.left = node;		//:define the left son
+		}
+
+		/**
+		 * public void getLeft()
+		 *
+		 * getter of field left
+		 * complexity O(1)
+		 */
+		public IAVLNode getLeft()
+		{
+
+			return this.left; 
+		}
+
+		/**
+		 * public void setRight(IAVLNode node)
+		 *
+		 * setter of field right
+		 * complexity O(1)
+		 */
+		public void setRight(IAVLNode node)
+		{
+			this.right = node;		// define the right son
+		}
+		
+		/**
+		 * public void getRight()
+		 *
+		 * getter of field right
+		 * complexity O(1)
+		 */
+		public IAVLNode getRight()
+		{
+			return this.right; 
+		}
+		
+		/**
+		 * public void setParent(IAVLNode node)
+		 *
+		 * setter of field parent
+		 * complexity O(1)
+		 */
+		public void setParent(IAVLNode node)
+		{
+			this.parent=node;
+		}
+
+		/**
+		 * public void getParent()
+		 *
+		 * getter of field parent
+		 * complexity O(1)
+		 */
+		public IAVLNode getParent()
+		{
+			return this.parent; 
+		}
+
+
+		/**
+		 * public boolean isRealNode()
+		 *
+		 * returns true if the node is real and not external
+		 * complexity O(1)
+		 */
+		public boolean isRealNode()
+		{
+			return (this.rank!=-1); //:only an external leaf has rank -1, so every key can be used
+		}
+
+		/**
+		 * public void setHeight(int height)
+		 *
+		 * setter of field height
+		 * complexity O(1)
+		 */
+		public void setHeight(int height)//: In AVL tree rank = height 
+		{
+			this.rank=height ; 
+		}
+		
+		/**
+		 * public void getHeight()
+		 *
+		 * getter of field height
+		 * complexity O(1)
+		 */
+		public int getHeight()
+		{
+			return this.rank; 
+		}
+
+		/**
+		 * public void setSize(int newSize)
+		 *
+		 * setter of field size
+		 * complexity O(1)
+		 */
+		public void setSize(int newSize)
+		{
+			this.size=newSize ; 
+		}
+		
+		/**
+		 * public void getSize()
+		 *
+		 * getter of field size
+		 * complexity O(1)
+		 */
+		public int getSize()
+		{
+			return this.size; 
+		}
+	}
+
+	/**
+	 * private static class ExternalLeaf
+	 *
+	 * the external leaf that is shared by all the trees.
+	 * it is immutable - it has no sons and no parent,
+	 * so the tree never sets a pointer in it.
+	 */
+	private static class ExternalLeaf implements IAVLNode{
+
+		public int getKey() {
+			return -1;
+		}
+
+		public String getValue() {
+			return null;
+		}
+
+		public void setLeft(IAVLNode node) {
+			throw new UnsupportedOperationException("the external leaf is immutable");
+		}
+
+		public IAVLNode getLeft() {
+			return null;
+		}
+
+		public void setRight(IAVLNode node) {
+			throw new UnsupportedOperationException("the external leaf is immutable");
+		}
+
+		public IAVLNode getRight() {
+			return null;
+		}
+
+		public void setParent(IAVLNode node) {
+			throw new UnsupportedOperationException("the external leaf is immutable");
+		}
+
+		public IAVLNode getParent() {
+			return null;
+		}
+
+		public boolean isRealNode() {
+			return false;
+		}
+
+		public void setHeight(int height) {
+			throw new UnsupportedOperationException("the external leaf is immutable");
+		}
+
+		public int getHeight() {
+			return -1;
+		}
+
+		public void setSize(int newSize) {
+			throw new UnsupportedOperationException("the external leaf is immutable");
+		}
+
+		public int getSize() {
+			return 0;
+		}
+	}
+
+	/**
+	 * public static class IndexedAVLTree
+	 *
+	 * An AVL tree with distinct integer keys and info, whose nodes are
+	 * int indexes into a node store (parallel primitive arrays, or fixed size
+	 * records in a memory mapped file) instead of AVLNode objects.
+	 * It supports the same public API as AVLTree.
+	 * Index 0 of the store is the external leaf (NIL).
+	 * IAVLNode views of the nodes are created only when getRoot() is called.
+	 * the trees that split creates share the node store of the tree they came from,
+	 * so closing one of them closes the store of all of them; this matters only for
+	 * a tree on the heap, whose close does nothing, since a tree opened from a file
+	 * cannot be split.
+	 */
+	public static class IndexedAVLTree implements Closeable {
+
+		private static final int NIL = 0; // the index of the external leaf
+
+		private final NodeStore store; // the nodes - shared by the trees that split creates
+		private int root;
+		private int min;
+		private int max;
+		private boolean savesRoot; // true for the tree returned by open - its root is kept in the store
+
+		/**
+		 * public IndexedAVLTree()
+		 *
+		 * creates an empty tree with its own node store
+		 * complexity O(1)
+		 */
+		public IndexedAVLTree() {
+			this(new ArrayNodeStore(16));
+		}
+
+		/**
+		 * public IndexedAVLTree(int initialCapacity)
+		 *
+		 * creates an empty tree whose node store can hold initialCapacity nodes before it grows
+		 * complexity O(initialCapacity)
+		 */
+		public IndexedAVLTree(int initialCapacity) {
+			this(new ArrayNodeStore(initialCapacity));
+		}
+
+		/**
+		 * private IndexedAVLTree(NodeStore store)
+		 *
+		 * creates an empty tree on top of an existing node store
+		 * complexity O(1)
+		 */
+		private IndexedAVLTree(NodeStore store) {
+			this.store = store;
+			this.root = NIL;
+			this.min = NIL;
+			this.max = NIL;
+		}
+
+		/**
+		 * public static IndexedAVLTree open(Path path)
+		 *
+		 * opens the tree kept off heap in the memory mapped file path
+		 * (and its value arena path.arena), creating them if they do not exist.
+		 * the tree is not rebuilt - the nodes are used where they are in the file.
+		 * the file keeps a single root, so the tree cannot be split (see split).
+		 * complexity O(log(n))
+		 */
+		public static IndexedAVLTree open(Path path) throws IOException {
+			IndexedAVLTree tree = new IndexedAVLTree(MappedNodeStore.open(path));
+			tree.savesRoot = true;
+			tree.root = tree.store.savedRoot();
+			tree.min = tree.store.leftmost(tree.root);
+			tree.max = tree.store.rightmost(tree.root);
+			return tree;
+		}
+
+		/**
+		 * public void close()
+		 *
+		 * saves the root of an opened tree, writes the mapped file to the disk and closes it.
+		 * does nothing for a tree on the heap
+		 * complexity O(1)
+		 */
+		public void close() throws IOException {
+			saveRoot();
+			store.close();
+		}
+
+		/**
+		 * private void saveRoot()
+		 *
+		 * keeps the root in the store if this is the tree returned by open
+		 * complexity O(1)
+		 */
+		private void saveRoot() {
+			if(this.savesRoot) {
+				store.saveRoot(this.root);
+			}
+		}
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 * complexity O(1)
+		 */
+		public boolean empty() {
+			return this.root == NIL;
+		}
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 * complexity O(log(n))
+		 */
+		public String search(int k) {
+			int node = this.root;
+			while(node != NIL) {
+				int key = store.key(node);
+				if(key == k) {
+					return store.value(node);
+				}
+				node = (k < key) ? store.left(node) : store.right(node);
+			}
+			return null;
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the tree.
+		 * returns the number of rebalancing operations (rotations and rank changes),
+		 * or -1 if an item with key k already exists in the tree.
+		 * complexity O(log(n))
+		 */
+		public int insert(int k, String i) {
+			if(this.root == NIL) {// empty tree
+				this.root = store.allocate(k, i);
+				this.min = this.root;
+				this.max = this.root;
+				return 0;
+			}
+			int parent = NIL;
+			int node = this.root;
+			while(node != NIL) {
+				int key = store.key(node);
+				if(key == k) {// node already exists
+					return -1;
+				}
+				parent = node;
+				node = (k < key) ? store.left(node) : store.right(node);
+			}
+			node = store.allocate(k, i);
+			store.setParent(node, parent);
+			if(k < store.key(parent)) {
+				store.setLeft(parent, node);
+			}
+			else {
+				store.setRight(parent, node);
+			}
+			if(k < store.key(this.min)) {
+				this.min = node;
+			}
+			if(k > store.key(this.max)) {
+				this.max = node;
+			}
+			store.rebalanceOps = 0;
+			this.root = store.fixUp(parent);
+			saveRoot();
+			return store.rebalanceOps;
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the tree, if it is there.
+		 * returns the number of rebalancing operations (rotations and rank changes),
+		 * or -1 if an item with key k was not found in the tree.
+		 * complexity O(log(n))
+		 */
+		public int delete(int k) {
+			int node = this.root;
+			while((node != NIL) && (store.key(node) != k)) {
+				node = (k < store.key(node)) ? store.left(node) : store.right(node);
+			}
+			if(node == NIL) {// node does not exist in tree
+				return -1;
+			}
+			if(node == this.min) {// the min has no left son, so this is O(1)
+				this.min = store.successor(node);
+			}
+			if(node == this.max) {// the max has no right son, so this is O(1)
+				this.max = store.predecessor(node);
+			}
+			if((store.left(node) != NIL) && (store.right(node) != NIL)) {// node has two sons
+				int successor = store.successor(node);// move the successor's item here and remove the successor's slot
+				store.moveItem(successor, node);
+				if(this.max == successor) {
+					this.max = node;
+				}
+				node = successor;
+			}
+			int son = (store.left(node) != NIL) ? store.left(node) : store.right(node);
+			int parent = store.parent(node);
+			store.replaceSon(parent, node, son);
+			store.free(node);
+			store.rebalanceOps = 0;
+			this.root = (parent == NIL) ? son : store.fixUp(parent);
+			saveRoot();
+			return store.rebalanceOps;
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(1)
+		 */
+		public String min() {
+			return (this.min == NIL) ? null : store.value(this.min);
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(1)
+		 */
+		public String max() {
+			return (this.max == NIL) ? null : store.value(this.max);
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 * complexity O(n)
+		 */
+		public int[] keysToArray() {
+			int[] arr = new int[size()];
+			int node = this.min;
+			for(int i = 0; i < arr.length; i++) {
+				arr[i] = store.key(node);
+				node = store.successor(node);
+			}
+			return arr;
+		}
+
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree,
+		 * sorted by their respective keys,
+		 * or an empty array if the tree is empty.
+		 * complexity O(n)
+		 */
+		public String[] infoToArray() {
+			String[] arr = new String[size()];
+			int node = this.min;
+			for(int i = 0; i < arr.length; i++) {
+				arr[i] = store.value(node);
+				node = store.successor(node);
+			}
+			return arr;
+		}
+
+		/**
+		 * public void forEach(IntObjConsumer<String> action)
+		 *
+		 * calls action with the key and info of every item, in the order of the keys
+		 * complexity O(n)
+		 */
+		public void forEach(IntObjConsumer<String> action) {
+			for(int node = this.min; node != NIL; node = store.successor(node)) {
+				action.accept(store.key(node), store.value(node));
+			}
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 * complexity O(1)
+		 */
+		public int size() {
+			return store.size(this.root);
+		}
+
+		/**
+		 * public IAVLNode getRoot()
+		 *
+		 * Returns a view of the root node, or null if the tree is empty
+		 * complexity O(1)
+		 */
+		public IAVLNode getRoot() {
+			return (this.root == NIL) ? null : new NodeView(this.root);
+		}
+
+		/**
+		 * public IndexedAVLTree[] split(int x)
+		 *
+		 * splits the tree into 2 trees according to the key x, which does not have to be in the tree.
+		 * Returns an array [t1, t2] with two trees. keys(t1) < x < keys(t2).
+		 * the item with key x, if there is one, is in neither of them.
+		 * the two trees share the node store of this tree, which is left empty.
+		 * throws UnsupportedOperationException for a tree opened from a file, whose file
+		 * could keep the root of only one of the two trees
+		 * complexity O(log(n))
+		 */
+		public IndexedAVLTree[] split(int x) {
+			if(this.savesRoot) {
+				throw new UnsupportedOperationException("a tree opened from a file cannot be split, since the file keeps a single root");
+			}
+			int last = NIL; // the last node on the search path of x
+			int node = this.root;
+			while((node != NIL) && (store.key(node) != x)) {
+				last = node;
+				node = (x < store.key(node)) ? store.left(node) : store.right(node);
+			}
+			int smaller = NIL;
+			int bigger = NIL;
+			int parent = last;
+			if(node != NIL) {// x is in the tree
+				smaller = store.left(node);
+				bigger = store.right(node);
+				if(smaller != NIL) {
+					store.setParent(smaller, NIL);
+				}
+				if(bigger != NIL) {
+					store.setParent(bigger, NIL);
+				}
+				parent = store.parent(node);
+				store.free(node);
+			}
+			while(parent != NIL) {// join the sub trees on the way up
+				int grandParent = store.parent(parent);
+				if(store.key(parent) < x) {// arriving the parent from right
+					smaller = joinNodes(store.left(parent), parent, smaller);
+				}
+				else {// arriving the parent from left
+					bigger = joinNodes(bigger, parent, store.right(parent));
+				}
+				parent = grandParent;
+			}
+			this.root = NIL;
+			this.min = NIL;
+			this.max = NIL;
+			return new IndexedAVLTree[] {withRoot(smaller), withRoot(bigger)};
+		}
+
+		/**
+		 * public int join(IAVLNode x, IndexedAVLTree t)
+		 *
+		 * joins t and x with the tree, and leaves t empty like AVLTree.join.
+		 * if t does not share this tree's node store its nodes are moved into it first.
+		 * Returns the complexity of the operation (rank difference between the tree and t + 1)
+		 * precondition: keys(x,t) < keys() or keys(x,t) > keys()
+		 * complexity O(log(n)) if t shares the node store, O(|t| + log(n)) otherwise
+		 */
+		public int join(IAVLNode x, IndexedAVLTree t) {
+			int other = (t.store == this.store) ? t.root : moveSubtree(t.store, t.root, NIL);
+			int complexity = Math.abs(store.rank(this.root) - store.rank(other)) + 1;
+			int middle = store.allocate(x.getKey(), x.getValue());
+			boolean myTreeIsLeft = (this.root != NIL) ? (store.key(this.root) < x.getKey()) : ((other != NIL) && (store.key(other) > x.getKey()));
+			if(myTreeIsLeft) {
+				this.root = joinNodes(this.root, middle, other);
+			}
+			else {
+				this.root = joinNodes(other, middle, this.root);
+			}
+			this.min = store.leftmost(this.root);
+			this.max = store.rightmost(this.root);
+			t.root = NIL;// t's nodes now belong to this tree
+			t.min = NIL;
+			t.max = NIL;
+			t.saveRoot();
+			saveRoot();
+			return complexity;
+		}
+
+		/**
+		 * private IndexedAVLTree withRoot(int node)
+		 *
+		 * returns a tree on this tree's node store whose root is node
+		 * complexity O(log(n))
+		 */
+		private IndexedAVLTree withRoot(int node) {
+			IndexedAVLTree tree = new IndexedAVLTree(this.store);
+			tree.root = node;
+			tree.min = store.leftmost(node);
+			tree.max = store.rightmost(node);
+			return tree;
+		}
+
+		/**
+		 * private int joinNodes(int left, int middle, int right)
+		 *
+		 * joins the sub trees left and right with the node middle between them.
+		 * returns the root of the joined tree
+		 * precondition: keys(left) < key(middle) < keys(right)
+		 * complexity O(|rank(left) - rank(right)| + 1)
+		 */
+		private int joinNodes(int left, int middle, int right) {
+			int leftRank = store.rank(left);
+			int rightRank = store.rank(right);
+			if(left != NIL) {
+				store.setParent(left, NIL);
+			}
+			if(right != NIL) {
+				store.setParent(right, NIL);
+			}
+			if(leftRank > rightRank + 1) {// hang middle on the right spine of left
+				int parent = NIL;
+				int node = left;
+				while(store.rank(node) > rightRank + 1) {
+					parent = node;
+					node = store.right(node);
+				}
+				link(middle, node, right);
+				store.setRight(parent, middle);
+				store.setParent(middle, parent);
+				return store.fixUp(parent);
+			}
+			if(rightRank > leftRank + 1) {// hang middle on the left spine of right
+				int parent = NIL;
+				int node = right;
+				while(store.rank(node) > leftRank + 1) {
+					parent = node;
+					node = store.left(node);
+				}
+				link(middle, left, node);
+				store.setLeft(parent, middle);
+				store.setParent(middle, parent);
+				return store.fixUp(parent);
+			}
+			link(middle, left, right);
+			store.setParent(middle, NIL);
+			return middle;
+		}
+
+		/**
+		 * private void link(int node, int left, int right)
+		 *
+		 * sets left and right as the sons of node and updates its rank and size
+		 * complexity O(1)
+		 */
+		private void link(int node, int left, int right) {
+			store.setLeft(node, left);
+			store.setRight(node, right);
+			if(left != NIL) {
+				store.setParent(left, node);
+			}
+			if(right != NIL) {
+				store.setParent(right, node);
+			}
+			store.update(node);
+		}
+
+		/**
+		 * private int moveSubtree(NodeStore from, int node, int parent)
+		 *
+		 * copies the sub tree of node in the store from into this tree's store
+		 * and frees it in from.
+		 * returns the root of the copy
+		 * complexity O(n)
+		 */
+		private int moveSubtree(NodeStore from, int node, int parent) {
+			if(node == NIL) {
+				return NIL;
+			}
+			int copy = store.allocate(from.key(node), from.value(node));
+			store.setRank(copy, from.rank(node));
+			store.setSize(copy, from.size(node));
+			store.setParent(copy, parent);
+			store.setLeft(copy, moveSubtree(from, from.left(node), copy));
+			store.setRight(copy, moveSubtree(from, from.right(node), copy));
+			from.free(node);
+			return copy;
+		}
+
+		/**
+		 * private class NodeView
+		 *
+		 * an IAVLNode view of a node in the store.
+		 * the setters write through to the store.
+		 */
+		private class NodeView implements IAVLNode {
+			private final int index;
+
+			private NodeView(int index) {
+				this.index = index;
+			}
+
+			public int getKey() {
+				return (index == NIL) ? -1 : store.key(index);
+			}
+
+			public String getValue() {
+				return (index == NIL) ? null : store.value(index);
+			}
+
+			public void setLeft(IAVLNode node) {
+				store.setLeft(writableIndex(), indexOf(node));
+			}
+
+			public IAVLNode getLeft() {
+				return (index == NIL) ? null : new NodeView(store.left(index));
+			}
+
+			public void setRight(IAVLNode node) {
+				store.setRight(writableIndex(), indexOf(node));
+			}
+
+			public IAVLNode getRight() {
+				return (index == NIL) ? null : new NodeView(store.right(index));
+			}
+
+			public void setParent(IAVLNode node) {
+				store.setParent(writableIndex(), indexOf(node));
+			}
+
+			public IAVLNode getParent() {
+				return ((index == NIL) || (store.parent(index) == NIL)) ? null : new NodeView(store.parent(index));
+			}
+
+			public boolean isRealNode() {
+				return index != NIL;
+			}
+
+			public void setHeight(int height) {
+				store.setRank(writableIndex(), height);
+			}
+
+			public int getHeight() {
+				return store.rank(index);
+			}
+
+			public void setSize(int newSize) {
+				store.setSize(writableIndex(), newSize);
+			}
+
+			public int getSize() {
+				return store.size(index);
+			}
+
+			/**
+			 * private int writableIndex()
+			 *
+			 * returns the index of this node, which must not be the external leaf
+			 * complexity O(1)
+			 */
+			private int writableIndex() {
+				if(index == NIL) {
+					throw new UnsupportedOperationException("the external leaf is immutable");
+				}
+				return index;
+			}
+
+			/**
+			 * private int indexOf(IAVLNode node)
+			 *
+			 * returns the index of a view of the same store, NIL for null
+			 * complexity O(1)
+			 */
+			private int indexOf(IAVLNode node) {
+				if(node == null) {
+					return NIL;
+				}
+				if(!(node instanceof NodeView) || (((NodeView)node).store() != store)) {
+					throw new IllegalArgumentException("node is not a node of this store");
+				}
+				return ((NodeView)node).index;
+			}
+
+			private NodeStore store() {
+				return store;
+			}
+		}
+	}
+
+	/**
+	 * public interface IntObjConsumer<T>
+	 *
+	 * an action on an int key and its value
+	 */
+	public interface IntObjConsumer<T> {
+		public void accept(int key, T value);
+	}
+
+	/**
+	 * public interface LongObjConsumer<T>
+	 *
+	 * an action on a long key and its value
+	 */
+	public interface LongObjConsumer<T> {
+		public void accept(long key, T value);
+	}
+
+	/**
+	 * abstract static class NodeLinks
+	 *
+	 * the balancing part of the trees whose nodes are int indexes - IndexedAVLTree
+	 * (through its NodeStore), GenericAVLTree, IntAVLTree and LongAVLTree.
+	 * the subclasses keep the links, ranks and sizes of the nodes, and this class
+	 * rotates, rebalances and walks them.
+	 * index 0 is the external leaf (rank -1, size 0) and is never written.
+	 */
+	abstract static class NodeLinks {
+		static final int NIL = 0; // the index of the external leaf
+
+		int rebalanceOps; // the rebalancing operations of the current insert/delete
+
+		abstract int rank(int node);
+		abstract void setRank(int node, int rank);
+		abstract int size(int node);
+		abstract void setSize(int node, int size);
+		abstract int left(int node);
+		abstract void setLeft(int node, int left);
+		abstract int right(int node);
+		abstract void setRight(int node, int right);
+		abstract int parent(int node);
+		abstract void setParent(int node, int parent);
+
+		/**
+		 * int fixUp(int node)
+		 *
+		 * rebalances the tree from node up to the root and fixes the ranks and sizes
+		 * on the way, counting the operations in rebalanceOps.
+		 * returns the root
+		 * complexity O(log(n))
+		 */
+		int fixUp(int node) {
+			int top = node;
+			while(node != NIL) {
+				int balance = rank(left(node)) - rank(right(node));
+				if(balance > 1) {// left is too high
+					int left = left(node);
+					if(rank(left(left)) < rank(right(left))) {
+						rotateLeft(left);
+					}
+					node = rotateRight(node);
+				}
+				else if(balance < -1) {// right is too high
+					int right = right(node);
+					if(rank(right(right)) < rank(left(right))) {
+						rotateRight(right);
+					}
+					node = rotateLeft(node);
+				}
+				else if(update(node)) {// promote or demote
+					this.rebalanceOps++;
+				}
+				top = node;
+				node = parent(node);
+			}
+			return top;
+		}
+
+		/**
+		 * boolean update(int node)
+		 *
+		 * recomputes the rank and size of node from its sons.
+		 * returns true if the rank changed
+		 * complexity O(1)
+		 */
+		boolean update(int node) {
+			int left = left(node);
+			int right = right(node);
+			int rank = Math.max(rank(left), rank(right)) + 1;
+			boolean changed = (rank != rank(node));
+			setRank(node, rank);
+			setSize(node, size(left) + size(right) + 1);
+			return changed;
+		}
+
+		/**
+		 * int rotateRight(int x)
+		 *
+		 * right rotation between x and its left son, which is returned
+		 * complexity O(1)
+		 */
+		int rotateRight(int x) {
+			int y = left(x);
+			int middle = right(y);
+			replaceSon(parent(x), x, y);
+			setLeft(x, middle);
+			if(middle != NIL) {
+				setParent(middle, x);
+			}
+			setRight(y, x);
+			setParent(x, y);
+			update(x);
+			update(y);
+			this.rebalanceOps++;
+			return y;
+		}
+
+		/**
+		 * int rotateLeft(int x)
+		 *
+		 * left rotation between x and its right son, which is returned
+		 * complexity O(1)
+		 */
+		int rotateLeft(int x) {
+			int y = right(x);
+			int middle = left(y);
+			replaceSon(parent(x), x, y);
+			setRight(x, middle);
+			if(middle != NIL) {
+				setParent(middle, x);
+			}
+			setLeft(y, x);
+			setParent(x, y);
+			update(x);
+			update(y);
+			this.rebalanceOps++;
+			return y;
+		}
+
+		/**
+		 * void replaceSon(int parent, int oldSon, int newSon)
+		 *
+		 * puts newSon in the place of oldSon under parent (parent may be NIL)
+		 * complexity O(1)
+		 */
+		void replaceSon(int parent, int oldSon, int newSon) {
+			if(newSon != NIL) {
+				setParent(newSon, parent);
+			}
+			if(parent != NIL) {
+				if(left(parent) == oldSon) {
+					setLeft(parent, newSon);
+				}
+				else {
+					setRight(parent, newSon);
+				}
+			}
+		}
+
+		/**
+		 * int successor(int node)
+		 *
+		 * returns node's successor, or NIL if node is the max
+		 * complexity O(log(n))
+		 */
+		int successor(int node) {
+			if(right(node) != NIL) {
+				return leftmost(right(node));
+			}
+			int parent = parent(node);
+			while((parent != NIL) && (right(parent) == node)) {
+				node = parent;
+				parent = parent(node);
+			}
+			return parent;
+		}
+
+		/**
+		 * int predecessor(int node)
+		 *
+		 * returns node's predecessor, or NIL if node is the min
+		 * complexity O(log(n))
+		 */
+		int predecessor(int node) {
+			if(left(node) != NIL) {
+				return rightmost(left(node));
+			}
+			int parent = parent(node);
+			while((parent != NIL) && (left(parent) == node)) {
+				node = parent;
+				parent = parent(node);
+			}
+			return parent;
+		}
+
+		/**
+		 * int leftmost(int node)
+		 *
+		 * returns the node with the smallest key in the sub tree of node
+		 * complexity O(log(n))
+		 */
+		int leftmost(int node) {
+			if(node == NIL) {
+				return NIL;
+			}
+			while(left(node) != NIL) {
+				node = left(node);
+			}
+			return node;
+		}
+
+		/**
+		 * int rightmost(int node)
+		 *
+		 * returns the node with the greatest key in the sub tree of node
+		 * complexity O(log(n))
+		 */
+		int rightmost(int node) {
+			if(node == NIL) {
+				return NIL;
+			}
+			while(right(node) != NIL) {
+				node = right(node);
+			}
+			return node;
+		}
+	}
+
+	/**
+	 * abstract static class NodeStore
+	 *
+	 * the nodes of an IndexedAVLTree. a node is an int index into the store.
+	 * slot 0 is the external leaf (rank -1, size 0) and is never written.
+	 */
+	abstract static class NodeStore extends NodeLinks implements Closeable {
+		abstract int allocate(int key, String value); // returns a slot for a new leaf with key and value
+		abstract void free(int node); // returns the slot of node to the store
+		abstract int key(int node);
+		abstract String value(int node);
+		abstract void moveItem(int from, int to); // copies the key and value of from to to
+
+		/**
+		 * int savedRoot()
+		 *
+		 * returns the root saved in the store, or 0 if the store does not keep one
+		 * complexity O(1)
+		 */
+		int savedRoot() {
+			return 0;
+		}
+
+		/**
+		 * void saveRoot(int root)
+		 *
+		 * keeps root in the store, if the store outlives the tree
+		 * complexity O(1)
+		 */
+		void saveRoot(int root) {
+		}
+
+		/**
+		 * public void close()
+		 *
+		 * releases the resources of the store
+		 * complexity O(1)
+		 */
+		public void close() throws IOException {
+		}
+	}
+
+	/**
+	 * static final class ArrayNodeStore
+	 *
+	 * the nodes of an IndexedAVLTree, kept as parallel primitive arrays.
+	 * freed slots are kept in a free list linked through the left array.
+	 */
+	static final class ArrayNodeStore extends NodeStore {
+		private int[] keys;
+		private int[] ranks;
+		private int[] sizes;
+		private int[] lefts;
+		private int[] rights;
+		private int[] parents;
+		private String[] values;
+		private int used; // the number of slots ever allocated, including slot 0
+		private int freeHead; // the first free slot, or 0 if the free list is empty
+
+		/**
+		 * ArrayNodeStore(int capacity)
+		 *
+		 * creates a store that holds capacity nodes before it grows
+		 * complexity O(capacity)
+		 */
+		ArrayNodeStore(int capacity) {
+			capacity = Math.max(capacity, 1) + 1;
+			this.keys = new int[capacity];
+			this.ranks = new int[capacity];
+			this.sizes = new int[capacity];
+			this.lefts = new int[capacity];
+			this.rights = new int[capacity];
+			this.parents = new int[capacity];
+			this.values = new String[capacity];
+			this.ranks[0] = -1;
+			this.used = 1;
+			this.freeHead = 0;
+		}
+
+		/**
+		 * int allocate(int key, String value)
+		 *
+		 * returns a slot for a new leaf with key and value
+		 * complexity O(1) amortized
+		 */
+		int allocate(int key, String value) {
+			int node;
+			if(freeHead != 0) {// reuse a freed slot
+				node = freeHead;
+				freeHead = lefts[node];
+			}
+			else {
+				if(used == keys.length) {
+					grow();
+				}
+				node = used++;
+			}
+			keys[node] = key;
+			values[node] = value;
+			ranks[node] = 0;
+			sizes[node] = 1;
+			lefts[node] = 0;
+			rights[node] = 0;
+			parents[node] = 0;
+			return node;
+		}
+
+		/**
+		 * void free(int node)
+		 *
+		 * returns the slot of node to the free list
+		 * complexity O(1)
+		 */
+		void free(int node) {
+			values[node] = null;
+			lefts[node] = freeHead;
+			freeHead = node;
+		}
+
+		/**
+		 * private void grow()
+		 *
+		 * doubles the capacity of the arrays
+		 * complexity O(n)
+		 */
+		private void grow() {
+			int capacity = keys.length * 2;
+			keys = Arrays.copyOf(keys, capacity);
+			ranks = Arrays.copyOf(ranks, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+			lefts = Arrays.copyOf(lefts, capacity);
+			rights = Arrays.copyOf(rights, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		int key(int node) {
+			return keys[node];
+		}
+
+		String value(int node) {
+			return values[node];
+		}
+
+		void moveItem(int from, int to) {
+			keys[to] = keys[from];
+			values[to] = values[from];
+		}
+
+		int rank(int node) {
+			return ranks[node];
+		}
+
+		void setRank(int node, int rank) {
+			ranks[node] = rank;
+		}
+
+		int size(int node) {
+			return sizes[node];
+		}
+
+		void setSize(int node, int size) {
+			sizes[node] = size;
+		}
+
+		int left(int node) {
+			return lefts[node];
+		}
+
+		void setLeft(int node, int left) {
+			lefts[node] = left;
+		}
+
+		int right(int node) {
+			return rights[node];
+		}
+
+		void setRight(int node, int right) {
+			rights[node] = right;
+		}
+
+		int parent(int node) {
+			return parents[node];
+		}
+
+		void setParent(int node, int parent) {
+			parents[node] = parent;
+		}
+	}
+
+	/**
+	 * static final class MappedNodeStore
+	 *
+	 * the nodes of an IndexedAVLTree, kept off heap as fixed size records in a
+	 * memory mapped file. the values live in an append only arena - a second
+	 * mapped file - and a record keeps the offset of its value there.
+	 * freed records are kept in a free list linked through the left field.
+	 * both files must stay under 2GB, the limit of a single mapping.
+	 *
+	 * node file: header [magic, used, freeHead, root, arenaEnd] then the records
+	 * record: [key, rank, size, left, right, parent, valueOffset] (valueOffset -1 for null)
+	 * arena: [length, UTF-8 bytes] for every value ever stored
+	 */
+	static final class MappedNodeStore extends NodeStore {
+		private static final int MAGIC = 0x41564C31; // "AVL1"
+		private static final int HEADER_BYTES = 32;
+		private static final int USED = 4; // the offsets of the header fields
+		private static final int FREE_HEAD = 8;
+		private static final int ROOT = 12;
+		private static final int ARENA_END = 16;
+		private static final int RECORD_BYTES = 28;
+		private static final int KEY = 0; // the offsets of the record fields
+		private static final int RANK = 4;
+		private static final int SIZE = 8;
+		private static final int LEFT = 12;
+		private static final int RIGHT = 16;
+		private static final int PARENT = 20;
+		private static final int VALUE = 24;
+		private static final int INITIAL_BYTES = 1 << 16;
+
+		private final FileChannel nodesChannel;
+		private final FileChannel arenaChannel;
+		private MappedByteBuffer nodes;
+		private MappedByteBuffer arena;
+
+		/**
+		 * private MappedNodeStore(FileChannel nodesChannel, FileChannel arenaChannel)
+		 *
+		 * maps the two files
+		 * complexity O(1)
+		 */
+		private MappedNodeStore(FileChannel nodesChannel, FileChannel arenaChannel) throws IOException {
+			this.nodesChannel = nodesChannel;
+			this.arenaChannel = arenaChannel;
+			this.nodes = map(nodesChannel, Math.max(nodesChannel.size(), INITIAL_BYTES));
+			this.arena = map(arenaChannel, Math.max(arenaChannel.size(), INITIAL_BYTES));
+		}
+
+		/**
+		 * static MappedNodeStore open(Path path)
+		 *
+		 * maps the node file path and the arena path.arena, creating them if they do not exist
+		 * complexity O(1)
+		 */
+		static MappedNodeStore open(Path path) throws IOException {
+			boolean fresh = !path.toFile().exists() || (path.toFile().length() == 0);
+			FileChannel nodesChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			FileChannel arenaChannel = FileChannel.open(path.resolveSibling(path.getFileName() + ".arena"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			MappedNodeStore store = new MappedNodeStore(nodesChannel, arenaChannel);
+			if(fresh) {// write the header and the external leaf
+				store.nodes.putInt(0, MAGIC);
+				store.nodes.putInt(USED, 1);
+				store.nodes.putInt(FREE_HEAD, 0);
+				store.nodes.putInt(ROOT, 0);
+				store.nodes.putInt(ARENA_END, 0);
+				store.nodes.putInt(HEADER_BYTES + RANK, -1);
+				store.nodes.putInt(HEADER_BYTES + VALUE, -1);
+			}
+			else if(store.nodes.getInt(0) != MAGIC) {
+				store.close();
+				throw new IOException(path + " is not an AVL tree file");
+			}
+			return store;
+		}
+
+		/**
+		 * private static MappedByteBuffer map(FileChannel channel, long bytes)
+		 *
+		 * maps the first bytes of the file, growing it if needed
+		 * complexity O(1)
+		 */
+		private static MappedByteBuffer map(FileChannel channel, long bytes) throws IOException {
+			if(bytes > Integer.MAX_VALUE) {
+				throw new IllegalStateException("a mapped AVL tree file is limited to 2GB");
+			}
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		}
+
+		/**
+		 * private int record(int node)
+		 *
+		 * returns the offset of the record of node in the node file
+		 * complexity O(1)
+		 */
+		private static int record(int node) {
+			return HEADER_BYTES + node * RECORD_BYTES;
+		}
+
+		int allocate(int key, String value) {
+			int node = nodes.getInt(FREE_HEAD);
+			if(node != 0) {// reuse a freed record
+				nodes.putInt(FREE_HEAD, nodes.getInt(record(node) + LEFT));
+			}
+			else {
+				node = nodes.getInt(USED);
+				long end = HEADER_BYTES + (node + 1L) * RECORD_BYTES;// in long, since the int offset overflows near the limit
+				if(end > nodes.capacity()) {
+					nodes = remap(nodesChannel, nodes.capacity(), end);
+				}
+				nodes.putInt(USED, node + 1);
+			}
+			int record = record(node);
+			nodes.putInt(record + KEY, key);
+			nodes.putInt(record + RANK, 0);
+			nodes.putInt(record + SIZE, 1);
+			nodes.putInt(record + LEFT, 0);
+			nodes.putInt(record + RIGHT, 0);
+			nodes.putInt(record + PARENT, 0);
+			nodes.putInt(record + VALUE, appendValue(value));
+			return node;
+		}
+
+		void free(int node) {
+			nodes.putInt(record(node) + LEFT, nodes.getInt(FREE_HEAD));
+			nodes.putInt(FREE_HEAD, node);
+		}
+
+		/**
+		 * private int appendValue(String value)
+		 *
+		 * appends value to the arena and returns its offset, or -1 for null
+		 * complexity O(|value|)
+		 */
+		private int appendValue(String value) {
+			if(value == null) {
+				return -1;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			int offset = nodes.getInt(ARENA_END);
+			long end = (long)offset + 4 + bytes.length;
+			if(end > arena.capacity()) {
+				arena = remap(arenaChannel, arena.capacity(), end);
+			}
+			arena.putInt(offset, bytes.length);
+			arena.put(offset + 4, bytes);
+			nodes.putInt(ARENA_END, (int)end);
+			return offset;
+		}
+
+		/**
+		 * private static MappedByteBuffer remap(FileChannel channel, int capacity, long needed)
+		 *
+		 * maps the file again with twice its capacity, or more if needed bytes do not fit in that,
+		 * but not over 2GB.
+		 * throws IllegalStateException if needed is over 2GB
+		 * complexity O(1)
+		 */
+		private static MappedByteBuffer remap(FileChannel channel, int capacity, long needed) {
+			long bytes = (needed > Integer.MAX_VALUE) ? needed : Math.min(Math.max(2L * capacity, needed), Integer.MAX_VALUE);
+			try {
+				return map(channel, bytes);
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		int key(int node) {
+			return nodes.getInt(record(node) + KEY);
+		}
+
+		String value(int node) {
+			int offset = nodes.getInt(record(node) + VALUE);
+			if(offset == -1) {
+				return null;
+			}
+			byte[] bytes = new byte[arena.getInt(offset)];
+			arena.get(offset + 4, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		void moveItem(int from, int to) {
+			nodes.putInt(record(to) + KEY, nodes.getInt(record(from) + KEY));
+			nodes.putInt(record(to) + VALUE, nodes.getInt(record(from) + VALUE));
+		}
+
+		int rank(int node) {
+			return nodes.getInt(record(node) + RANK);
+		}
+
+		void setRank(int node, int rank) {
+			nodes.putInt(record(node) + RANK, rank);
+		}
+
+		int size(int node) {
+			return nodes.getInt(record(node) + SIZE);
+		}
+
+		void setSize(int node, int size) {
+			nodes.putInt(record(node) + SIZE, size);
+		}
+
+		int left(int node) {
+			return nodes.getInt(record(node) + LEFT);
+		}
+
+		void setLeft(int node, int left) {
+			nodes.putInt(record(node) + LEFT, left);
+		}
+
+		int right(int node) {
+			return nodes.getInt(record(node) + RIGHT);
+		}
+
+		void setRight(int node, int right) {
+			nodes.putInt(record(node) + RIGHT, right);
+		}
+
+		int parent(int node) {
+			return nodes.getInt(record(node) + PARENT);
+		}
+
+		void setParent(int node, int parent) {
+			nodes.putInt(record(node) + PARENT, parent);
+		}
+
+		int savedRoot() {
+			return nodes.getInt(ROOT);
+		}
+
+		void saveRoot(int root) {
+			nodes.putInt(ROOT, root);
+		}
+
+		/**
+		 * public void close()
+		 *
+		 * writes the mapped files to the disk and closes them
+		 * complexity O(n)
+		 */
+		public void close() throws IOException {
+			nodes.force();
+			arena.force();
+			nodesChannel.close();
+			arenaChannel.close();
+		}
+	}
+
+	/**
+	 * abstract static class ArrayAVLTree
+	 *
+	 * the part of GenericAVLTree, IntAVLTree and LongAVLTree which does not depend
+	 * on the type of the keys. the nodes are int indexes into parallel arrays and
+	 * index 0 is the external leaf, so every key can be used; its value is never set,
+	 * so min() and max() of an empty tree are null.
+	 * the balancing is the one of NodeLinks; the subclasses keep the keys and
+	 * values in their own arrays, search by key and create the nodes.
+	 * freed slots are kept in a free list linked through the left array.
+	 */
+	abstract static class ArrayAVLTree extends NodeLinks {
+		static final int INITIAL_CAPACITY = 16; // the slots of a new tree, including slot 0
+
+		private int[] ranks = new int[INITIAL_CAPACITY];
+		private int[] sizes = new int[INITIAL_CAPACITY];
+		private int[] lefts = new int[INITIAL_CAPACITY];
+		private int[] rights = new int[INITIAL_CAPACITY];
+		private int[] parents = new int[INITIAL_CAPACITY];
+		private int used = 1; // the number of slots ever allocated, including slot 0
+		private int freeHead; // the first free slot, or 0 if the free list is empty
+		int root;
+		int min;
+		int max;
+
+		ArrayAVLTree() {
+			this.ranks[NIL] = -1;
+		}
+
+		abstract void growItems(int capacity); // grows the key and value arrays to capacity
+		abstract void moveItem(int from, int to); // copies the key and value of from to to
+		abstract void clearItem(int node); // drops the key and value of a freed slot
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 * complexity O(1)
+		 */
+		public boolean empty() {
+			return this.root == NIL;
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 * complexity O(1)
+		 */
+		public int size() {
+			return size(this.root);
+		}
+
+		/**
+		 * int allocate()
+		 *
+		 * returns a slot for a new leaf. the subclass stores its key and value
+		 * complexity O(1) amortized
+		 */
+		int allocate() {
+			int node;
+			if(freeHead != NIL) {// reuse a freed slot
+				node = freeHead;
+				freeHead = lefts[node];
+			}
+			else {
+				if(used == ranks.length) {
+					grow();
+				}
+				node = used++;
+			}
+			ranks[node] = 0;
+			sizes[node] = 1;
+			lefts[node] = NIL;
+			rights[node] = NIL;
+			parents[node] = NIL;
+			return node;
+		}
+
+		/**
+		 * private void free(int node)
+		 *
+		 * returns the slot of node to the free list
+		 * complexity O(1)
+		 */
+		private void free(int node) {
+			clearItem(node);
+			lefts[node] = freeHead;
+			freeHead = node;
+		}
+
+		/**
+		 * private void grow()
+		 *
+		 * doubles the capacity of the arrays
+		 * complexity O(n)
+		 */
+		private void grow() {
+			int capacity = ranks.length * 2;
+			ranks = Arrays.copyOf(ranks, capacity);
+			sizes = Arrays.copyOf(sizes, capacity);
+			lefts = Arrays.copyOf(lefts, capacity);
+			rights = Arrays.copyOf(rights, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			growItems(capacity);
+		}
+
+		/**
+		 * int attach(int parent, int node, boolean asLeft)
+		 *
+		 * hangs the new leaf node below parent (or as the root if parent is NIL),
+		 * updates min and max and rebalances.
+		 * returns the number of rebalancing operations (rotations and rank changes)
+		 * complexity O(log(n))
+		 */
+		int attach(int parent, int node, boolean asLeft) {
+			if(parent == NIL) {// empty tree
+				this.root = node;
+				this.min = node;
+				this.max = node;
+				return 0;
+			}
+			parents[node] = parent;
+			if(asLeft) {
+				lefts[parent] = node;
+				if(parent == this.min) {
+					this.min = node;
+				}
+			}
+			else {
+				rights[parent] = node;
+				if(parent == this.max) {
+					this.max = node;
+				}
+			}
+			this.rebalanceOps = 0;
+			this.root = fixUp(parent);
+			return this.rebalanceOps;
+		}
+
+		/**
+		 * int remove(int node)
+		 *
+		 * removes node from the tree, updates min and max and rebalances.
+		 * returns the number of rebalancing operations (rotations and rank changes)
+		 * complexity O(log(n))
+		 */
+		int remove(int node) {
+			if(node == this.min) {// the min has no left son, so this is O(1)
+				this.min = successor(node);
+			}
+			if(node == this.max) {// the max has no right son, so this is O(1)
+				this.max = predecessor(node);
+			}
+			if((lefts[node] != NIL) && (rights[node] != NIL)) {// node has two sons
+				int successor = successor(node);// move the successor's item here and remove the successor's slot
+				moveItem(successor, node);
+				if(this.max == successor) {
+					this.max = node;
+				}
+				node = successor;
+			}
+			int son = (lefts[node] != NIL) ? lefts[node] : rights[node];
+			int parent = parents[node];
+			replaceSon(parent, node, son);
+			free(node);
+			this.rebalanceOps = 0;
+			this.root = (parent == NIL) ? son : fixUp(parent);
+			return this.rebalanceOps;
+		}
+
+		int rank(int node) {
+			return ranks[node];
+		}
+
+		void setRank(int node, int rank) {
+			ranks[node] = rank;
+		}
+
+		int size(int node) {
+			return sizes[node];
+		}
+
+		void setSize(int node, int size) {
+			sizes[node] = size;
+		}
+
+		int left(int node) {
+			return lefts[node];
+		}
+
+		void setLeft(int node, int left) {
+			lefts[node] = left;
+		}
+
+		int right(int node) {
+			return rights[node];
+		}
+
+		void setRight(int node, int right) {
+			rights[node] = right;
+		}
+
+		int parent(int node) {
+			return parents[node];
+		}
+
+		void setParent(int node, int parent) {
+			parents[node] = parent;
+		}
+	}
+
+	/**
+	 * public static class GenericAVLTree<K, V>
+	 *
+	 * An AVL tree with distinct keys of any type, ordered by a Comparator
+	 * or by their natural order (then K must be Comparable).
+	 * null keys are not allowed.
+	 */
+	public static class GenericAVLTree<K, V> extends ArrayAVLTree {
+		private final Comparator<? super K> comparator; // null for the natural order
+		private Object[] keys = new Object[INITIAL_CAPACITY];
+		private Object[] values = new Object[INITIAL_CAPACITY];
+
+		/**
+		 * public GenericAVLTree()
+		 *
+		 * creates an empty tree ordered by the natural order of the keys
+		 * complexity O(1)
+		 */
+		public GenericAVLTree() {
+			this(null);
+		}
+
+		/**
+		 * public GenericAVLTree(Comparator<? super K> comparator)
+		 *
+		 * creates an empty tree ordered by comparator
+		 * complexity O(1)
+		 */
+		public GenericAVLTree(Comparator<? super K> comparator) {
+			this.comparator = comparator;
+		}
+
+		/**
+		 * public V search(K k)
+		 *
+		 * returns the value of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 * complexity O(log(n))
+		 */
+		@SuppressWarnings("unchecked")
+		public V search(K k) {
+			int node = searchNode(k);
+			return (node == NIL) ? null : (V)values[node];
+		}
+
+		/**
+		 * public int insert(K k, V v)
+		 *
+		 * inserts an item with key k and value v to the tree.
+		 * returns the number of rebalancing operations (rotations and rank changes),
+		 * or -1 if an item with key k already exists in the tree.
+		 * complexity O(log(n))
+		 */
+		@SuppressWarnings("unchecked")
+		public int insert(K k, V v) {
+			if(k == null) {
+				throw new NullPointerException("null keys are not allowed");
+			}
+			Comparable<? super K> comparable = (comparator == null) ? (Comparable<? super K>)k : null;
+			int parent = NIL;
+			int node = this.root;
+			int cmp = 0;
+			while(node != NIL) {
+				K key = (K)keys[node];
+				cmp = (comparable != null) ? comparable.compareTo(key) : comparator.compare(k, key);
+				if(cmp == 0) {// node already exists
+					return -1;
+				}
+				parent = node;
+				node = (cmp < 0) ? left(node) : right(node);
+			}
+			node = allocate();
+			keys[node] = k;
+			values[node] = v;
+			return attach(parent, node, cmp < 0);
+		}
+
+		/**
+		 * public int delete(K k)
+		 *
+		 * deletes an item with key k from the tree, if it is there.
+		 * returns the number of rebalancing operations (rotations and rank changes),
+		 * or -1 if an item with key k was not found in the tree.
+		 * complexity O(log(n))
+		 */
+		public int delete(K k) {
+			int node = searchNode(k);
+			return (node == NIL) ? -1 : remove(node);
+		}
+
+		/**
+		 * public V min()
+		 *
+		 * Returns the value of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(1)
+		 */
+		@SuppressWarnings("unchecked")
+		public V min() {
+			return (V)values[this.min];
+		}
+
+		/**
+		 * public V max()
+		 *
+		 * Returns the value of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(1)
+		 */
+		@SuppressWarnings("unchecked")
+		public V max() {
+			return (V)values[this.max];
+		}
+
+		/**
+		 * public void forEach(BiConsumer<? super K, ? super V> action)
+		 *
+		 * calls action with the key and value of every item, in the order of the keys
+		 * complexity O(n)
+		 */
+		@SuppressWarnings("unchecked")
+		public void forEach(BiConsumer<? super K, ? super V> action) {
+			for(int node = this.min; node != NIL; node = successor(node)) {
+				action.accept((K)keys[node], (V)values[node]);
+			}
+		}
+
+		/**
+		 * private int searchNode(K k)
+		 *
+		 * returns the node with key k, or NIL if it is not in the tree
+		 * complexity O(log(n))
+		 */
+		@SuppressWarnings("unchecked")
+		private int searchNode(K k) {
+			if(k == null) {
+				return NIL;
+			}
+			Comparable<? super K> comparable = (comparator == null) ? (Comparable<? super K>)k : null;
+			int node = this.root;
+			while(node != NIL) {
+				K key = (K)keys[node];
+				int cmp = (comparable != null) ? comparable.compareTo(key) : comparator.compare(k, key);
+				if(cmp == 0) {
+					return node;
+				}
+				node = (cmp < 0) ? left(node) : right(node);
+			}
+			return NIL;
+		}
+
+		void growItems(int capacity) {
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		void moveItem(int from, int to) {
+			keys[to] = keys[from];
+			values[to] = values[from];
+		}
+
+		void clearItem(int node) {
+			keys[node] = null;
+			values[node] = null;
+		}
+	}
+
+	/**
+	 * public static class IntAVLTree<V>
+	 *
+	 * An AVL tree with distinct int keys, specialized so the keys are never boxed.
+	 */
+	public static class IntAVLTree<V> extends ArrayAVLTree {
+		private int[] keys = new int[INITIAL_CAPACITY];
+		private Object[] values = new Object[INITIAL_CAPACITY];
+
+		/**
+		 * public V search(int k)
+		 *
+		 * returns the value of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 * complexity O(log(n))
+		 */
+		@SuppressWarnings("unchecked")
+		public V search(int k) {
+			int node = searchNode(k);
+			return (node == NIL) ? null : (V)values[node];
+		}
+
+		/**
+		 * public int insert(int k, V v)
+		 *
+		 * inserts an item with key k and value v to the tree.
+		 * returns the number of rebalancing operations (rotations and rank changes),
+		 * or -1 if an item with key k already exists in the tree.
+		 * complexity O(log(n))
+		 */
+		public int insert(int k, V v) {
+			int parent = NIL;
+			int node = this.root;
+			while(node != NIL) {
+				int key = keys[node];
+				if(key == k) {// node already exists
+					return -1;
+				}
+				parent = node;
+				node = (k < key) ? left(node) : right(node);
+			}
+			node = allocate();
+			keys[node] = k;
+			values[node] = v;
+			return attach(parent, node, (parent != NIL) && (k < keys[parent]));
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the tree, if it is there.
+		 * returns the number of rebalancing operations (rotations and rank changes),
+		 * or -1 if an item with key k was not found in the tree.
+		 * complexity O(log(n))
+		 */
+		public int delete(int k) {
+			int node = searchNode(k);
+			return (node == NIL) ? -1 : remove(node);
+		}
+
+		/**
+		 * public V min()
+		 *
+		 * Returns the value of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(1)
+		 */
+		@SuppressWarnings("unchecked")
+		public V min() {
+			return (V)values[this.min];
+		}
+
+		/**
+		 * public V max()
+		 *
+		 * Returns the value of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(1)
+		 */
+		@SuppressWarnings("unchecked")
+		public V max() {
+			return (V)values[this.max];
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree
+		 * complexity O(n)
+		 */
+		public int[] keysToArray() {
+			int[] arr = new int[size()];
+			int node = this.min;
+			for(int i = 0; i < arr.length; i++) {
+				arr[i] = keys[node];
+				node = successor(node);
+			}
+			return arr;
+		}
+
+		/**
+		 * public void forEach(IntObjConsumer<? super V> action)
+		 *
+		 * calls action with the key and value of every item, in the order of the keys
+		 * complexity O(n)
+		 */
+		@SuppressWarnings("unchecked")
+		public void forEach(IntObjConsumer<? super V> action) {
+			for(int node = this.min; node != NIL; node = successor(node)) {
+				action.accept(keys[node], (V)values[node]);
+			}
+		}
+
+		/**
+		 * private int searchNode(int k)
+		 *
+		 * returns the node with key k, or NIL if it is not in the tree
+		 * complexity O(log(n))
+		 */
+		private int searchNode(int k) {
+			int node = this.root;
+			while(node != NIL) {
+				int key = keys[node];
+				if(key == k) {
+					return node;
+				}
+				node = (k < key) ? left(node) : right(node);
+			}
+			return NIL;
+		}
+
+		void growItems(int capacity) {
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		void moveItem(int from, int to) {
+			keys[to] = keys[from];
+			values[to] = values[from];
+		}
+
+		void clearItem(int node) {
+			values[node] = null;
+		}
+	}
+
+	/**
+	 * public static class LongAVLTree<V>
+	 *
+	 * An AVL tree with distinct long keys, specialized so the keys are never boxed.
+	 */
+	public static class LongAVLTree<V> extends ArrayAVLTree {
+		private long[] keys = new long[INITIAL_CAPACITY];
+		private Object[] values = new Object[INITIAL_CAPACITY];
+
+		/**
+		 * public V search(long k)
+		 *
+		 * returns the value of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 * complexity O(log(n))
+		 */
+		@SuppressWarnings("unchecked")
+		public V search(long k) {
+			int node = searchNode(k);
+			return (node == NIL) ? null : (V)values[node];
+		}
+
+		/**
+		 * public int insert(long k, V v)
+		 *
+		 * inserts an item with key k and value v to the tree.
+		 * returns the number of rebalancing operations (rotations and rank changes),
+		 * or -1 if an item with key k already exists in the tree.
+		 * complexity O(log(n))
+		 */
+		public int insert(long k, V v) {
+			int parent = NIL;
+			int node = this.root;
+			while(node != NIL) {
+				long key = keys[node];
+				if(key == k) {// node already exists
+					return -1;
+				}
+				parent = node;
+				node = (k < key) ? left(node) : right(node);
+			}
+			node = allocate();
+			keys[node] = k;
+			values[node] = v;
+			return attach(parent, node, (parent != NIL) && (k < keys[parent]));
+		}
+
+		/**
+		 * public int delete(long k)
+		 *
+		 * deletes an item with key k from the tree, if it is there.
+		 * returns the number of rebalancing operations (rotations and rank changes),
+		 * or -1 if an item with key k was not found in the tree.
+		 * complexity O(log(n))
+		 */
+		public int delete(long k) {
+			int node = searchNode(k);
+			return (node == NIL) ? -1 : remove(node);
+		}
+
+		/**
+		 * public V min()
+		 *
+		 * Returns the value of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(1)
+		 */
+		@SuppressWarnings("unchecked")
+		public V min() {
+			return (V)values[this.min];
+		}
+
+		/**
+		 * public V max()
+		 *
+		 * Returns the value of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(1)
+		 */
+		@SuppressWarnings("unchecked")
+		public V max() {
+			return (V)values[this.max];
+		}
+
+		/**
+		 * public long[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree
+		 * complexity O(n)
+		 */
+		public long[] keysToArray() {
+			long[] arr = new long[size()];
+			int node = this.min;
+			for(int i = 0; i < arr.length; i++) {
+				arr[i] = keys[node];
+				node = successor(node);
+			}
+			return arr;
+		}
+
+		/**
+		 * public void forEach(LongObjConsumer<? super V> action)
+		 *
+		 * calls action with the key and value of every item, in the order of the keys
+		 * complexity O(n)
+		 */
+		@SuppressWarnings("unchecked")
+		public void forEach(LongObjConsumer<? super V> action) {
+			for(int node = this.min; node != NIL; node = successor(node)) {
+				action.accept(keys[node], (V)values[node]);
+			}
+		}
+
+		/**
+		 * private int searchNode(long k)
+		 *
+		 * returns the node with key k, or NIL if it is not in the tree
+		 * complexity O(log(n))
+		 */
+		private int searchNode(long k) {
+			int node = this.root;
+			while(node != NIL) {
+				long key = keys[node];
+				if(key == k) {
+					return node;
+				}
+				node = (k < key) ? left(node) : right(node);
+			}
+			return NIL;
+		}
+
+		void growItems(int capacity) {
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		void moveItem(int from, int to) {
+			keys[to] = keys[from];
+			values[to] = values[from];
+		}
+
+		void clearItem(int node) {
+			values[node] = null;
+		}
+	}
+
+	/**
+	 * public static class ConcurrentAVLTree
+	 *
+	 * A thread safe AVL tree in the style of Bronson, Casper, Chafi and Olukotun's
+	 * relaxed balance concurrent AVL tree.
+	 * every node has a version, which a rotation changes while it shrinks the key range
+	 * under the node. readers do not lock and do not write to shared memory: they walk
+	 * hand over hand, reading a child and then checking that its parent's version did not change,
+	 * and go back one level (not to the root) when it did.
+	 * writers lock only the nodes they change - the parent of a new leaf, the node and parent of
+	 * a removed item, and the nodes of a rotation - and rebalance on the way back up, so writers in
+	 * different parts of the tree run in parallel and invalidate only the readers under the rotated nodes.
+	 * a deleted node with two sons stays as a routing node (without a value) and is unlinked when
+	 * it has one son left, so the balance is relaxed for a while but restored by the writers.
+	 */
+	public static class ConcurrentAVLTree {
+		private static final long UNLINKED = 1L; // the bits of a node's version
+		private static final long SHRINKING = 2L;
+		private static final long SHRINK_COUNT = 4L;
+		private static final int SPINS = 100; // the spins before waiting on the lock of a shrinking node
+		private static final Object RETRY = new Object(); // an attempt that a concurrent rotation broke
+		private static final String NULL_INFO = new String(); // stands for a null info, since null marks a routing node
+		private static final int UNLINK_REQUIRED = -1; // the conditions of a node, besides its new height
+		private static final int REBALANCE_REQUIRED = -2;
+		private static final int NOTHING_REQUIRED = -3;
+
+		private final Node holder = new Node(0, null, null); // the root is holder.right
+		private final LongAdder size = new LongAdder();
+
+		/**
+		 * private static final class Node
+		 *
+		 * a node of the tree. height is 1 for a leaf (0 for a missing son), and a null
+		 * value marks a routing node. the fields are volatile, since readers do not lock.
+		 */
+		private static final class Node {
+			private final int key;
+			private volatile int height;
+			private volatile String value;
+			private volatile long version;
+			private volatile Node parent;
+			private volatile Node left;
+			private volatile Node right;
+
+			private Node(int key, String value, Node parent) {
+				this.key = key;
+				this.value = value;
+				this.parent = parent;
+				this.height = 1;
+			}
+
+			private Node child(boolean toLeft) {
+				return toLeft ? this.left : this.right;
+			}
+
+			private void setChild(boolean toLeft, Node node) {
+				if(toLeft) {
+					this.left = node;
+				}
+				else {
+					this.right = node;
+				}
+			}
+
+			/**
+			 * private void waitUntilShrinkCompleted(long version)
+			 *
+			 * waits until the version of the node is no longer version.
+			 * a shrink happens under the node's lock, so after a few spins this waits on the lock
+			 * complexity O(1) besides the wait
+			 */
+			private void waitUntilShrinkCompleted(long version) {
+				if(!isShrinking(version)) {
+					return;
+				}
+				for(int i = 0; i < SPINS; i++) {
+					if(this.version != version) {
+						return;
+					}
+					Thread.onSpinWait();
+				}
+				synchronized(this) {// the shrink is done once the lock is free
+				}
+			}
+		}
+
+		private static boolean isShrinking(long version) {
+			return (version & SHRINKING) != 0;
+		}
+
+		private static boolean isUnlinked(long version) {
+			return (version & UNLINKED) != 0;
+		}
+
+		private static boolean isShrinkingOrUnlinked(long version) {
+			return (version & (SHRINKING | UNLINKED)) != 0;
+		}
+
+		private static int height(Node node) {
+			return (node == null) ? 0 : node.height;
+		}
+
+		private static String encode(String info) {
+			return (info == null) ? NULL_INFO : info;
+		}
+
+		private static String decode(Object value) {
+			return (value == NULL_INFO) ? null : (String)value;
+		}
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 * complexity O(log(n))
+		 */
+		public String search(int k) {
+			while(true) {
+				Node right = holder.right;
+				if(right == null) {
+					return null;
+				}
+				if(right.key == k) {
+					return decode(right.value);
+				}
+				long version = right.version;
+				if(isShrinkingOrUnlinked(version)) {
+					right.waitUntilShrinkCompleted(version);
+				}
+				else if(right == holder.right) {
+					Object value = attemptSearch(k, right, k < right.key, version);
+					if(value != RETRY) {
+						return decode(value);
+					}
+				}
+			}
+		}
+
+		/**
+		 * private Object attemptSearch(int k, Node node, boolean toLeft, long version)
+		 *
+		 * searches for k below node, which had version when it was reached.
+		 * returns the value found (null if k is not in the tree), or RETRY if node
+		 * shrank meanwhile so the caller must read node again
+		 * complexity O(log(n))
+		 */
+		private Object attemptSearch(int k, Node node, boolean toLeft, long version) {
+			while(true) {
+				Node child = node.child(toLeft);
+				if(child == null) {
+					return (node.version != version) ? RETRY : null;
+				}
+				if(child.key == k) {// the value of a node with key k is the answer, whatever happens around it
+					return child.value;
+				}
+				long childVersion = child.version;
+				if(isShrinkingOrUnlinked(childVersion)) {
+					child.waitUntilShrinkCompleted(childVersion);
+					if(node.version != version) {
+						return RETRY;
+					}
+				}
+				else if(child != node.child(toLeft)) {
+					if(node.version != version) {
+						return RETRY;
+					}
+				}
+				else {
+					if(node.version != version) {
+						return RETRY;
+					}
+					Object value = attemptSearch(k, child, k < child.key, childVersion);
+					if(value != RETRY) {
+						return value;
+					}
+				}
+			}
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the tree.
+		 * returns the number of rebalancing steps this call made (other writers may finish some of them),
+		 * or -1 if an item with key k already exists in the tree.
+		 * complexity O(log(n))
+		 */
+		public int insert(int k, String i) {
+			return update(k, encode(i));
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the tree if it exists.
+		 * returns the number of rebalancing steps this call made (other writers may finish some of them),
+		 * or -1 if an item with key k was not found in the tree.
+		 * complexity O(log(n))
+		 */
+		public int delete(int k) {
+			return update(k, null);
+		}
+
+		/**
+		 * private int update(int k, String value)
+		 *
+		 * inserts k with value if it is absent (value != null), or removes k (value == null).
+		 * returns the number of rebalancing steps, or -1 if there was nothing to do
+		 * complexity O(log(n))
+		 */
+		private int update(int k, String value) {
+			while(true) {
+				Node right = holder.right;
+				if(right == null) {
+					if(value == null) {
+						return -1;
+					}
+					if(attemptInsertIntoEmpty(k, value)) {
+						size.increment();
+						return 0;
+					}
+				}
+				else {
+					long version = right.version;
+					if(isShrinkingOrUnlinked(version)) {
+						right.waitUntilShrinkCompleted(version);
+					}
+					else if(right == holder.right) {
+						int result = attemptUpdate(k, value, holder, right, version);
+						if(result != Integer.MIN_VALUE) {
+							return result;
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * private boolean attemptInsertIntoEmpty(int k, String value)
+		 *
+		 * makes k the root, if the tree is still empty
+		 * complexity O(1)
+		 */
+		private boolean attemptInsertIntoEmpty(int k, String value) {
+			synchronized(holder) {
+				if(holder.right != null) {
+					return false;
+				}
+				holder.right = new Node(k, value, holder);
+				return true;
+			}
+		}
+
+		/**
+		 * private int attemptUpdate(int k, String value, Node parent, Node node, long version)
+		 *
+		 * inserts or removes k below node, which had version when it was reached from parent.
+		 * returns the result of update, or Integer.MIN_VALUE if node shrank meanwhile
+		 * complexity O(log(n))
+		 */
+		private int attemptUpdate(int k, String value, Node parent, Node node, long version) {
+			if(k == node.key) {
+				return attemptNodeUpdate(value, parent, node);
+			}
+			boolean toLeft = k < node.key;
+			while(true) {
+				Node child = node.child(toLeft);
+				if(node.version != version) {
+					return Integer.MIN_VALUE;
+				}
+				if(child == null) {// k is not in the tree
+					if(value == null) {
+						return -1;
+					}
+					Node damaged;
+					synchronized(node) {// no rotation can change node while it is locked
+						if(node.version != version) {
+							return Integer.MIN_VALUE;
+						}
+						if(node.child(toLeft) != null) {// another writer hung a son there first
+							continue;
+						}
+						node.setChild(toLeft, new Node(k, value, node));
+						damaged = fixHeight(node);
+					}
+					size.increment();
+					return fixHeightAndRebalance(damaged);
+				}
+				long childVersion = child.version;
+				if(isShrinkingOrUnlinked(childVersion)) {
+					child.waitUntilShrinkCompleted(childVersion);
+				}
+				else if(child == node.child(toLeft)) {
+					if(node.version != version) {
+						return Integer.MIN_VALUE;
+					}
+					int result = attemptUpdate(k, value, node, child, childVersion);
+					if(result != Integer.MIN_VALUE) {
+						return result;
+					}
+				}
+			}
+		}
+
+		/**
+		 * private int attemptNodeUpdate(String value, Node parent, Node node)
+		 *
+		 * gives node (whose key is being inserted or removed) value:
+		 * an insert revives a routing node, and a remove unlinks node if it has
+		 * at most one son or makes it a routing node otherwise.
+		 * returns the result of update, or Integer.MIN_VALUE if it must be retried
+		 * complexity O(log(n))
+		 */
+		private int attemptNodeUpdate(String value, Node parent, Node node) {
+			if(value == null) {
+				if(node.value == null) {// already removed
+					return -1;
+				}
+				if((node.left == null) || (node.right == null)) {// node can be unlinked, which changes parent too
+					Node damaged;
+					synchronized(parent) {
+						if(isUnlinked(parent.version) || (node.parent != parent)) {
+							return Integer.MIN_VALUE;
+						}
+						synchronized(node) {
+							if(node.value == null) {
+								return -1;
+							}
+							if(!attemptUnlink(parent, node)) {
+								return Integer.MIN_VALUE;
+							}
+						}
+						damaged = fixHeight(parent);
+					}
+					size.decrement();
+					return fixHeightAndRebalance(damaged);
+				}
+			}
+			synchronized(node) {
+				if(isUnlinked(node.version)) {
+					return Integer.MIN_VALUE;
+				}
+				if((value != null) == (node.value != null)) {// the item is already there, or already removed
+					return -1;
+				}
+				if((value == null) && ((node.left == null) || (node.right == null))) {// a son left meanwhile, so unlink instead
+					return Integer.MIN_VALUE;
+				}
+				node.value = value;
+			}
+			if(value == null) {
+				size.decrement();
+			}
+			else {
+				size.increment();
+			}
+			return 0;
+		}
+
+		/**
+		 * private boolean attemptUnlink(Node parent, Node node)
+		 *
+		 * replaces node, which has at most one son, by its son under parent.
+		 * both must be locked. returns false if the tree changed so node cannot be unlinked
+		 * complexity O(1)
+		 */
+		private boolean attemptUnlink(Node parent, Node node) {
+			boolean isLeft = (parent.left == node);
+			if(!isLeft && (parent.right != node)) {// node is no longer a son of parent
+				return false;
+			}
+			Node left = node.left;
+			Node right = node.right;
+			if((left != null) && (right != null)) {
+				return false;
+			}
+			Node splice = (left != null) ? left : right;
+			parent.setChild(isLeft, splice);
+			if(splice != null) {
+				splice.parent = parent;
+			}
+			node.version = UNLINKED;
+			node.value = null;
+			return true;
+		}
+
+		/**
+		 * private int nodeCondition(Node node)
+		 *
+		 * returns UNLINK_REQUIRED for a routing node with at most one son, REBALANCE_REQUIRED for
+		 * a node out of balance, NOTHING_REQUIRED for a node that is fine, or else the new height of node
+		 * complexity O(1)
+		 */
+		private static int nodeCondition(Node node) {
+			Node left = node.left;
+			Node right = node.right;
+			if(((left == null) || (right == null)) && (node.value == null)) {
+				return UNLINK_REQUIRED;
+			}
+			int height = node.height;
+			int leftHeight = height(left);
+			int rightHeight = height(right);
+			int newHeight = 1 + Math.max(leftHeight, rightHeight);
+			int balance = leftHeight - rightHeight;
+			if((balance < -1) || (balance > 1)) {
+				return REBALANCE_REQUIRED;
+			}
+			return (height != newHeight) ? newHeight : NOTHING_REQUIRED;
+		}
+
+		/**
+		 * private static Node fixHeight(Node node)
+		 *
+		 * fixes the height of the locked node if that is all it needs.
+		 * returns the node that needs work next: node itself if it needs more than a height fix,
+		 * its parent if its height changed, or null
+		 * complexity O(1)
+		 */
+		private static Node fixHeight(Node node) {
+			int condition = nodeCondition(node);
+			switch(condition) {
+				case REBALANCE_REQUIRED:
+				case UNLINK_REQUIRED:
+					return node;
+				case NOTHING_REQUIRED:
+					return null;
+				default:
+					node.height = condition;
+					return node.parent;
+			}
+		}
+
+		/**
+		 * private int fixHeightAndRebalance(Node node)
+		 *
+		 * fixes the heights, unlinks the routing nodes and rotates from node up, locking
+		 * a node (and its parent, for an unlink or a rotation) at a time.
+		 * a rotation may damage several of the nodes around it, so besides the one it returns
+		 * they are kept and checked again once that one is fixed.
+		 * stops where nothing changed, or where another writer will take over.
+		 * returns the number of steps it made
+		 * complexity O(log(n))
+		 */
+		private int fixHeightAndRebalance(Node node) {
+			int steps = 0;
+			Node[] pending = null; // the nodes to check again, used as a stack
+			int pendingCount = 0;
+			while(true) {
+				if((node == null) || (node.parent == null) || isUnlinked(node.version) || (nodeCondition(node) == NOTHING_REQUIRED)) {
+					if(pendingCount == 0) {
+						return steps;
+					}
+					node = pending[--pendingCount];
+					continue;
+				}
+				steps++;
+				int condition = nodeCondition(node);
+				if((condition != UNLINK_REQUIRED) && (condition != REBALANCE_REQUIRED)) {
+					synchronized(node) {
+						node = fixHeight(node);
+					}
+					continue;
+				}
+				Node parent = node.parent;
+				Node next = node;
+				boolean locked = false;
+				synchronized(parent) {
+					if(!isUnlinked(parent.version) && (node.parent == parent)) {
+						locked = true;
+						synchronized(node) {
+							next = rebalance(parent, node);
+						}
+					}// else retry with node's new parent
+				}
+				if(locked && (next != null) && (node.parent != parent)) {// node was rotated down under top
+					Node top = node.parent;
+					if((pending == null) || (pendingCount + 4 > pending.length)) {
+						pending = Arrays.copyOf((pending == null) ? new Node[8] : pending, pendingCount + 8);
+					}
+					for(Node damaged : new Node[] {parent, top, top.left, top.right}) {
+						if(damaged != null) {
+							pending[pendingCount++] = damaged;
+						}
+					}
+				}
+				node = next;
+			}
+		}
+
+		/**
+		 * private Node rebalance(Node parent, Node node)
+		 *
+		 * unlinks, rotates or fixes the height of node. parent and node are locked.
+		 * returns the node that needs work next, or null
+		 * complexity O(1)
+		 */
+		private Node rebalance(Node parent, Node node) {
+			Node left = node.left;
+			Node right = node.right;
+			if(((left == null) || (right == null)) && (node.value == null)) {
+				if(attemptUnlink(parent, node)) {
+					return fixHeight(parent);
+				}
+				return node;
+			}
+			int height = node.height;
+			int leftHeight = height(left);
+			int rightHeight = height(right);
+			int newHeight = 1 + Math.max(leftHeight, rightHeight);
+			int balance = leftHeight - rightHeight;
+			if(balance > 1) {
+				return rebalanceToRight(parent, node, left, rightHeight);
+			}
+			if(balance < -1) {
+				return rebalanceToLeft(parent, node, right, leftHeight);
+			}
+			if(newHeight != height) {
+				node.height = newHeight;
+				return fixHeight(parent);
+			}
+			return null;
+		}
+
+		/**
+		 * private Node rebalanceToRight(Node parent, Node node, Node left, int rightHeight)
+		 *
+		 * node's left son is too high: rotates right, or rotates twice if the left son's
+		 * right side is the higher one. parent and node are locked
+		 * returns the node that needs work next, or null
+		 * complexity O(1)
+		 */
+		private Node rebalanceToRight(Node parent, Node node, Node left, int rightHeight) {
+			synchronized(left) {
+				int leftHeight = left.height;
+				if(leftHeight - rightHeight <= 1) {// changed meanwhile
+					return node;
+				}
+				Node leftRight = left.right;
+				int leftLeftHeight = height(left.left);
+				int leftRightHeight = height(leftRight);
+				if(leftLeftHeight >= leftRightHeight) {
+					return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+				}
+				synchronized(leftRight) {
+					leftRightHeight = leftRight.height;
+					if(leftLeftHeight >= leftRightHeight) {
+						return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+					}
+					return rotateRightOverLeft(parent, node, left, rightHeight, leftLeftHeight, leftRight, height(leftRight.left));
+				}
+			}
+		}
+
+		/**
+		 * private Node rebalanceToLeft(Node parent, Node node, Node right, int leftHeight)
+		 *
+		 * the mirror image of rebalanceToRight
+		 * complexity O(1)
+		 */
+		private Node rebalanceToLeft(Node parent, Node node, Node right, int leftHeight) {
+			synchronized(right) {
+				int rightHeight = right.height;
+				if(rightHeight - leftHeight <= 1) {
+					return node;
+				}
+				Node rightLeft = right.left;
+				int rightRightHeight = height(right.right);
+				int rightLeftHeight = height(rightLeft);
+				if(rightRightHeight >= rightLeftHeight) {
+					return rotateLeft(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight);
+				}
+				synchronized(rightLeft) {
+					rightLeftHeight = rightLeft.height;
+					if(rightRightHeight >= rightLeftHeight) {
+						return rotateLeft(parent, node, right, leftHeight, rightRightHeight, rightLeft, rightLeftHeight);
+					}
+					return rotateLeftOverRight(parent, node, right, leftHeight, rightRightHeight, rightLeft, height(rightLeft.right));
+				}
+			}
+		}
+
+		/**
+		 * private Node rotateRight(Node parent, Node node, Node left, int rightHeight, int leftLeftHeight, Node leftRight, int leftRightHeight)
+		 *
+		 * right rotation between the locked node and its locked left son. node shrinks,
+		 * so its version marks the rotation for the readers.
+		 * returns the node that needs work next, or null
+		 * complexity O(1)
+		 */
+		private Node rotateRight(Node parent, Node node, Node left, int rightHeight, int leftLeftHeight, Node leftRight, int leftRightHeight) {
+			long version = node.version;
+			boolean nodeIsLeft = (parent.left == node);
+			node.version = version | SHRINKING;
+			node.left = leftRight;
+			if(leftRight != null) {
+				leftRight.parent = node;
+			}
+			left.right = node;
+			node.parent = left;
+			parent.setChild(nodeIsLeft, left);
+			left.parent = parent;
+			int nodeHeight = 1 + Math.max(leftRightHeight, rightHeight);
+			node.height = nodeHeight;
+			left.height = 1 + Math.max(leftLeftHeight, nodeHeight);
+			node.version = version + SHRINK_COUNT;
+			int nodeBalance = leftRightHeight - rightHeight;
+			if((nodeBalance < -1) || (nodeBalance > 1)) {
+				return node;
+			}
+			if(((leftRight == null) || (rightHeight == 0)) && (node.value == null)) {
+				return node;
+			}
+			int leftBalance = leftLeftHeight - nodeHeight;
+			if((leftBalance < -1) || (leftBalance > 1)) {
+				return left;
+			}
+			if((leftLeftHeight == 0) && (left.value == null)) {
+				return left;
+			}
+			return fixHeight(parent);
+		}
+
+		/**
+		 * private Node rotateLeft(Node parent, Node node, Node right, int leftHeight, int rightRightHeight, Node rightLeft, int rightLeftHeight)
+		 *
+		 * the mirror image of rotateRight
+		 * complexity O(1)
+		 */
+		private Node rotateLeft(Node parent, Node node, Node right, int leftHeight, int rightRightHeight, Node rightLeft, int rightLeftHeight) {
+			long version = node.version;
+			boolean nodeIsLeft = (parent.left == node);
+			node.version = version | SHRINKING;
+			node.right = rightLeft;
+			if(rightLeft != null) {
+				rightLeft.parent = node;
+			}
+			right.left = node;
+			node.parent = right;
+			parent.setChild(nodeIsLeft, right);
+			right.parent = parent;
+			int nodeHeight = 1 + Math.max(leftHeight, rightLeftHeight);
+			node.height = nodeHeight;
+			right.height = 1 + Math.max(nodeHeight, rightRightHeight);
+			node.version = version + SHRINK_COUNT;
+			int nodeBalance = rightLeftHeight - leftHeight;
+			if((nodeBalance < -1) || (nodeBalance > 1)) {
+				return node;
+			}
+			if(((rightLeft == null) || (leftHeight == 0)) && (node.value == null)) {
+				return node;
+			}
+			int rightBalance = rightRightHeight - nodeHeight;
+			if((rightBalance < -1) || (rightBalance > 1)) {
+				return right;
+			}
+			if((rightRightHeight == 0) && (right.value == null)) {
+				return right;
+			}
+			return fixHeight(parent);
+		}
+
+		/**
+		 * private Node rotateRightOverLeft(Node parent, Node node, Node left, int rightHeight, int leftLeftHeight, Node leftRight, int leftRightLeftHeight)
+		 *
+		 * double rotation that lifts leftRight, the left son's right son, above the locked
+		 * node and its left son. both shrink, and either may be left out of balance or
+		 * as a routing node with one son if the heights were relaxed.
+		 * returns the node that needs work next, or null
+		 * complexity O(1)
+		 */
+		private Node rotateRightOverLeft(Node parent, Node node, Node left, int rightHeight, int leftLeftHeight, Node leftRight, int leftRightLeftHeight) {
+			long version = node.version;
+			long leftVersion = left.version;
+			boolean nodeIsLeft = (parent.left == node);
+			Node leftRightLeft = leftRight.left;
+			Node leftRightRight = leftRight.right;
+			int leftRightRightHeight = height(leftRightRight);
+			node.version = version | SHRINKING;
+			left.version = leftVersion | SHRINKING;
+			node.left = leftRightRight;// node and left are marked shrinking, so the readers below them go back
+			if(leftRightRight != null) {
+				leftRightRight.parent = node;
+			}
+			left.right = leftRightLeft;
+			if(leftRightLeft != null) {
+				leftRightLeft.parent = left;
+			}
+			leftRight.left = left;
+			left.parent = leftRight;
+			leftRight.right = node;
+			node.parent = leftRight;
+			parent.setChild(nodeIsLeft, leftRight);
+			leftRight.parent = parent;
+			int nodeHeight = 1 + Math.max(leftRightRightHeight, rightHeight);
+			node.height = nodeHeight;
+			int leftNewHeight = 1 + Math.max(leftLeftHeight, leftRightLeftHeight);
+			left.height = leftNewHeight;
+			leftRight.height = 1 + Math.max(leftNewHeight, nodeHeight);
+			node.version = version + SHRINK_COUNT;
+			left.version = leftVersion + SHRINK_COUNT;
+			int nodeBalance = leftRightRightHeight - rightHeight;
+			if((nodeBalance < -1) || (nodeBalance > 1)) {
+				return node;
+			}
+			if(((leftRightRight == null) || (rightHeight == 0)) && (node.value == null)) {
+				return node;
+			}
+			int leftBalance = leftLeftHeight - leftRightLeftHeight;
+			if((leftBalance < -1) || (leftBalance > 1) || (((leftLeftHeight == 0) || (leftRightLeft == null)) && (left.value == null))) {
+				return left;
+			}
+			int topBalance = leftNewHeight - nodeHeight;
+			if((topBalance < -1) || (topBalance > 1)) {
+				return leftRight;
+			}
+			return fixHeight(parent);
+		}
+
+		/**
+		 * private Node rotateLeftOverRight(Node parent, Node node, Node right, int leftHeight, int rightRightHeight, Node rightLeft, int rightLeftRightHeight)
+		 *
+		 * the mirror image of rotateRightOverLeft
+		 * complexity O(1)
+		 */
+		private Node rotateLeftOverRight(Node parent, Node node, Node right, int leftHeight, int rightRightHeight, Node rightLeft, int rightLeftRightHeight) {
+			long version = node.version;
+			long rightVersion = right.version;
+			boolean nodeIsLeft = (parent.left == node);
+			Node rightLeftLeft = rightLeft.left;
+			Node rightLeftRight = rightLeft.right;
+			int rightLeftLeftHeight = height(rightLeftLeft);
+			node.version = version | SHRINKING;
+			right.version = rightVersion | SHRINKING;
+			node.right = rightLeftLeft;
+			if(rightLeftLeft != null) {
+				rightLeftLeft.parent = node;
+			}
+			right.left = rightLeftRight;
+			if(rightLeftRight != null) {
+				rightLeftRight.parent = right;
+			}
+			rightLeft.right = right;
+			right.parent = rightLeft;
+			rightLeft.left = node;
+			node.parent = rightLeft;
+			parent.setChild(nodeIsLeft, rightLeft);
+			rightLeft.parent = parent;
+			int nodeHeight = 1 + Math.max(leftHeight, rightLeftLeftHeight);
+			node.height = nodeHeight;
+			int rightNewHeight = 1 + Math.max(rightLeftRightHeight, rightRightHeight);
+			right.height = rightNewHeight;
+			rightLeft.height = 1 + Math.max(nodeHeight, rightNewHeight);
+			node.version = version + SHRINK_COUNT;
+			right.version = rightVersion + SHRINK_COUNT;
+			int nodeBalance = rightLeftLeftHeight - leftHeight;
+			if((nodeBalance < -1) || (nodeBalance > 1)) {
+				return node;
+			}
+			if(((rightLeftLeft == null) || (leftHeight == 0)) && (node.value == null)) {
+				return node;
+			}
+			int rightBalance = rightRightHeight - rightLeftRightHeight;
+			if((rightBalance < -1) || (rightBalance > 1) || (((rightRightHeight == 0) || (rightLeftRight == null)) && (right.value == null))) {
+				return right;
+			}
+			int topBalance = rightNewHeight - nodeHeight;
+			if((topBalance < -1) || (topBalance > 1)) {
+				return rightLeft;
+			}
+			return fixHeight(parent);
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(log(n))
+		 */
+		public String min() {
+			return extreme(true);
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(log(n))
+		 */
+		public String max() {
+			return extreme(false);
+		}
+
+		/**
+		 * private String extreme(boolean toLeft)
+		 *
+		 * returns the info of the leftmost (or rightmost) item, or null if the tree is empty
+		 * complexity O(log(n))
+		 */
+		private String extreme(boolean toLeft) {
+			while(true) {
+				Node right = holder.right;
+				if(right == null) {
+					return null;
+				}
+				long version = right.version;
+				if(isShrinkingOrUnlinked(version)) {
+					right.waitUntilShrinkCompleted(version);
+				}
+				else if(right == holder.right) {
+					Object value = attemptExtreme(toLeft, right, version);
+					if(value != RETRY) {
+						return decode(value);
+					}
+				}
+			}
+		}
+
+		/**
+		 * private Object attemptExtreme(boolean toLeft, Node node, long version)
+		 *
+		 * walks to the leftmost (or rightmost) node below node, which had version when it was reached.
+		 * returns its value, or RETRY if node shrank meanwhile
+		 * complexity O(log(n))
+		 */
+		private Object attemptExtreme(boolean toLeft, Node node, long version) {
+			while(true) {
+				Node child = node.child(toLeft);
+				if(child == null) {
+					Object value = node.value;
+					if(node.version != version) {
+						return RETRY;
+					}
+					if(value == null) {// a routing node about to be unlinked by the writer that emptied its side
+						Thread.yield();
+						return RETRY;
+					}
+					return value;
+				}
+				long childVersion = child.version;
+				if(isShrinkingOrUnlinked(childVersion)) {
+					child.waitUntilShrinkCompleted(childVersion);
+					if(node.version != version) {
+						return RETRY;
+					}
+				}
+				else if(child != node.child(toLeft)) {
+					if(node.version != version) {
+						return RETRY;
+					}
+				}
+				else {
+					if(node.version != version) {
+						return RETRY;
+					}
+					Object value = attemptExtreme(toLeft, child, childVersion);
+					if(value != RETRY) {
+						return value;
+					}
+				}
+			}
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of items in the tree. it is exact when no writer is running,
+		 * and otherwise counts some of the concurrent inserts and deletes
+		 * complexity O(number of threads)
+		 */
+		public int size() {
+			return (int)size.sum();
+		}
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 * complexity O(number of threads)
+		 */
+		public boolean empty() {
+			return size() == 0;
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array of the keys in the tree, taken without locking.
+		 * it holds every key that is in the tree during the whole call, and may or may not
+		 * hold the keys that are inserted or deleted meanwhile
+		 * complexity O(n)
+		 */
+		public int[] keysToArray() {
+			KeyCollector keys = new KeyCollector();
+			while(true) {
+				Node right = holder.right;
+				if(right == null) {
+					break;
+				}
+				long version = right.version;
+				if(isShrinkingOrUnlinked(version)) {
+					right.waitUntilShrinkCompleted(version);
+				}
+				else if((right == holder.right) && (attemptCollect(right, version, keys) != RETRY)) {
+					break;
+				}
+			}
+			return Arrays.copyOf(keys.keys, keys.count);
+		}
+
+		/**
+		 * private Object attemptCollect(Node node, long version, KeyCollector keys)
+		 *
+		 * adds the keys under node, which had version when it was reached, in order.
+		 * keys not above the last key collected are skipped, so an attempt that
+		 * is retried continues where the last one stopped.
+		 * returns RETRY if node shrank meanwhile
+		 * complexity O(n)
+		 */
+		private Object attemptCollect(Node node, long version, KeyCollector keys) {
+			if(!keys.covers(node.key)) {// the left side and node are still to be collected
+				if(attemptCollectSide(true, node, version, keys) == RETRY) {
+					return RETRY;
+				}
+				Object value = node.value;
+				if(node.version != version) {
+					return RETRY;
+				}
+				if((value != null) && !keys.covers(node.key)) {
+					keys.add(node.key);
+				}
+			}
+			return attemptCollectSide(false, node, version, keys);
+		}
+
+		/**
+		 * private Object attemptCollectSide(boolean toLeft, Node node, long version, KeyCollector keys)
+		 *
+		 * adds the keys of one son of node, hand over hand like attemptSearch
+		 * complexity O(n)
+		 */
+		private Object attemptCollectSide(boolean toLeft, Node node, long version, KeyCollector keys) {
+			while(true) {
+				Node child = node.child(toLeft);
+				if(child == null) {
+					return (node.version != version) ? RETRY : null;
+				}
+				long childVersion = child.version;
+				if(isShrinkingOrUnlinked(childVersion)) {
+					child.waitUntilShrinkCompleted(childVersion);
+					if(node.version != version) {
+						return RETRY;
+					}
+				}
+				else if(child != node.child(toLeft)) {
+					if(node.version != version) {
+						return RETRY;
+					}
+				}
+				else {
+					if(node.version != version) {
+						return RETRY;
+					}
+					if(attemptCollect(child, childVersion, keys) != RETRY) {
+						return null;
+					}
+				}
+			}
+		}
+
+		/**
+		 * private static final class KeyCollector
+		 *
+		 * the keys collected so far by keysToArray, in increasing order
+		 */
+		private static final class KeyCollector {
+			private int[] keys = new int[16];
+			private int count;
+
+			private boolean covers(int key) {
+				return (count > 0) && (key <= keys[count - 1]);
+			}
+
+			private void add(int key) {
+				if(count == keys.length) {
+					keys = Arrays.copyOf(keys, count * 2);
+				}
+				keys[count++] = key;
+			}
+		}
+	}
+
+	/**
+	 * public static class PersistentAVLTree
+	 *
+	 * An AVL tree whose nodes are never changed after they are made, so any number of
+	 * trees can share them. insert, delete and join copy the O(log(n)) nodes on the
+	 * path they change and replace the root; the old root still describes the old tree.
+	 * the nodes have no parent pointers, since a shared node has many parents.
+	 * snapshot() is O(1), and a snapshot can be read by any thread without locking.
+	 */
+	public static class PersistentAVLTree {
+		private static final int MAX_HEIGHT = 64; // more than the height of any AVL tree of int keys
+		private Node root; // null for the empty tree
+		private int rotations; // the rotations of the current operation
+
+		/**
+		 * public PersistentAVLTree()
+		 *
+		 * creates an empty tree
+		 * complexity O(1)
+		 */
+		public PersistentAVLTree() {
+		}
+
+		private PersistentAVLTree(Node root) {
+			this.root = root;
+		}
+
+		/**
+		 * public PersistentAVLTree snapshot()
+		 *
+		 * Returns a tree with the items of this tree at this moment.
+		 * the trees share their nodes, and later changes of either do not show in the other.
+		 * complexity O(1)
+		 */
+		public PersistentAVLTree snapshot() {
+			return new PersistentAVLTree(this.root);
+		}
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 * complexity O(1)
+		 */
+		public boolean empty() {
+			return this.root == null;
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 * complexity O(1)
+		 */
+		public int size() {
+			return size(this.root);
+		}
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 * complexity O(log(n))
+		 */
+		public String search(int k) {
+			Node node = this.root;
+			while(node != null) {
+				if(k == node.key) {
+					return node.value;
+				}
+				node = (k < node.key) ? node.left : node.right;
+			}
+			return null;
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the tree, copying the path to it.
+		 * returns the number of rotations, or -1 if an item with key k already exists in the tree.
+		 * complexity O(log(n)) time and O(log(n)) new nodes
+		 */
+		public int insert(int k, String i) {
+			this.rotations = 0;
+			Node newRoot = insert(this.root, k, i);
+			if(newRoot == this.root) {
+				return -1;
+			}
+			this.root = newRoot;
+			return this.rotations;
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the tree if it exists, copying the path to it.
+		 * returns the number of rotations, or -1 if an item with key k was not found in the tree.
+		 * complexity O(log(n)) time and O(log(n)) new nodes
+		 */
+		public int delete(int k) {
+			this.rotations = 0;
+			Node newRoot = delete(this.root, k);
+			if(newRoot == this.root) {
+				return -1;
+			}
+			this.root = newRoot;
+			return this.rotations;
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(log(n))
+		 */
+		public String min() {
+			Node node = this.root;
+			if(node == null) {
+				return null;
+			}
+			while(node.left != null) {
+				node = node.left;
+			}
+			return node.value;
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(log(n))
+		 */
+		public String max() {
+			Node node = this.root;
+			if(node == null) {
+				return null;
+			}
+			while(node.right != null) {
+				node = node.right;
+			}
+			return node.value;
+		}
+
+		/**
+		 * public PersistentAVLTree[] split(int x)
+		 *
+		 * Returns an array [t1, t2] with two trees, keys(t1) < x < keys(t2).
+		 * x does not have to be in the tree, and the tree itself does not change.
+		 * complexity O(log(n)) time and O(log(n)) new nodes
+		 */
+		public PersistentAVLTree[] split(int x) {
+			Node[] parts = split(this.root, x);
+			return new PersistentAVLTree[] {new PersistentAVLTree(parts[0]), new PersistentAVLTree(parts[2])};
+		}
+
+		/**
+		 * public int join(int x, String info, PersistentAVLTree t)
+		 *
+		 * joins t and an item with key x and info info with the tree. t does not change.
+		 * Returns the complexity of the operation (rank difference between the tree and t + 1)
+		 * precondition: keys(x,t) < keys() or keys(x,t) > keys()
+		 * complexity O(log(n)) time and O(log(n)) new nodes
+		 */
+		public int join(int x, String info, PersistentAVLTree t) {
+			int complexity = Math.abs(height(this.root) - height(t.root)) + 1;
+			boolean tIsLeft = (t.root != null) ? (t.root.key < x) : ((this.root == null) || (this.root.key > x));
+			if(tIsLeft) {
+				this.root = join(t.root, x, info, this.root);
+			}
+			else {
+				this.root = join(this.root, x, info, t.root);
+			}
+			return complexity;
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree,
+		 * or an empty array if the tree is empty.
+		 * complexity O(n)
+		 */
+		public int[] keysToArray() {
+			int[] keys = new int[size()];
+			int[] count = new int[1];
+			forEach((key, value) -> keys[count[0]++] = key);
+			return keys;
+		}
+
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the tree,
+		 * sorted by their respective keys, or an empty array if the tree is empty.
+		 * complexity O(n)
+		 */
+		public String[] infoToArray() {
+			String[] values = new String[size()];
+			int[] count = new int[1];
+			forEach((key, value) -> values[count[0]++] = value);
+			return values;
+		}
+
+		/**
+		 * public void forEach(IntObjConsumer<String> action)
+		 *
+		 * performs action on every key and its info in increasing order of keys,
+		 * walking the tree with a stack of the path since there are no parent pointers.
+		 * complexity O(n)
+		 */
+		public void forEach(IntObjConsumer<String> action) {
+			Node[] path = new Node[MAX_HEIGHT];
+			int depth = 0;
+			Node node = this.root;
+			while((node != null) || (depth > 0)) {
+				while(node != null) {
+					path[depth++] = node;
+					node = node.left;
+				}
+				node = path[--depth];
+				action.accept(node.key, node.value);
+				node = node.right;
+			}
+		}
+
+		/**
+		 * private Node insert(Node node, int k, String i)
+		 *
+		 * Returns the root of a copy of the sub tree of node with the item inserted,
+		 * or node itself if k is already there
+		 * complexity O(log(n))
+		 */
+		private Node insert(Node node, int k, String i) {
+			if(node == null) {
+				return new Node(k, i, null, null);
+			}
+			if(k == node.key) {
+				return node;
+			}
+			if(k < node.key) {
+				Node left = insert(node.left, k, i);
+				return (left == node.left) ? node : balance(node.key, node.value, left, node.right);
+			}
+			Node right = insert(node.right, k, i);
+			return (right == node.right) ? node : balance(node.key, node.value, node.left, right);
+		}
+
+		/**
+		 * private Node delete(Node node, int k)
+		 *
+		 * Returns the root of a copy of the sub tree of node without the item with key k,
+		 * or node itself if k is not there
+		 * complexity O(log(n))
+		 */
+		private Node delete(Node node, int k) {
+			if(node == null) {
+				return null;
+			}
+			if(k < node.key) {
+				Node left = delete(node.left, k);
+				return (left == node.left) ? node : balance(node.key, node.value, left, node.right);
+			}
+			if(k > node.key) {
+				Node right = delete(node.right, k);
+				return (right == node.right) ? node : balance(node.key, node.value, node.left, right);
+			}
+			if(node.left == null) {
+				return node.right;
+			}
+			if(node.right == null) {
+				return node.left;
+			}
+			Node successor = node.right;
+			while(successor.left != null) {
+				successor = successor.left;
+			}
+			return balance(successor.key, successor.value, node.left, deleteMin(node.right));
+		}
+
+		/**
+		 * private Node deleteMin(Node node)
+		 *
+		 * Returns the root of a copy of the sub tree of node without its smallest key
+		 * complexity O(log(n))
+		 */
+		private Node deleteMin(Node node) {
+			if(node.left == null) {
+				return node.right;
+			}
+			return balance(node.key, node.value, deleteMin(node.left), node.right);
+		}
+
+		/**
+		 * private Node[] split(Node node, int k)
+		 *
+		 * Returns [smaller, pivot, bigger]: the roots of the trees of the keys of the
+		 * sub tree of node below and above k, and the node with key k or null
+		 * complexity O(log(n))
+		 */
+		private Node[] split(Node node, int k) {
+			if(node == null) {
+				return new Node[3];
+			}
+			if(k == node.key) {
+				return new Node[] {node.left, node, node.right};
+			}
+			Node[] parts;
+			if(k < node.key) {
+				parts = split(node.left, k);
+				parts[2] = join(parts[2], node.key, node.value, node.right);
+			}
+			else {
+				parts = split(node.right, k);
+				parts[0] = join(node.left, node.key, node.value, parts[0]);
+			}
+			return parts;
+		}
+
+		/**
+		 * private Node join(Node left, int key, String value, Node right)
+		 *
+		 * Returns the root of a tree of the items of left, the item key, value and the items of right
+		 * precondition: keys(left) < key < keys(right)
+		 * complexity O(|rank(left) - rank(right)| + 1)
+		 */
+		private Node join(Node left, int key, String value, Node right) {
+			if(height(left) > height(right) + 1) {
+				return balance(left.key, left.value, left.left, join(left.right, key, value, right));
+			}
+			if(height(right) > height(left) + 1) {
+				return balance(right.key, right.value, join(left, key, value, right.left), right.right);
+			}
+			return new Node(key, value, left, right);
+		}
+
+		/**
+		 * private Node balance(int key, String value, Node left, Node right)
+		 *
+		 * Returns the root of a new node with the item key, value and the sons left and right,
+		 * rotated if their ranks differ by 2
+		 * complexity O(1)
+		 */
+		private Node balance(int key, String value, Node left, Node right) {
+			if(height(left) > height(right) + 1) {
+				if(height(left.left) < height(left.right)) {// left right case
+					left = rotateLeft(left.key, left.value, left.left, left.right);
+				}
+				return rotateRight(key, value, left, right);
+			}
+			if(height(right) > height(left) + 1) {
+				if(height(right.right) < height(right.left)) {// right left case
+					right = rotateRight(right.key, right.value, right.left, right.right);
+				}
+				return rotateLeft(key, value, left, right);
+			}
+			return new Node(key, value, left, right);
+		}
+
+		private Node rotateRight(int key, String value, Node left, Node right) {
+			this.rotations++;
+			return new Node(left.key, left.value, left.left, new Node(key, value, left.right, right));
+		}
+
+		private Node rotateLeft(int key, String value, Node left, Node right) {
+			this.rotations++;
+			return new Node(right.key, right.value, new Node(key, value, left, right.left), right.right);
+		}
+
+		private static int height(Node node) {
+			return (node == null) ? -1 : node.height;
+		}
+
+		private static int size(Node node) {
+			return (node == null) ? 0 : node.size;
+		}
+
+		private static final class Node {
+			private final int key;
+			private final String value;
+			private final Node left;
+			private final Node right;
+			private final int height;
+			private final int size;
+
+			private Node(int key, String value, Node left, Node right) {
+				this.key = key;
+				this.value = value;
+				this.left = left;
+				this.right = right;
+				this.height = Math.max(height(left), height(right)) + 1;
+				this.size = size(left) + size(right) + 1;
+			}
+		}
+	}
+
+	/**
+	 * public static class CowAVLTree
+	 *
+	 * A thread safe copy on write AVL tree for trees that are read much more than written.
+	 * the current version is an immutable PersistentAVLTree published through an
+	 * AtomicReference, so a read is a volatile load and a walk of nodes that never change,
+	 * without locks or retries. a write copies the path it changes into a new version and
+	 * publishes it with one compare and set, and tries again if another writer won.
+	 */
+	public static class CowAVLTree {
+		private final AtomicReference<PersistentAVLTree> version = new AtomicReference<>(new PersistentAVLTree());
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 * complexity O(log(n))
+		 */
+		public String search(int k) {
+			return version.get().search(k);
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(log(n))
+		 */
+		public String min() {
+			return version.get().min();
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
+		 * complexity O(log(n))
+		 */
+		public String max() {
+			return version.get().max();
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of nodes in the tree.
+		 * complexity O(1)
+		 */
+		public int size() {
+			return version.get().size();
+		}
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the tree is empty
+		 * complexity O(1)
+		 */
+		public boolean empty() {
+			return version.get().empty();
+		}
+
+		/**
+		 * public PersistentAVLTree snapshot()
+		 *
+		 * Returns the current version of the tree. later writes do not show in it.
+		 * complexity O(1)
+		 */
+		public PersistentAVLTree snapshot() {
+			return version.get().snapshot();
+		}
+
+		/**
+		 * public void forEach(IntObjConsumer<String> action)
+		 *
+		 * performs action on every key and its info of the current version,
+		 * in increasing order of keys
+		 * complexity O(n)
+		 */
+		public void forEach(IntObjConsumer<String> action) {
+			version.get().forEach(action);
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys of the current version
+		 * complexity O(n)
+		 */
+		public int[] keysToArray() {
+			return version.get().keysToArray();
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the tree.
+		 * returns the number of rotations, or -1 if an item with key k already exists in the tree.
+		 * complexity O(log(n)) for each try
+		 */
+		public int insert(int k, String i) {
+			while(true) {
+				PersistentAVLTree current = version.get();
+				PersistentAVLTree next = current.snapshot();
+				int result = next.insert(k, i);
+				if((result == -1) || version.compareAndSet(current, next)) {
+					return result;
+				}
+			}
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the tree if it exists.
+		 * returns the number of rotations, or -1 if an item with key k was not found in the tree.
+		 * complexity O(log(n)) for each try
+		 */
+		public int delete(int k) {
+			while(true) {
+				PersistentAVLTree current = version.get();
+				PersistentAVLTree next = current.snapshot();
+				int result = next.delete(k);
+				if((result == -1) || version.compareAndSet(current, next)) {
+					return result;
+				}
+			}
+		}
+
+		/**
+		 * public void update(Consumer<PersistentAVLTree> writes)
+		 *
+		 * runs writes on a copy of the current version and publishes the result
+		 * as one new version, so readers see all of the writes or none of them.
+		 * writes may run more than once if other writers publish meanwhile,
+		 * so it should only change the tree it gets.
+		 * complexity O(1) and the complexity of writes, for each try
+		 */
+		public void update(Consumer<PersistentAVLTree> writes) {
+			while(true) {
+				PersistentAVLTree current = version.get();
+				PersistentAVLTree next = current.snapshot();
+				writes.accept(next);
+				if(version.compareAndSet(current, next)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * public static class ShardedAVLTree
+	 *
+	 * A thread safe index that divides the int keys into ranges, each kept in its own
+	 * AVLTree (a shard) with its own read write lock, so operations on different shards
+	 * do not contend. when a shard grows much larger than a neighbor, a range of its keys
+	 * is moved to the neighbor with splitAtRank and a join, and the move goes on to the
+	 * next shards while they are uneven too.
+	 * size, min, max, keysToArray and infoToArray lock all of the shards in order, so they
+	 * see one consistent tree ordered by the keys.
+	 */
+	public static class ShardedAVLTree {
+		private static final int MIN_MOVE = 1 << 10; // smaller differences between shards are not worth a move
+		private final Shard[] shards;
+
+		/**
+		 * public ShardedAVLTree(int shardCount)
+		 *
+		 * creates an empty index of shardCount shards that start with equal ranges of keys
+		 * precondition: shardCount >= 1
+		 * complexity O(shardCount)
+		 */
+		public ShardedAVLTree(int shardCount) {
+			if(shardCount < 1) {
+				throw new IllegalArgumentException("there must be at least one shard, not " + shardCount);
+			}
+			this.shards = new Shard[shardCount];
+			long width = ((1L << 32) + shardCount - 1) / shardCount;
+			for(int i = 0; i < shardCount; i++) {
+				long low = Integer.MIN_VALUE + i * width;
+				long high = (i == shardCount - 1) ? (Integer.MAX_VALUE + 1L) : (low + width);
+				this.shards[i] = new Shard(i, low, high);
+			}
+		}
+
+		/**
+		 * public String search(int k)
+		 *
+		 * returns the info of an item with key k if it exists in the index
+		 * otherwise, returns null
+		 * complexity O(log(n) + log(shards))
+		 */
+		public String search(int k) {
+			Shard shard = lockShard(k, false);
+			try {
+				return shard.tree.search(k);
+			}
+			finally {
+				shard.lock.readLock().unlock();
+			}
+		}
+
+		/**
+		 * public int insert(int k, String i)
+		 *
+		 * inserts an item with key k and info i to the shard of k.
+		 * returns the number of rebalancing operations in the shard,
+		 * or -1 if an item with key k already exists in the index.
+		 * complexity O(log(n) + log(shards)), and O(shards * log(n)) if shards are moved
+		 */
+		public int insert(int k, String i) {
+			Shard shard = lockShard(k, true);
+			int result;
+			try {
+				result = shard.tree.insert(k, i);
+				shard.size = shard.tree.size();
+			}
+			finally {
+				shard.lock.writeLock().unlock();
+			}
+			if(result != -1) {
+				rebalanceFrom(shard.index);
+			}
+			return result;
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the index if it exists.
+		 * returns the number of rebalancing operations in the shard,
+		 * or -1 if an item with key k was not found in the index.
+		 * complexity O(log(n) + log(shards)), and O(shards * log(n)) if shards are moved
+		 */
+		public int delete(int k) {
+			Shard shard = lockShard(k, true);
+			int result;
+			try {
+				result = shard.tree.delete(k);
+				shard.size = shard.tree.size();
+			}
+			finally {
+				shard.lock.writeLock().unlock();
+			}
+			if(result != -1) {// a neighbor may now be much larger
+				if(shard.index > 0) {
+					rebalanceFrom(shard.index - 1);
+				}
+				if(shard.index < shards.length - 1) {
+					rebalanceFrom(shard.index + 1);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * public int size()
+		 *
+		 * Returns the number of items in the index.
+		 * complexity O(shards)
+		 */
+		public int size() {
+			lockAll();
+			try {
+				int size = 0;
+				for(Shard shard : shards) {
+					size += shard.tree.size();
+				}
+				return size;
+			}
+			finally {
+				unlockAll();
+			}
+		}
+
+		/**
+		 * public boolean empty()
+		 *
+		 * returns true if and only if the index is empty
+		 * complexity O(shards)
+		 */
+		public boolean empty() {
+			return size() == 0;
+		}
+
+		/**
+		 * public String min()
+		 *
+		 * Returns the info of the item with the smallest key in the index,
+		 * or null if the index is empty
+		 * complexity O(shards)
+		 */
+		public String min() {
+			lockAll();
+			try {
+				for(Shard shard : shards) {
+					if(!shard.tree.empty()) {
+						return shard.tree.min();
+					}
+				}
+				return null;
+			}
+			finally {
+				unlockAll();
+			}
+		}
+
+		/**
+		 * public String max()
+		 *
+		 * Returns the info of the item with the largest key in the index,
+		 * or null if the index is empty
+		 * complexity O(shards)
+		 */
+		public String max() {
+			lockAll();
+			try {
+				for(int i = shards.length - 1; i >= 0; i--) {
+					if(!shards[i].tree.empty()) {
+						return shards[i].tree.max();
+					}
+				}
+				return null;
+			}
+			finally {
+				unlockAll();
+			}
+		}
+
+		/**
+		 * public int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the index
+		 * complexity O(n + shards)
+		 */
+		public int[] keysToArray() {
+			lockAll();
+			try {
+				int[] keys = new int[sizeLocked()];
+				int count = 0;
+				for(Shard shard : shards) {
+					int[] shardKeys = shard.tree.keysToArray();
+					System.arraycopy(shardKeys, 0, keys, count, shardKeys.length);
+					count += shardKeys.length;
+				}
+				return keys;
+			}
+			finally {
+				unlockAll();
+			}
+		}
+
+		/**
+		 * public String[] infoToArray()
+		 *
+		 * Returns an array which contains all info in the index, sorted by their respective keys
+		 * complexity O(n + shards)
+		 */
+		public String[] infoToArray() {
+			lockAll();
+			try {
+				String[] values = new String[sizeLocked()];
+				int count = 0;
+				for(Shard shard : shards) {
+					String[] shardValues = shard.tree.infoToArray();
+					System.arraycopy(shardValues, 0, values, count, shardValues.length);
+					count += shardValues.length;
+				}
+				return values;
+			}
+			finally {
+				unlockAll();
+			}
+		}
+
+		/**
+		 * private Shard lockShard(int k, boolean write)
+		 *
+		 * finds the shard whose range has k and locks it. the ranges may move
+		 * until the shard is locked, so the range is checked again under the lock.
+		 * complexity O(log(shards))
+		 */
+		private Shard lockShard(int k, boolean write) {
+			while(true) {
+				int low = 0;
+				int high = shards.length - 1;
+				while(low < high) {// the last shard whose range starts at k or before
+					int middle = (low + high + 1) >>> 1;
+					if(shards[middle].low <= k) {
+						low = middle;
+					}
+					else {
+						high = middle - 1;
+					}
+				}
+				Shard shard = shards[low];
+				Lock lock = write ? shard.lock.writeLock() : shard.lock.readLock();
+				lock.lock();
+				if((shard.low <= k) && (k < shard.high)) {
+					return shard;
+				}
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * private void rebalanceFrom(int i)
+		 *
+		 * moves keys from shard i to the neighbors it is much larger than,
+		 * and on from them to the next shards in the same direction
+		 * complexity O(shards * log(n))
+		 */
+		private void rebalanceFrom(int i) {
+			for(int from = i; (from < shards.length - 1) && unbalanced(shards[from], shards[from + 1]); from++) {
+				moveBetween(from);
+			}
+			for(int from = i; (from > 0) && unbalanced(shards[from], shards[from - 1]); from--) {
+				moveBetween(from - 1);
+			}
+		}
+
+		private static boolean unbalanced(Shard larger, Shard smaller) {
+			return larger.size > 2 * smaller.size + MIN_MOVE;
+		}
+
+		/**
+		 * private void moveBetween(int i)
+		 *
+		 * evens the sizes of shards i and i + 1 by moving the keys at the end of the
+		 * larger one to the other and moving the range boundary between them.
+		 * complexity O(log(n))
+		 */
+		private void moveBetween(int i) {
+			Shard left = shards[i];
+			Shard right = shards[i + 1];
+			left.lock.writeLock().lock();
+			right.lock.writeLock().lock();
+			try {
+				int leftSize = left.tree.size();
+				int rightSize = right.tree.size();
+				if(Math.abs(leftSize - rightSize) <= MIN_MOVE) {// another thread already moved them
+					return;
+				}
+				int leftTarget = (leftSize + rightSize) / 2;
+				int boundary;
+				if(leftSize > leftTarget) {
+					AVLTree[] parts = left.tree.splitAtRank(leftTarget);
+					boundary = parts[1].min.getKey();
+					left.tree = parts[0];
+					right.tree = concat(parts[1], right.tree);
+				}
+				else {
+					AVLTree[] parts = right.tree.splitAtRank(leftTarget - leftSize);
+					boundary = parts[1].min.getKey();
+					left.tree = concat(left.tree, parts[0]);
+					right.tree = parts[1];
+				}
+				left.high = boundary;
+				right.low = boundary;
+				left.size = left.tree.size();
+				right.size = right.tree.size();
+			}
+			finally {
+				right.lock.writeLock().unlock();
+				left.lock.writeLock().unlock();
+			}
+		}
+
+		/**
+		 * private static AVLTree concat(AVLTree smaller, AVLTree bigger)
+		 *
+		 * Returns a tree of the nodes of both trees, joined without a separating item
+		 * precondition: keys(smaller) < keys(bigger)
+		 * complexity O(log(n))
+		 */
+		private static AVLTree concat(AVLTree smaller, AVLTree bigger) {
+			AVLTree tree = new AVLTree();
+			tree.setRootAfterBatch(tree.joinNodes(smaller.root, bigger.root));
+			return tree;
+		}
+
+		private void lockAll() {
+			for(Shard shard : shards) {
+				shard.lock.readLock().lock();
+			}
+		}
+
+		private void unlockAll() {
+			for(int i = shards.length - 1; i >= 0; i--) {
+				shards[i].lock.readLock().unlock();
+			}
+		}
+
+		private int sizeLocked() {
+			int size = 0;
+			for(Shard shard : shards) {
+				size += shard.tree.size();
+			}
+			return size;
+		}
+
+		private static final class Shard {
+			private final int index;
+			private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+			private AVLTree tree = new AVLTree(); // guarded by lock
+			private volatile long low; // the range of keys of the shard is [low, high)
+			private volatile long high;
+			private volatile int size; // the size of tree, for deciding on moves without locking
+
+			private Shard(int index, long low, long high) {
+				this.index = index;
+				this.low = low;
+				this.high = high;
+			}
+		}
 	}
 
 	/**
-	 * public class AVLNode
+	 * public static class LoggedAVLTree
 	 *
-	 * If you wish to implement classes other than AVLTree
-	 * (for example AVLNode), do it in this file, not in 
-	 * another file.
-	 * This class can and must be modified.
-	 * (It must implement IAVLNode)
+	 * A thread safe AVLTree whose changes are appended to a write ahead log, so that
+	 * after a restart the tree is rebuilt by replaying the log on top of the tree the log
+	 * started from (an empty tree or the last snapshot, see checkpoint).
+	 * the records are numbered, and a snapshot written by checkpoint holds the number of
+	 * the last record in it, so replay skips the records that are already in the snapshot.
+	 * concurrent writers are committed together: whoever writes the log to the disk
+	 * first writes the records of all of the waiting writers, with one fsync.
+	 * if the log cannot be written, the change fails with an UncheckedIOException but stays
+	 * in the tree, and so do all of the changes after it until a checkpoint saves them.
 	 */
-	public class AVLNode implements IAVLNode{
-		//:Fields of class AVLNode
-		private int key;
-		private String value;
-		private int rank;
-		private AVLNode left;
-		private AVLNode right;
-		private AVLNode parent;
-		private int size; //:each node holds the number of nodes in the subtree that this node is the root of
+	public static class LoggedAVLTree implements Closeable {
+		private AVLTree tree; // guarded by this
+		private final WriteAheadLog log;
+
+		private LoggedAVLTree(AVLTree tree, WriteAheadLog log) {
+			this.tree = tree;
+			this.log = log;
+		}
 
 		/**
-		 * public AVLNode(int newKey, String newValue)
+		 * public static LoggedAVLTree open(Path path, AVLTree base, SyncPolicy policy)
 		 *
-		 * constructor
-		 * complexity O(1)
+		 * opens the log in the file path, creating it if it does not exist, and replays it on
+		 * base, which must be the tree the log started from. a record torn by a crash at the
+		 * end of the log is cut off. the tree takes base over.
+		 * complexity O(m log(n)) for m records
 		 */
-		public AVLNode(int newKey, String newValue) {
-			this.key=newKey;
-			this.value=newValue;
-			this.rank=0;
-			this.left=null;
-			this.right=null;
-			this.parent=null;
-			this.size=1;	    	
+		public static LoggedAVLTree open(Path path, AVLTree base, SyncPolicy policy) throws IOException {
+			return open(path, base, 0, policy);
 		}
-		
+
 		/**
-		 * public AVLNode()
+		 * public static LoggedAVLTree open(Path path, Path snapshot, SyncPolicy policy)
 		 *
-		 * constructor of external leaf
-		 * complexity O(1)
+		 * opens the log in the file path like open(path, base, policy), where base is the
+		 * snapshot written by checkpoint(snapshot), or an empty tree if there is no snapshot yet.
+		 * the records that the snapshot already holds are skipped.
+		 * complexity O(n + m log(n)) for n items in the snapshot and m records
 		 */
-		public AVLNode() {//:this is the constructor of external leaf
-			this.key = - 1;
-			this.value = null;
-			this.rank = -1;
+		public static LoggedAVLTree open(Path path, Path snapshot, SyncPolicy policy) throws IOException {
+			if(!Files.exists(snapshot)) {
+				return open(path, new AVLTree(), 0, policy);
+			}
+			return open(path, readSnapshot(snapshot), readSnapshotSequence(snapshot), policy);
 		}
-		
+
+		private static LoggedAVLTree open(Path path, AVLTree base, long sequence, SyncPolicy policy) throws IOException {
+			WriteAheadLog log = new WriteAheadLog(path, policy);
+			LoggedAVLTree logged = new LoggedAVLTree(base, log);
+			try {
+				log.replay(logged, sequence);
+			}
+			catch(IOException | RuntimeException e) {
+				log.close();
+				throw e;
+			}
+			return logged;
+		}
+
 		/**
-		 * public int getKey()
+		 * public synchronized String search(int k)
 		 *
-		 * getter of field key
-		 * complexity O(1)
+		 * returns the info of an item with key k if it exists in the tree
+		 * otherwise, returns null
+		 * complexity O(log(n))
 		 */
-		public int getKey()
-		{
-			return this.key; 
+		public synchronized String search(int k) {
+			return tree.search(k);
 		}
 
 		/**
-		 * public String getValue()
+		 * public int insert(int k, String i)
 		 *
-		 * getter of field value
+		 * inserts an item with key k and info i to the tree and logs it.
+		 * returns when the log is as durable as the sync policy promises.
+		 * returns the number of rebalancing operations, or -1 if an item with key k already exists in the tree.
+		 * complexity O(log(n))
+		 */
+		public int insert(int k, String i) {
+			int result;
+			long record;
+			synchronized(this) {
+				result = tree.insert(k, i);
+				if(result == -1) {
+					return -1;
+				}
+				record = log.appendInsert(k, i);
+			}
+			log.commit(record);
+			return result;
+		}
+
+		/**
+		 * public int delete(int k)
+		 *
+		 * deletes an item with key k from the tree if it exists and logs it.
+		 * returns when the log is as durable as the sync policy promises.
+		 * returns the number of rebalancing operations, or -1 if an item with key k was not found in the tree.
+		 * complexity O(log(n))
+		 */
+		public int delete(int k) {
+			int result;
+			long record;
+			synchronized(this) {
+				result = tree.delete(k);
+				if(result == -1) {
+					return -1;
+				}
+				record = log.appendDelete(k);
+			}
+			log.commit(record);
+			return result;
+		}
+
+		/**
+		 * public AVLTree split(int x, boolean keepSmaller)
+		 *
+		 * splits the tree by the key x like AVLTree.split: the tree keeps the keys smaller
+		 * than x if keepSmaller (else the bigger keys), and the other side is returned
+		 * as a tree that is not logged.
+		 * complexity O(log(n))
+		 */
+		public AVLTree split(int x, boolean keepSmaller) {
+			AVLTree other;
+			long record;
+			synchronized(this) {
+				AVLTree[] parts = tree.split(x);
+				tree = keepSmaller ? parts[0] : parts[1];
+				other = keepSmaller ? parts[1] : parts[0];
+				record = log.appendSplit(x, keepSmaller);
+			}
+			log.commit(record);
+			return other;
+		}
+
+		/**
+		 * public int join(IAVLNode x, AVLTree t)
+		 *
+		 * joins t and x with the tree like AVLTree.join. t is not logged itself,
+		 * so its items are written to the log with the join.
+		 * Returns the complexity of the operation (rank difference between the tree and t + 1)
+		 * precondition: keys(x,t) < keys() or keys(x,t) > keys()
+		 * complexity O(|t| + log(n))
+		 */
+		public int join(IAVLNode x, AVLTree t) {
+			int result;
+			long record;
+			synchronized(this) {
+				int key = x.getKey();
+				String info = x.getValue();
+				int[] keys = t.keysToArray();
+				String[] values = t.infoToArray();
+				result = tree.join(x, t);// logged only once it is done, like the other operations
+				record = log.appendJoin(key, info, keys, values);
+			}
+			log.commit(record);
+			return result;
+		}
+
+		/**
+		 * public synchronized int size()
+		 *
+		 * Returns the number of nodes in the tree.
 		 * complexity O(1)
 		 */
-		public String getValue()
-		{
-			return this.value; 
+		public synchronized int size() {
+			return tree.size();
 		}
 
 		/**
-		 * public void setLeft(IAVLNode node)
+		 * public synchronized String min()
 		 *
-		 * setter of field left
+		 * Returns the info of the item with the smallest key in the tree,
+		 * or null if the tree is empty
 		 * complexity O(1)
 		 */
-		public void setLeft(IAVLNode node)
-		{	
-			AVLNode leftNode = (AVLNode)node;//:casting from IAVLNode to AVLNode	
-			this.left = leftNode;		//:define the left son
+		public synchronized String min() {
+			return tree.min();
 		}
 
 		/**
-		 * public void getLeft()
+		 * public synchronized String max()
 		 *
-		 * getter of field left
+		 * Returns the info of the item with the largest key in the tree,
+		 * or null if the tree is empty
 		 * complexity O(1)
 		 */
-		public IAVLNode getLeft()
-		{
+		public synchronized String max() {
+			return tree.max();
+		}
 
-			return this.left; 
+		/**
+		 * public synchronized int[] keysToArray()
+		 *
+		 * Returns a sorted array which contains all keys in the tree
+		 * complexity O(n)
+		 */
+		public synchronized int[] keysToArray() {
+			return tree.keysToArray();
 		}
 
 		/**
-		 * public void setRight(IAVLNode node)
+		 * public synchronized String[] infoToArray()
 		 *
-		 * setter of field right
-		 * complexity O(1)
+		 * Returns an array which contains all info in the tree, sorted by their respective keys
+		 * complexity O(n)
 		 */
-		public void setRight(IAVLNode node)
-		{
-			AVLNode rightNode = (AVLNode)node;// casting from IAVLNode to AVLNode
-			this.right = rightNode;		// define the right son
+		public synchronized String[] infoToArray() {
+			return tree.infoToArray();
 		}
-		
+
 		/**
-		 * public void getRight()
+		 * public synchronized void checkpoint(Path snapshot)
 		 *
-		 * getter of field right
-		 * complexity O(1)
+		 * writes the tree to the snapshot file with the number of the last record in it,
+		 * while no one changes it, and then empties the log. from now on the log must be
+		 * opened with open(path, snapshot, policy). a crash before the log is emptied
+		 * is harmless, since replay skips the records that the snapshot holds. after a
+		 * failed write the log can be used again once a checkpoint succeeded.
+		 * complexity O(n)
 		 */
-		public IAVLNode getRight()
-		{
-			return this.right; 
+		public synchronized void checkpoint(Path snapshot) throws IOException {
+			tree.writeSnapshot(snapshot, log.lastSequence());
+			log.truncate();
 		}
-		
+
 		/**
-		 * public void setParent(IAVLNode node)
+		 * public void close()
 		 *
-		 * setter of field parent
+		 * writes the rest of the log to the disk and closes it
 		 * complexity O(1)
 		 */
-		public void setParent(IAVLNode node)
-		{
-			if(node == null) {
-				this.parent = null;
-				return;
+		public void close() throws IOException {
+			log.close();
+		}
+
+		/**
+		 * private void replayInsert(int k, String i)
+		 *
+		 * redoes a logged operation on the tree without logging it again,
+		 * like the other replay methods
+		 * complexity O(log(n))
+		 */
+		private void replayInsert(int k, String i) {
+			tree.insert(k, i);
+		}
+
+		private void replayDelete(int k) {
+			tree.delete(k);
+		}
+
+		private void replaySplit(int x, boolean keepSmaller) {
+			AVLTree[] parts = tree.split(x);
+			tree = keepSmaller ? parts[0] : parts[1];
+		}
+
+		private void replayJoin(int x, String info, int[] keys, String[] values) {
+			tree.join(tree.new AVLNode(x, info), fromSorted(keys, values));
+		}
+	}
+
+	/**
+	 * public static final class SyncPolicy
+	 *
+	 * when a LoggedAVLTree forces its log to the disk: after every operation
+	 * (an operation returns only when it is durable), every few milliseconds
+	 * (a crash may lose the operations of the last interval), or never (the
+	 * operating system decides, and a crash of the machine may lose any of them).
+	 * the log is always written to the file before an operation returns, so a crash
+	 * of the process alone loses nothing.
+	 */
+	public static final class SyncPolicy {
+		private final long intervalMillis; // 0 for every operation, -1 for never
+
+		private SyncPolicy(long intervalMillis) {
+			this.intervalMillis = intervalMillis;
+		}
+
+		public static SyncPolicy everyOperation() {
+			return new SyncPolicy(0);
+		}
+
+		public static SyncPolicy everyMillis(long intervalMillis) {
+			if(intervalMillis <= 0) {
+				throw new IllegalArgumentException("the interval must be positive, not " + intervalMillis);
+			}
+			return new SyncPolicy(intervalMillis);
+		}
+
+		public static SyncPolicy never() {
+			return new SyncPolicy(-1);
+		}
+	}
+
+	/**
+	 * static final class WriteAheadLog
+	 *
+	 * the log file of a LoggedAVLTree. a record is [payload length, CRC32 of the payload,
+	 * payload], and a payload is the record's 8 byte sequence number, the operation's type
+	 * byte and its arguments (ints are 4 bytes, a String is its UTF-8 length or -1 for null
+	 * and its bytes). the sequence numbers go on increasing across truncate, and across restarts
+	 * from the snapshot of the log.
+	 * records are appended to a buffer in memory; commit writes the buffer
+	 * to the file and forces it according to the sync policy.
+	 */
+	static final class WriteAheadLog implements Closeable {
+		private static final byte INSERT = 1;
+		private static final byte DELETE = 2;
+		private static final byte SPLIT = 3;
+		private static final byte JOIN = 4;
+		private final Path path;
+		private final FileChannel channel;
+		private final SyncPolicy policy;
+		private final ScheduledExecutorService syncer; // forces the log of a periodic policy, or null
+		private final ByteArrayOutputStream payload = new ByteArrayOutputStream(); // guarded by this
+		private final DataOutputStream payloadOut = new DataOutputStream(payload);
+		private final CRC32 crc = new CRC32();
+		private ByteArrayOutputStream pending = new ByteArrayOutputStream(); // guarded by this
+		private long appended; // the sequence number of the last record appended, guarded by this
+		private final Object commitLock = new Object();
+		private long written; // the sequence number of the last record written to the file, guarded by commitLock
+		private long synced; // the sequence number of the last record forced to the disk, guarded by commitLock
+		private IOException failure; // the first failed write or force, after which nothing is written, guarded by commitLock
+
+		WriteAheadLog(Path path, SyncPolicy policy) throws IOException {
+			this.path = path;
+			this.policy = policy;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			if(policy.intervalMillis > 0) {
+				this.syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+					Thread thread = new Thread(task, "avl-log-sync");
+					thread.setDaemon(true);
+					return thread;
+				});
+				this.syncer.scheduleAtFixedRate(this::syncPeriodically, policy.intervalMillis, policy.intervalMillis, TimeUnit.MILLISECONDS);
+			}
+			else {
+				this.syncer = null;
 			}
-			AVLNode parentNode = (AVLNode)node; //:casting
-			this.parent=parentNode;
 		}
 
 		/**
-		 * public void getParent()
+		 * void replay(LoggedAVLTree tree, long skipped)
 		 *
-		 * getter of field parent
-		 * complexity O(1)
+		 * redoes the records of the file whose sequence number is above skipped on tree,
+		 * cuts off a torn record at the end and moves to the end of the file for appending.
+		 * a length that does not fit in the rest of the file is torn too, so a corrupt
+		 * header never allocates more than the file. throws an IOException if a sequence
+		 * number is missing, between the records or between skipped and the first record,
+		 * rather than redo the records after the hole.
+		 * complexity O(m log(n)) for m records
 		 */
-		public IAVLNode getParent()
-		{
-			return this.parent; 
+		void replay(LoggedAVLTree tree, long skipped) throws IOException {
+			long valid = 0;
+			long fileSize = channel.size();
+			long last = skipped;
+			byte[] record = new byte[1 << 8];
+			try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+				while(true) {
+					int length;
+					try {
+						length = in.readInt();
+						int checksum = in.readInt();
+						if((length < 9) || (length > fileSize - valid - 8)) {// a sequence number and a type at least
+							break;
+						}
+						if(length > record.length) {
+							record = new byte[Math.max(length, 2 * record.length)];
+						}
+						in.readFully(record, 0, length);
+						crc.reset();
+						crc.update(record, 0, length);
+						if((int)crc.getValue() != checksum) {
+							break;
+						}
+					}
+					catch(EOFException e) {// the record was torn by a crash
+						break;
+					}
+					ByteBuffer body = ByteBuffer.wrap(record, 0, length);
+					long sequence = body.getLong();
+					if((valid == 0) ? (sequence > skipped + 1) : (sequence != last + 1)) {
+						throw new IOException("the log " + path + " is missing the records " + (((valid == 0) ? skipped : last) + 1) + " to " + (sequence - 1));
+					}
+					if(sequence > skipped) {
+						redo(tree, body);
+					}
+					last = sequence;
+					valid += 8 + length;
+				}
+			}
+			if(last <= skipped) {// the snapshot holds every record of the file
+				last = skipped;
+				valid = 0;
+			}
+			synchronized(commitLock) {// the periodic syncer may already run
+				synchronized(this) {
+					appended = last;
+				}
+				written = last;
+				synced = last;
+			}
+			channel.truncate(valid);
+			channel.position(valid);
+		}
+
+		private static void redo(LoggedAVLTree tree, ByteBuffer in) throws IOException {
+			byte type = in.get();
+			switch(type) {
+				case INSERT:
+					tree.replayInsert(in.getInt(), readString(in));
+					break;
+				case DELETE:
+					tree.replayDelete(in.getInt());
+					break;
+				case SPLIT:
+					tree.replaySplit(in.getInt(), in.get() != 0);
+					break;
+				case JOIN:
+					int x = in.getInt();
+					String info = readString(in);
+					int[] keys = new int[in.getInt()];
+					String[] values = new String[keys.length];
+					for(int i = 0; i < keys.length; i++) {
+						keys[i] = in.getInt();
+						values[i] = readString(in);
+					}
+					tree.replayJoin(x, info, keys, values);
+					break;
+				default:
+					throw new IOException("unknown log record type " + type);
+			}
+		}
+
+		synchronized long appendInsert(int k, String i) {
+			try {
+				beginRecord(INSERT);
+				payloadOut.writeInt(k);
+				writeString(payloadOut, i);
+			}
+			catch(IOException e) {// a ByteArrayOutputStream does not fail
+				throw new UncheckedIOException(e);
+			}
+			return endRecord();
 		}
 
+		synchronized long appendDelete(int k) {
+			try {
+				beginRecord(DELETE);
+				payloadOut.writeInt(k);
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return endRecord();
+		}
+
+		synchronized long appendSplit(int x, boolean keepSmaller) {
+			try {
+				beginRecord(SPLIT);
+				payloadOut.writeInt(x);
+				payloadOut.writeBoolean(keepSmaller);
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return endRecord();
+		}
+
+		synchronized long appendJoin(int x, String info, int[] keys, String[] values) {
+			try {
+				beginRecord(JOIN);
+				payloadOut.writeInt(x);
+				writeString(payloadOut, info);
+				payloadOut.writeInt(keys.length);
+				for(int i = 0; i < keys.length; i++) {
+					payloadOut.writeInt(keys[i]);
+					writeString(payloadOut, values[i]);
+				}
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return endRecord();
+		}
 
 		/**
-		 * public boolean isRealNode()
+		 * synchronized long lastSequence()
 		 *
-		 * returns true if the node is real and not external
+		 * returns the sequence number of the last record appended, 0 if there is none
 		 * complexity O(1)
 		 */
-		public boolean isRealNode()
-		{
-			return (this.key!=-1); //:only if key=-1 than this is not real node
+		synchronized long lastSequence() {
+			return appended;
+		}
+
+		private void beginRecord(byte type) throws IOException {
+			payloadOut.writeLong(appended + 1);
+			payloadOut.writeByte(type);
 		}
 
 		/**
-		 * public void setHeight(int height)
+		 * private long endRecord()
 		 *
-		 * setter of field height
-		 * complexity O(1)
+		 * frames the payload as a record in the pending buffer.
+		 * returns the sequence number of the record
+		 * complexity O(length of the record)
 		 */
-		public void setHeight(int height)//: In AVL tree rank = height 
-		{
-			this.rank=height ; 
+		private long endRecord() {
+			byte[] bytes = payload.toByteArray();
+			payload.reset();
+			crc.reset();
+			crc.update(bytes, 0, bytes.length);
+			writeInt(pending, bytes.length);
+			writeInt(pending, (int)crc.getValue());
+			pending.write(bytes, 0, bytes.length);
+			return ++appended;
 		}
-		
+
 		/**
-		 * public void getHeight()
+		 * void commit(long record)
 		 *
-		 * getter of field height
-		 * complexity O(1)
+		 * returns when the record is written to the file, and forced to the disk if the
+		 * policy syncs every operation. the first waiting writer writes and forces the
+		 * records of all of the writers before it, so they wait for the same fsync.
+		 * once a write or a force failed, every later commit fails too, since the records
+		 * after the hole could not be replayed; a checkpoint clears the failure.
+		 * complexity O(1) and the cost of the write
 		 */
-		public int getHeight()
-		{
-			return this.rank; 
+		void commit(long record) {
+			boolean force = policy.intervalMillis == 0;
+			synchronized(commitLock) {
+				if(force ? (synced >= record) : (written >= record)) {// another writer committed it
+					return;
+				}
+				if(failure != null) {
+					throw new UncheckedIOException("the log could not be written to the disk", failure);
+				}
+				try {
+					writePending();
+					if(force) {
+						channel.force(false);
+						synced = written;
+					}
+				}
+				catch(IOException e) {
+					failure = e;
+					throw new UncheckedIOException(e);
+				}
+			}
 		}
 
 		/**
-		 * public void setSize(int newSize)
+		 * private void writePending()
 		 *
-		 * setter of field size
-		 * complexity O(1)
+		 * writes the pending records to the file. they stay in the pending buffer
+		 * until the write returns, so a failed write loses none of them.
+		 * precondition: holds commitLock
+		 * complexity O(length of the records)
 		 */
-		public void setSize(int newSize)
-		{
-			this.size=newSize ; 
+		private void writePending() throws IOException {
+			byte[] bytes;
+			long count;
+			synchronized(this) {
+				bytes = pending.toByteArray();
+				count = appended;
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			synchronized(this) {// drops the written records, and keeps those appended meanwhile
+				byte[] all = pending.toByteArray();
+				pending.reset();
+				pending.write(all, bytes.length, all.length - bytes.length);
+			}
+			written = count;
 		}
-		
+
+		private void syncPeriodically() {
+			synchronized(commitLock) {
+				if(failure != null) {
+					return;
+				}
+				try {
+					writePending();
+					if(synced < written) {
+						channel.force(false);
+						synced = written;
+					}
+				}
+				catch(IOException e) {
+					failure = e;
+				}
+			}
+		}
+
 		/**
-		 * public void getSize()
+		 * void truncate()
 		 *
-		 * getter of field size
+		 * empties the log, once a snapshot holds all of its records, and clears the
+		 * failure of an earlier write
+		 * precondition: no records are appended meanwhile
 		 * complexity O(1)
 		 */
-		public int getSize()
-		{
-			return this.size; 
+		void truncate() throws IOException {
+			synchronized(commitLock) {
+				channel.truncate(0);
+				channel.position(0);
+				channel.force(true);
+				synchronized(this) {
+					pending.reset();
+					written = appended;
+					synced = appended;
+				}
+				failure = null;
+			}
+		}
+
+		public void close() throws IOException {
+			if(syncer != null) {
+				syncer.shutdown();
+			}
+			synchronized(commitLock) {
+				try {
+					if(failure != null) {
+						throw new IOException("the log could not be written to the disk", failure);
+					}
+					writePending();
+					if(policy.intervalMillis >= 0) {
+						channel.force(false);
+					}
+				}
+				finally {
+					channel.close();
+				}
+			}
+		}
+
+		private static void writeInt(ByteArrayOutputStream out, int value) {
+			out.write(value >>> 24);
+			out.write(value >>> 16);
+			out.write(value >>> 8);
+			out.write(value);
+		}
+
+		private static void writeString(DataOutputStream out, String value) throws IOException {
+			if(value == null) {
+				out.writeInt(-1);
+				return;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private static String readString(ByteBuffer in) {
+			int length = in.getInt();
+			if(length == -1) {
+				return null;
+			}
+			String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+			in.position(in.position() + length);
+			return value;
 		}
 	}
 }
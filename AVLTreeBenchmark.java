@@ -0,0 +1,666 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * AVLTreeBenchmark
+ *
+ * A plain benchmark of AVLTree against java.util.TreeMap, and of the optional features
+ * of the tree against the tree without them. It needs nothing but the JDK:
+ *
+ *   javac AVLTree.java AVLTreeBenchmark.java && java -Xmx16g AVLTreeBenchmark [case ...] [sizes=n,...]
+ *
+ * the cases are basic, scan, poll, finger, cache, metrics, log, parallel, mix and persistent
+ * (all of them if none is given), and sizes replaces the sizes of basic. every measurement runs at least WARMUP
+ * rounds and a second for the JIT, then ROUNDS rounds (one and LARGE_ROUNDS from LARGE
+ * operations on), and prints the median time of a round per operation, the operations per
+ * second, and the bytes the measuring thread allocated per operation. the setup of a round
+ * is not timed.
+ */
+public class AVLTreeBenchmark {
+	private static final int WARMUP = 3;
+	private static final long WARMUP_NANOS = 1_000_000_000L;
+	private static final int ROUNDS = 5;
+	private static final int LARGE = 5_000_000; // a round this long warms the JIT up by itself
+	private static final int LARGE_ROUNDS = 3;
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+	private static volatile Object sink; // keeps the JIT from dropping the results
+
+	public static void main(String[] args) throws IOException {
+		Set<String> cases = new HashSet<>();
+		int[] sizes = {1_000, 100_000, 1_000_000, 10_000_000, 50_000_000};
+		for(String arg : args) {
+			if(arg.startsWith("sizes=")) {
+				sizes = Arrays.stream(arg.substring("sizes=".length()).split(",")).mapToInt(Integer::parseInt).toArray();
+			}
+			else {
+				cases.add(arg);
+			}
+		}
+		if(cases.isEmpty() || cases.contains("basic")) {
+			basic(sizes);
+		}
+		if(cases.isEmpty() || cases.contains("scan")) {
+			scan();
+		}
+		if(cases.isEmpty() || cases.contains("poll")) {
+			poll();
+		}
+		if(cases.isEmpty() || cases.contains("finger")) {
+			finger();
+		}
+		if(cases.isEmpty() || cases.contains("cache")) {
+			cache();
+		}
+		if(cases.isEmpty() || cases.contains("metrics")) {
+			metrics();
+		}
+		if(cases.isEmpty() || cases.contains("log")) {
+			log();
+		}
+		if(cases.isEmpty() || cases.contains("parallel")) {
+			parallel();
+		}
+		if(cases.isEmpty() || cases.contains("mix")) {
+			mix();
+		}
+		if(cases.isEmpty() || cases.contains("persistent")) {
+			persistent();
+		}
+	}
+
+	/**
+	 * private static void basic(int[] sizes)
+	 *
+	 * insert, search, min and max, keysToArray, infoToArray, split and join, and delete of
+	 * sequential, random, Zipfian and alternating keys, against TreeMap. TreeMap has no split
+	 * and join, so a split and the join that undoes it are measured for AVLTree alone
+	 */
+	private static void basic(int[] sizes) {
+		for(int n : sizes) {
+			for(String distribution : new String[] {"sequential", "random", "zipf", "alternating"}) {
+				int[] keys = keys(distribution, n, new Random(n));
+				String name = distribution + " " + n;
+				basicAVLTree(name, keys);
+				basicTreeMap(name, keys);
+			}
+		}
+	}
+
+	private static void basicAVLTree(String name, int[] keys) {
+		int n = keys.length;
+		Ref<AVLTree> tree = new Ref<>();
+		measure("basic insert      AVLTree " + name, n, () -> tree.value = new AVLTree(), () -> {
+			for(int k : keys) {
+				tree.value.insert(k, "v");
+			}
+		});
+		measure("basic search      AVLTree " + name, n, () -> {}, () -> {
+			for(int k : keys) {
+				sink = tree.value.search(k);
+			}
+		});
+		measure("basic min/max     AVLTree " + name, n, () -> {}, () -> {
+			for(int i = 0; i < n; i++) {
+				sink = ((i & 1) == 0) ? tree.value.min() : tree.value.max();
+			}
+		});
+		measure("basic keysToArray AVLTree " + name, tree.value.size(), () -> {}, () -> sink = tree.value.keysToArray());
+		measure("basic infoToArray AVLTree " + name, tree.value.size(), () -> {}, () -> sink = tree.value.infoToArray());
+		int[] pivots = new int[Math.min(n, 100_000)];
+		Random random = new Random(n);
+		for(int i = 0; i < pivots.length; i++) {
+			pivots[i] = keys[random.nextInt(n)];
+		}
+		measure("basic split+join  AVLTree " + name, pivots.length, () -> {}, () -> {
+			for(int x : pivots) {// x is in the tree, and the join puts it back
+				AVLTree[] parts = tree.value.split(x);
+				parts[0].join(parts[0].new AVLNode(x, "v"), parts[1]);
+				tree.value = parts[0];
+			}
+		});
+		measure("basic delete      AVLTree " + name, n, () -> tree.value = build(keys, false), () -> {
+			for(int k : keys) {
+				tree.value.delete(k);
+			}
+		});
+	}
+
+	private static void basicTreeMap(String name, int[] keys) {
+		int n = keys.length;
+		Ref<TreeMap<Integer, String>> map = new Ref<>();
+		measure("basic insert      TreeMap " + name, n, () -> map.value = new TreeMap<>(), () -> {
+			for(int k : keys) {
+				map.value.putIfAbsent(k, "v");
+			}
+		});
+		measure("basic search      TreeMap " + name, n, () -> {}, () -> {
+			for(int k : keys) {
+				sink = map.value.get(k);
+			}
+		});
+		measure("basic min/max     TreeMap " + name, n, () -> {}, () -> {
+			for(int i = 0; i < n; i++) {
+				sink = (((i & 1) == 0) ? map.value.firstEntry() : map.value.lastEntry()).getValue();
+			}
+		});
+		measure("basic keysToArray TreeMap " + name, map.value.size(), () -> {}, () -> {
+			int[] array = new int[map.value.size()];
+			int i = 0;
+			for(int k : map.value.keySet()) {
+				array[i++] = k;
+			}
+			sink = array;
+		});
+		measure("basic infoToArray TreeMap " + name, map.value.size(), () -> {}, () -> sink = map.value.values().toArray(new String[0]));
+		measure("basic delete      TreeMap " + name, n, () -> {
+			map.value = new TreeMap<>();
+			for(int k : keys) {
+				map.value.putIfAbsent(k, "v");
+			}
+		}, () -> {
+			for(int k : keys) {
+				map.value.remove(k);
+			}
+		});
+	}
+
+	/**
+	 * private static void scan()
+	 *
+	 * a full scan with forEach, with and without the threaded links (setThreaded)
+	 */
+	private static void scan() {
+		for(String name : new String[] {"random 10000", "sequential 1000000", "random 1000000"}) {
+			String[] words = name.split(" ");
+			int n = Integer.parseInt(words[1]);
+			int[] keys = keys(words[0], n, new Random(n));
+			for(boolean threaded : new boolean[] {false, true}) {
+				AVLTree tree = build(keys, threaded);
+				long[] sum = new long[1];
+				measure("scan forEach " + (threaded ? "threaded " : "plain    ") + name, tree.size(), () -> sum[0] = 0, () -> {
+					tree.forEach((k, v) -> sum[0] += k);
+					sink = sum[0];
+				});
+			}
+		}
+	}
+
+	/**
+	 * private static void poll()
+	 *
+	 * 1M random inserts followed by 500K removals of the min, against TreeMap and PriorityQueue
+	 */
+	private static void poll() {
+		int n = 1_000_000;
+		int[] keys = keys("random", n, new Random(n));
+		Ref<AVLTree> tree = new Ref<>();
+		Ref<TreeMap<Integer, String>> map = new Ref<>();
+		Ref<PriorityQueue<Integer>> queue = new Ref<>();
+		measure("poll pollFirst     AVLTree", n / 2, () -> tree.value = build(keys, false), () -> {
+			for(int i = 0; i < n / 2; i++) {
+				sink = tree.value.pollFirst();
+			}
+		});
+		measure("poll pollFirstEntry TreeMap", n / 2, () -> {
+			map.value = new TreeMap<>();
+			for(int k : keys) {
+				map.value.putIfAbsent(k, "v");
+			}
+		}, () -> {
+			for(int i = 0; i < n / 2; i++) {
+				sink = map.value.pollFirstEntry();
+			}
+		});
+		measure("poll poll     PriorityQueue", n / 2, () -> {
+			queue.value = new PriorityQueue<>();
+			for(int k : keys) {
+				queue.value.add(k);
+			}
+		}, () -> {
+			for(int i = 0; i < n / 2; i++) {
+				sink = queue.value.poll();
+			}
+		});
+	}
+
+	/**
+	 * private static void finger()
+	 *
+	 * searches of 2M sequential keys in order, with and without finger search,
+	 * with the nodes visited per search from TreeMetrics
+	 */
+	private static void finger() {
+		int n = 2_000_000;
+		int[] keys = keys("sequential", n, null);
+		AVLTree tree = build(keys, false);
+		for(boolean enabled : new boolean[] {false, true}) {
+			tree.setFingerSearch(enabled);
+			measure("finger search " + (enabled ? "on " : "off") + " sequential " + n, n, () -> {}, () -> {
+				for(int k : keys) {
+					sink = tree.search(k);
+				}
+			});
+			AVLTree.TreeMetrics metrics = new AVLTree.TreeMetrics();
+			tree.setListener(metrics);
+			for(int k : keys) {
+				sink = tree.search(k);
+			}
+			tree.setListener(null);
+			System.out.printf("finger search %s nodes per search %.2f%n", enabled ? "on " : "off", (double)metrics.getSearchPathLength() / metrics.getSearches());
+		}
+	}
+
+	/**
+	 * private static void cache()
+	 *
+	 * 1M searches in a tree of 1M keys, with 90% of them to 1% of the keys or Zipfian,
+	 * with and without a 4096 slot cache (enableCache)
+	 */
+	private static void cache() {
+		int n = 1_000_000;
+		Random random = new Random(n);
+		int[] keys = keys("random", n, random);
+		int[] skewed = new int[n];
+		for(int i = 0; i < n; i++) {
+			skewed[i] = (random.nextInt(10) < 9) ? keys[random.nextInt(n / 100)] : keys[random.nextInt(n)];
+		}
+		cacheSearches("90/1 skew " + n, keys, skewed);
+		int[] scattered = new int[n];
+		for(int rank = 0; rank < n; rank++) {// the keys that the Zipfian draws come from
+			scattered[rank] = rank * 0x9E3779B1;
+		}
+		cacheSearches("zipf " + n, scattered, keys("zipf", n, random));
+	}
+
+	private static void cacheSearches(String name, int[] keys, int[] searches) {
+		for(boolean enabled : new boolean[] {false, true}) {
+			AVLTree tree = build(keys, false);
+			if(enabled) {
+				tree.enableCache(4096);
+			}
+			String label = "cache search " + (enabled ? "4096 slots " : "none       ") + name;
+			measure(label, searches.length, () -> {}, () -> {
+				for(int k : searches) {
+					sink = tree.search(k);
+				}
+			});
+			percentiles(label, tree, searches);
+			if(enabled) {
+				System.out.printf("cache hit rate %s %.2f%n", name, (double)tree.cacheHits() / (tree.cacheHits() + tree.cacheMisses()));
+			}
+		}
+	}
+
+	/**
+	 * private static void percentiles(String name, AVLTree tree, int[] searches)
+	 *
+	 * times every search on its own and prints the median, 99th and 99.9th percentiles of
+	 * their latencies. they include the cost of System.nanoTime, some tens of ns
+	 */
+	private static void percentiles(String name, AVLTree tree, int[] searches) {
+		long[] latencies = new long[searches.length];
+		for(int i = 0; i < searches.length; i++) {
+			long start = System.nanoTime();
+			sink = tree.search(searches[i]);
+			latencies[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(latencies);
+		int n = latencies.length;
+		System.out.printf("%-60s p50 %d ns p99 %d ns p99.9 %d ns%n", name, latencies[n / 2], latencies[(int)(n * 0.99)], latencies[(int)(n * 0.999)]);
+	}
+
+	/**
+	 * private static void metrics()
+	 *
+	 * 100K random inserts and deletes, comparing the rotations and rank changes counted by
+	 * TreeMetrics with the sum of the counts returned by insert and delete
+	 */
+	private static void metrics() {
+		AVLTree tree = new AVLTree();
+		AVLTree.TreeMetrics metrics = new AVLTree.TreeMetrics();
+		tree.setListener(metrics);
+		Random random = new Random(1);
+		long returned = 0;
+		for(int i = 0; i < 100_000; i++) {
+			int k = random.nextInt(50_000);
+			int result = random.nextBoolean() ? tree.insert(k, "v") : tree.delete(k);
+			if(result > 0) {
+				returned += result;
+			}
+		}
+		// a double rotation is two rotations in the counts insert and delete return
+		long counted = metrics.getSingleRotations() + 2 * metrics.getDoubleRotations() + metrics.getPromotions() + metrics.getDemotions();
+		System.out.println("metrics counted " + counted + " returned " + returned);
+	}
+
+	/**
+	 * private static void log()
+	 *
+	 * the time to reopen a LoggedAVLTree whose log holds 10M inserts
+	 */
+	private static void log() throws IOException {
+		int n = 10_000_000;
+		Path path = Files.createTempFile("avl", ".log");
+		try {
+			try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, new AVLTree(), AVLTree.SyncPolicy.never())) {
+				for(int k : keys("random", n, new Random(n))) {
+					tree.insert(k, "v");
+				}
+			}
+			measure("log replay inserts " + n, n, () -> {}, () -> {
+				try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, new AVLTree(), AVLTree.SyncPolicy.never())) {
+					sink = tree.size();
+				}
+				catch(IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+		}
+		finally {
+			Files.delete(path);
+		}
+	}
+
+	/**
+	 * private static void parallel()
+	 *
+	 * the sum of the keys of a tree of 10M random keys with keyStream().parallel() in a
+	 * ForkJoinPool of 1, 4, 8 and 16 threads, against a sequential keyStream()
+	 */
+	private static void parallel() {
+		int n = 10_000_000;
+		AVLTree tree = build(keys("random", n, new Random(n)), false);
+		measure("parallel keyStream sum sequential " + n, n, () -> {}, () -> sink = tree.keyStream().asLongStream().sum());
+		for(int threads : new int[] {1, 4, 8, 16}) {
+			ForkJoinPool pool = new ForkJoinPool(threads);// a parallel stream runs in the pool it is started from
+			try {
+				measure(String.format("parallel keyStream sum %2d threads %d", threads, n), n, () -> {}, () -> {
+					sink = pool.submit(() -> tree.keyStream().parallel().asLongStream().sum()).join();
+				});
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+		System.out.println("parallel on " + Runtime.getRuntime().availableProcessors() + " processors");
+	}
+
+	/**
+	 * private static void mix()
+	 *
+	 * 1, 4, 8 and 16 threads that search, insert and delete random keys of a range of 1M,
+	 * with 90% and 50% searches, on ConcurrentAVLTree, ConcurrentSkipListMap and an AVLTree
+	 * behind one lock. the index starts with half of the range, and a write is an insert or
+	 * a delete at random, so it stays about half full. ns/op is the wall time of all of the
+	 * threads per operation, and B/op counts only the thread that waits for them
+	 */
+	private static void mix() {
+		int range = 1_000_000;
+		int perThread = 500_000;
+		for(int searches : new int[] {90, 50}) {
+			for(int threads : new int[] {1, 4, 8, 16}) {
+				ExecutorService executor = Executors.newFixedThreadPool(threads);
+				try {
+					for(String name : new String[] {"ConcurrentAVLTree", "ConcurrentSkipListMap", "synchronized AVLTree"}) {
+						Ref<Index> index = new Ref<>();
+						measure(String.format("mix %d%% search %2d threads %s", searches, threads, name), threads * perThread, () -> {
+							index.value = index(name);
+							for(int k = 0; k < range; k += 2) {
+								index.value.insert(k, "v");
+							}
+						}, () -> runMix(executor, index.value, threads, perThread, searches, range));
+					}
+				}
+				finally {
+					executor.shutdown();
+				}
+			}
+		}
+	}
+
+	private static void runMix(ExecutorService executor, Index index, int threads, int perThread, int searches, int range) {
+		List<Future<Integer>> futures = new ArrayList<>();
+		for(int t = 0; t < threads; t++) {
+			futures.add(executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				int found = 0; // summed instead of written to the shared sink, which the threads would contend on
+				for(int op = 0; op < perThread; op++) {
+					int k = random.nextInt(range);
+					int choice = random.nextInt(100);
+					if(choice < searches) {
+						found += (index.search(k) != null) ? 1 : 0;
+					}
+					else if((choice & 1) == 0) {
+						index.insert(k, "v");
+					}
+					else {
+						index.delete(k);
+					}
+				}
+				return found;
+			}));
+		}
+		int found = 0;
+		try {
+			for(Future<Integer> future : futures) {
+				found += future.get();
+			}
+		}
+		catch(InterruptedException | ExecutionException e) {
+			throw new IllegalStateException(e);
+		}
+		sink = found;
+	}
+
+	/**
+	 * private interface Index
+	 *
+	 * the operations of mix, on each of the thread safe indexes
+	 */
+	private interface Index {
+		String search(int k);
+
+		void insert(int k, String i);
+
+		void delete(int k);
+	}
+
+	private static Index index(String name) {
+		switch(name) {
+			case "ConcurrentAVLTree":
+				AVLTree.ConcurrentAVLTree concurrent = new AVLTree.ConcurrentAVLTree();
+				return new Index() {
+					public String search(int k) {
+						return concurrent.search(k);
+					}
+
+					public void insert(int k, String i) {
+						concurrent.insert(k, i);
+					}
+
+					public void delete(int k) {
+						concurrent.delete(k);
+					}
+				};
+			case "ConcurrentSkipListMap":
+				ConcurrentSkipListMap<Integer, String> skipList = new ConcurrentSkipListMap<>();
+				return new Index() {
+					public String search(int k) {
+						return skipList.get(k);
+					}
+
+					public void insert(int k, String i) {
+						skipList.putIfAbsent(k, i);
+					}
+
+					public void delete(int k) {
+						skipList.remove(k);
+					}
+				};
+			case "synchronized AVLTree":
+				AVLTree tree = new AVLTree();
+				return new Index() {
+					public synchronized String search(int k) {
+						return tree.search(k);
+					}
+
+					public synchronized void insert(int k, String i) {
+						tree.insert(k, i);
+					}
+
+					public synchronized void delete(int k) {
+						tree.delete(k);
+					}
+				};
+			default:
+				throw new IllegalArgumentException("unknown index " + name);
+		}
+	}
+
+	/**
+	 * private static void persistent()
+	 *
+	 * 1M random inserts and then deletes on PersistentAVLTree, which copies the path of
+	 * every update, against AVLTree. B/op is the allocation of an update
+	 */
+	private static void persistent() {
+		int n = 1_000_000;
+		int[] keys = keys("random", n, new Random(n));
+		Ref<AVLTree.PersistentAVLTree> persistent = new Ref<>();
+		measure("persistent insert PersistentAVLTree random " + n, n, () -> persistent.value = new AVLTree.PersistentAVLTree(), () -> {
+			for(int k : keys) {
+				persistent.value.insert(k, "v");
+			}
+		});
+		measure("persistent delete PersistentAVLTree random " + n, n, () -> {
+			persistent.value = new AVLTree.PersistentAVLTree();
+			for(int k : keys) {
+				persistent.value.insert(k, "v");
+			}
+		}, () -> {
+			for(int k : keys) {
+				persistent.value.delete(k);
+			}
+		});
+		Ref<AVLTree> tree = new Ref<>();
+		measure("persistent insert AVLTree random " + n, n, () -> tree.value = new AVLTree(), () -> {
+			for(int k : keys) {
+				tree.value.insert(k, "v");
+			}
+		});
+		measure("persistent delete AVLTree random " + n, n, () -> tree.value = build(keys, false), () -> {
+			for(int k : keys) {
+				tree.value.delete(k);
+			}
+		});
+	}
+
+	/**
+	 * private static void measure(String name, int operations, Runnable setup, Runnable body)
+	 *
+	 * runs setup and then body until the JIT is warm, and then ROUNDS more times,
+	 * and prints the median time of body in the measured rounds per operation, the
+	 * operations per second and the median bytes allocated by body per operation
+	 */
+	private static void measure(String name, int operations, Runnable setup, Runnable body) {
+		boolean large = operations >= LARGE;
+		long warmupEnd = large ? 0 : System.nanoTime() + WARMUP_NANOS;
+		for(int round = 0; (round < (large ? 1 : WARMUP)) || (System.nanoTime() < warmupEnd); round++) {
+			setup.run();
+			body.run();
+		}
+		int rounds = large ? LARGE_ROUNDS : ROUNDS;
+		long[] times = new long[rounds];
+		long[] bytes = new long[rounds];
+		for(int round = 0; round < rounds; round++) {
+			setup.run();
+			long allocated = THREADS.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+			body.run();
+			times[round] = System.nanoTime() - start;
+			bytes[round] = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+		}
+		Arrays.sort(times);
+		Arrays.sort(bytes);
+		double nanos = (double)times[rounds / 2] / operations;
+		System.out.printf("%-60s %10.1f ns/op %12.0f ops/s %10.1f B/op%n", name, nanos, 1e9 / nanos, (double)bytes[rounds / 2] / operations);
+	}
+
+	/**
+	 * private static int[] keys(String distribution, int n, Random random)
+	 *
+	 * returns n keys: 0 to n - 1 in order, distinct random ints, Zipfian (exponent 1)
+	 * draws from n scattered keys, where the same keys repeat, or 0 to n - 1 alternating
+	 * between the smallest and the largest left, so every insert goes to an edge of the tree
+	 */
+	private static int[] keys(String distribution, int n, Random random) {
+		int[] keys = new int[n];
+		switch(distribution) {
+			case "sequential":
+				for(int i = 0; i < n; i++) {
+					keys[i] = i;
+				}
+				break;
+			case "random":
+				int salt = random.nextInt();
+				for(int i = 0; i < n; i++) {// a bijection of the ints, so the keys are distinct without a set of 50M
+					int k = (i + salt) * 0x9E3779B1;
+					k ^= k >>> 16;
+					k *= 0x85EBCA6B;
+					keys[i] = k ^ (k >>> 13);
+				}
+				break;
+			case "zipf":
+				double[] cumulative = new double[n];
+				double total = 0;
+				for(int i = 0; i < n; i++) {
+					total += 1.0 / (i + 1);
+					cumulative[i] = total;
+				}
+				for(int i = 0; i < n; i++) {
+					int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+					rank = (rank < 0) ? -rank - 1 : rank;
+					keys[i] = rank * 0x9E3779B1;// scatters the popular keys over the tree
+				}
+				break;
+			case "alternating":
+				for(int i = 0; i < n; i++) {
+					keys[i] = ((i & 1) == 0) ? i / 2 : n - 1 - i / 2;
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("unknown key distribution " + distribution);
+		}
+		return keys;
+	}
+
+	private static AVLTree build(int[] keys, boolean threaded) {
+		AVLTree tree = new AVLTree();
+		tree.setThreaded(threaded);
+		for(int k : keys) {
+			tree.insert(k, "v");
+		}
+		return tree;
+	}
+
+	private static final class Ref<T> {// the state a round sets up for the timed body
+		T value;
+	}
+}
@@ -0,0 +1,554 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * AVLTreeStressTest
+ *
+ * Differential and concurrent checks of the thread safe trees. It needs nothing but the JDK:
+ *
+ *   javac AVLTree.java AVLTreeStressTest.java && java AVLTreeStressTest [case ...]
+ *
+ * the cases are concurrent, sharded and log (all of them if none is given). every check compares the tree
+ * with java.util.TreeMap and walks its nodes for the invariants: the heights, the balance,
+ * the parent links and so on. the first failure is printed and exits with status 1.
+ */
+public class AVLTreeStressTest {
+	private static final int THREADS = 4;
+	private static final Field CONCURRENT_HOLDER = field("AVLTree$ConcurrentAVLTree", "holder");
+	private static final Field NODE_KEY = field("AVLTree$ConcurrentAVLTree$Node", "key"); // the private fields of a ConcurrentAVLTree node
+	private static final Field NODE_HEIGHT = field("AVLTree$ConcurrentAVLTree$Node", "height");
+	private static final Field NODE_VALUE = field("AVLTree$ConcurrentAVLTree$Node", "value");
+	private static final Field NODE_VERSION = field("AVLTree$ConcurrentAVLTree$Node", "version");
+	private static final Field NODE_PARENT = field("AVLTree$ConcurrentAVLTree$Node", "parent");
+	private static final Field NODE_LEFT = field("AVLTree$ConcurrentAVLTree$Node", "left");
+	private static final Field NODE_RIGHT = field("AVLTree$ConcurrentAVLTree$Node", "right");
+	private static final Field SHARDS = field("AVLTree$ShardedAVLTree", "shards");
+	private static final Field SHARD_TREE = field("AVLTree$ShardedAVLTree$Shard", "tree"); // the private fields of a ShardedAVLTree shard
+	private static final Field SHARD_LOW = field("AVLTree$ShardedAVLTree$Shard", "low");
+	private static final Field SHARD_HIGH = field("AVLTree$ShardedAVLTree$Shard", "high");
+	private static final Field SHARD_SIZE = field("AVLTree$ShardedAVLTree$Shard", "size");
+	private static final Field LOGGED_LOG = field("AVLTree$LoggedAVLTree", "log");
+	private static final Field LOG_CHANNEL = field("AVLTree$WriteAheadLog", "channel");
+	private static volatile Object sink; // keeps the JIT from dropping the results
+
+	public static void main(String[] args) {
+		Set<String> cases = new HashSet<>(Arrays.asList(args));
+		try {
+			if(cases.isEmpty() || cases.contains("concurrent")) {
+				concurrent();
+			}
+			if(cases.isEmpty() || cases.contains("sharded")) {
+				sharded();
+			}
+			if(cases.isEmpty() || cases.contains("log")) {
+				log();
+			}
+		}
+		catch(Throwable e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		System.out.println("all checks passed");
+	}
+
+	/**
+	 * private static void concurrent()
+	 *
+	 * ConcurrentAVLTree: random operations against TreeMap with the structure checked after
+	 * each of them, writers on disjoint keys with readers of keys no one changes, and
+	 * writers contending on a few keys
+	 */
+	private static void concurrent() throws Exception {
+		Random random = new Random(7);
+		for(int round = 0; round < 300; round++) {
+			AVLTree.ConcurrentAVLTree tree = new AVLTree.ConcurrentAVLTree();
+			TreeMap<Integer, String> map = new TreeMap<>();
+			int range = 1 + random.nextInt(400);
+			for(int op = 0; op < 1500; op++) {
+				int k = random.nextInt(range) - 50;
+				boolean had = map.containsKey(k);
+				if(random.nextInt(3) > 0) {
+					String v = (random.nextInt(20) == 0) ? null : "v" + k;
+					check((tree.insert(k, v) == -1) == had, "insert of " + k);
+					if(!had) {// putIfAbsent would replace a null info
+						map.put(k, v);
+					}
+				}
+				else {
+					check((tree.delete(k) == -1) != had, "delete of " + k);
+					map.remove(k);
+				}
+				check(Objects.equals(tree.search(k), map.get(k)), "search of " + k);
+				check(Objects.equals(tree.min(), map.isEmpty() ? null : map.firstEntry().getValue()), "min");
+				check(Objects.equals(tree.max(), map.isEmpty() ? null : map.lastEntry().getValue()), "max");
+				checkConcurrent(tree, map.keySet());
+			}
+		}
+		System.out.println("concurrent differential passed");
+		for(int round = 0; round < 20; round++) {
+			AVLTree.ConcurrentAVLTree tree = new AVLTree.ConcurrentAVLTree();
+			Map<Integer, String> map = new ConcurrentSkipListMap<>();
+			for(int k = 0; k < 100_000; k += 2) {// the even keys stay, for the readers
+				tree.insert(k, "v" + k);
+				map.put(k, "v" + k);
+			}
+			int seed = round;
+			List<Runnable> tasks = new ArrayList<>();
+			for(int t = 0; t < THREADS; t++) {
+				int id = t;
+				tasks.add(() -> {// each writer owns the odd keys of its own class
+					Random r = new Random(31 * id + seed);
+					for(int op = 0; op < 20_000; op++) {
+						int k = (r.nextInt(12_500) * THREADS + id) * 2 + 1;
+						boolean had = map.containsKey(k);
+						if(r.nextBoolean()) {
+							check((tree.insert(k, "v" + k) == -1) == had, "insert of " + k);
+							map.put(k, "v" + k);
+						}
+						else {
+							check((tree.delete(k) == -1) != had, "delete of " + k);
+							map.remove(k);
+						}
+						check(("v" + k).equals(tree.search(k)) == map.containsKey(k), "search of " + k);
+					}
+				});
+			}
+			for(int t = 0; t < 2; t++) {
+				int id = t;
+				tasks.add(() -> {
+					Random r = new Random(100 + id);
+					for(int op = 0; op < 40_000; op++) {
+						int k = r.nextInt(50_000) * 2;
+						check(("v" + k).equals(tree.search(k)), "lost " + k);
+						check("v0".equals(tree.min()), "min");
+						String max = tree.max();
+						check("v99998".equals(max) || "v99999".equals(max), "max " + max);
+						if(op % 5000 == 0) {
+							int[] keys = tree.keysToArray();
+							int evens = 0;
+							for(int i = 0; i < keys.length; i++) {
+								check((i == 0) || (keys[i - 1] < keys[i]), "keysToArray is not sorted");
+								evens += (keys[i] % 2 == 0) ? 1 : 0;
+							}
+							check(evens == 50_000, "keysToArray has " + evens + " even keys");
+						}
+					}
+				});
+			}
+			run(tasks);
+			checkConcurrent(tree, map.keySet());
+		}
+		System.out.println("concurrent disjoint writers passed");
+		for(int round = 0; round < 30; round++) {
+			AVLTree.ConcurrentAVLTree tree = new AVLTree.ConcurrentAVLTree();
+			int seed = round;
+			List<Runnable> tasks = new ArrayList<>();
+			for(int t = 0; t < THREADS; t++) {
+				int id = t;
+				tasks.add(() -> {
+					Random r = new Random(id + 7 * seed);
+					for(int op = 0; op < 50_000; op++) {
+						int k = r.nextInt(200);
+						if(r.nextBoolean()) {
+							tree.insert(k, "v" + k);
+						}
+						else {
+							tree.delete(k);
+						}
+						String v = tree.search(r.nextInt(200));
+						check((v == null) || v.startsWith("v"), "search found " + v);
+						sink = tree.min();
+					}
+				});
+			}
+			run(tasks);
+			Set<Integer> keys = new TreeSet<>();
+			for(int k = 0; k < 200; k++) {
+				if(tree.search(k) != null) {
+					keys.add(k);
+				}
+			}
+			checkConcurrent(tree, keys);
+		}
+		System.out.println("concurrent contended writers passed");
+	}
+
+	/**
+	 * private static void sharded()
+	 *
+	 * ShardedAVLTree: random operations on keys crowded into one of 8 shards, so keys move
+	 * between the shards, against TreeMap, and then writers on disjoint keys whose moves
+	 * pass readers of keys no one changes
+	 */
+	private static void sharded() throws Exception {
+		Random random = new Random(17);
+		AVLTree.ShardedAVLTree tree = new AVLTree.ShardedAVLTree(8);
+		TreeMap<Integer, String> map = new TreeMap<>();
+		for(int op = 0; op < 400_000; op++) {
+			int k = random.nextInt(100_000);
+			boolean had = map.containsKey(k);
+			if(random.nextInt(4) > ((op < 200_000) ? 0 : 2)) {// grows, and then shrinks
+				check((tree.insert(k, "v" + k) == -1) == had, "insert of " + k);
+				map.put(k, "v" + k);
+			}
+			else {
+				check((tree.delete(k) == -1) != had, "delete of " + k);
+				map.remove(k);
+			}
+			check(Objects.equals(tree.search(k), map.get(k)), "search of " + k);
+			if(op % 10_000 == 0) {
+				checkSharded(tree, map);
+			}
+		}
+		checkSharded(tree, map);
+		System.out.println("sharded differential passed");
+		for(int round = 0; round < 10; round++) {
+			AVLTree.ShardedAVLTree sharded = new AVLTree.ShardedAVLTree(8);
+			Map<Integer, String> expected = new ConcurrentSkipListMap<>();
+			for(int k = -50_000; k < 0; k++) {// the negative keys stay, for the readers
+				sharded.insert(k, "v" + k);
+				expected.put(k, "v" + k);
+			}
+			int seed = round;
+			List<Runnable> tasks = new ArrayList<>();
+			for(int t = 0; t < THREADS; t++) {
+				int id = t;
+				tasks.add(() -> {// each writer owns the keys of its own class
+					for(int i = 0; i < 50_000; i++) {
+						int k = i * THREADS + id;
+						check(sharded.insert(k, "v" + k) != -1, "insert of " + k);
+						expected.put(k, "v" + k);
+						check(("v" + k).equals(sharded.search(k)), "search of " + k);
+						if(i % 3 == 0) {
+							check(sharded.delete(k) != -1, "delete of " + k);
+							expected.remove(k);
+						}
+					}
+				});
+			}
+			for(int t = 0; t < 2; t++) {
+				int id = t;
+				tasks.add(() -> {
+					Random r = new Random(100 * seed + id);
+					for(int op = 0; op < 100_000; op++) {
+						int k = -1 - r.nextInt(50_000);
+						check(("v" + k).equals(sharded.search(k)), "lost " + k);
+						if(op % 5000 == 0) {
+							check("v-50000".equals(sharded.min()), "min");
+							int[] keys = sharded.keysToArray();
+							for(int i = 1; i < keys.length; i++) {
+								check(keys[i - 1] < keys[i], "keysToArray is not sorted");
+							}
+							check(keys[50_000 - 1] == -1, "keysToArray lost negative keys");
+						}
+					}
+				});
+			}
+			run(tasks);
+			checkSharded(sharded, new TreeMap<>(expected));
+		}
+		System.out.println("sharded concurrent writers passed");
+	}
+
+	/**
+	 * private static void log()
+	 *
+	 * LoggedAVLTree: random operations with splits, joins and checkpoints against TreeMap,
+	 * reopened from the log; a record torn at every byte; a header with a huge length; a crash
+	 * between the snapshot and the truncate of a checkpoint; a missing record; and a failed write
+	 */
+	private static void log() throws Exception {
+		Path directory = Files.createTempDirectory("avl-stress");
+		Path path = directory.resolve("log");
+		Path snapshot = directory.resolve("snapshot");
+		AVLTree.SyncPolicy policy = AVLTree.SyncPolicy.never();
+		try {
+			Random random = new Random(23);
+			TreeMap<Integer, String> map = new TreeMap<>();
+			for(int round = 0; round < 20; round++) {
+				try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, snapshot, policy)) {
+					checkLogged(tree, map);
+					for(int op = 0; op < 5000; op++) {
+						int k = random.nextInt(100_000);
+						int choice = random.nextInt(1000);
+						if(choice == 0) {
+							boolean keepSmaller = random.nextBoolean();
+							sink = tree.split(k, keepSmaller);
+							map = new TreeMap<>(keepSmaller ? map.headMap(k) : map.tailMap(k, false));
+						}
+						else if((choice == 1) && !map.isEmpty() && (map.lastKey() < Integer.MAX_VALUE - 100)) {
+							int last = map.lastKey();
+							AVLTree x = new AVLTree();
+							x.insert(last + 1, "x");
+							AVLTree t = new AVLTree();
+							for(int j = last + 2; j < last + 12; j++) {
+								t.insert(j, "j" + j);
+								map.put(j, "j" + j);
+							}
+							map.put(last + 1, "x");
+							tree.join(x.getRoot(), t);
+						}
+						else if(choice == 2) {
+							tree.checkpoint(snapshot);
+						}
+						else if(choice < 700) {
+							check((tree.insert(k, "v" + k) == -1) == map.containsKey(k), "insert of " + k);
+							map.putIfAbsent(k, "v" + k);
+						}
+						else {
+							check((tree.delete(k) == -1) != map.containsKey(k), "delete of " + k);
+							map.remove(k);
+						}
+					}
+				}
+			}
+			try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, snapshot, policy)) {
+				checkLogged(tree, map);
+			}
+			System.out.println("log differential passed");
+			Files.delete(path);
+			Files.deleteIfExists(snapshot);
+			long[] ends = new long[101]; // the size of the log after each insert
+			try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, snapshot, policy)) {
+				for(int k = 0; k < 100; k++) {
+					tree.insert(k, "v" + k);
+					ends[k + 1] = Files.size(path);
+				}
+			}
+			byte[] log = Files.readAllBytes(path);
+			for(long cut = ends[99] + 1; cut < ends[100]; cut++) {
+				Files.write(path, Arrays.copyOf(log, (int)cut));
+				try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, snapshot, policy)) {
+					check((tree.size() == 99) && (Files.size(path) == ends[99]), "the record torn at " + cut + " was not cut off");
+					tree.insert(99, "v99");
+				}
+				try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, snapshot, policy)) {
+					check(tree.size() == 100, "the record after a torn one was lost");
+				}
+			}
+			byte[] huge = Arrays.copyOf(log, log.length + 12);
+			huge[log.length] = 0x7f;// a length of 2GB, with no payload after it
+			Files.write(path, huge);
+			try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, snapshot, policy)) {
+				check((tree.size() == 100) && (Files.size(path) == log.length), "a huge length was not cut off");
+			}
+			System.out.println("log torn tail passed");
+			try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, snapshot, policy)) {
+				tree.checkpoint(snapshot);
+				tree.insert(100, "v100");
+			}
+			byte[] after = Files.readAllBytes(path);
+			byte[] crashed = Arrays.copyOf(log, log.length + after.length);// as if the truncate never happened
+			System.arraycopy(after, 0, crashed, log.length, after.length);
+			Files.write(path, crashed);
+			try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, snapshot, policy)) {
+				check((tree.size() == 101) && "v100".equals(tree.search(100)), "a checkpoint crash lost items");
+				tree.insert(101, "v101");
+			}
+			try(AVLTree.LoggedAVLTree tree = AVLTree.LoggedAVLTree.open(path, snapshot, policy)) {
+				check(tree.size() == 102, "a checkpoint crash lost later items");
+			}
+			System.out.println("log checkpoint crash passed");
+			Files.deleteIfExists(snapshot);
+			byte[] gap = new byte[(int)(ends[100] - (ends[51] - ends[50]))];// the record of key 50 is missing
+			System.arraycopy(log, 0, gap, 0, (int)ends[50]);
+			System.arraycopy(log, (int)ends[51], gap, (int)ends[50], (int)(ends[100] - ends[51]));
+			Files.write(path, gap);
+			try {
+				AVLTree.LoggedAVLTree.open(path, snapshot, policy).close();
+				throw new AssertionError("a log with a missing record was replayed");
+			}
+			catch(IOException e) {// expected
+			}
+			System.out.println("log missing record passed");
+			Files.write(path, log);
+			AVLTree.LoggedAVLTree failing = AVLTree.LoggedAVLTree.open(path, snapshot, policy);
+			((FileChannel)LOG_CHANNEL.get(LOGGED_LOG.get(failing))).close();// the next write fails
+			for(int k = 100; k < 102; k++) {
+				try {
+					failing.insert(k, "v" + k);
+					throw new AssertionError("the insert of " + k + " after a failed write succeeded");
+				}
+				catch(UncheckedIOException e) {// expected
+				}
+			}
+			try {
+				failing.close();
+				throw new AssertionError("the close after a failed write succeeded");
+			}
+			catch(IOException e) {// expected
+			}
+			check(Files.size(path) == log.length, "a failed write left records in the log");
+			System.out.println("log failed write passed");
+		}
+		finally {
+			Files.deleteIfExists(path);
+			Files.deleteIfExists(snapshot);
+			Files.delete(directory);
+		}
+	}
+
+	private static void checkLogged(AVLTree.LoggedAVLTree tree, TreeMap<Integer, String> expected) {
+		check(Arrays.equals(tree.keysToArray(), expected.keySet().stream().mapToInt(k -> k).toArray()), "keysToArray");
+		check(Arrays.equals(tree.infoToArray(), expected.values().toArray(new String[0])), "infoToArray");
+		check(tree.size() == expected.size(), "size " + tree.size() + " instead of " + expected.size());
+	}
+
+	/**
+	 * private static void checkSharded(AVLTree.ShardedAVLTree tree, TreeMap<Integer, String> expected)
+	 *
+	 * checks, while no one changes the index, that it holds exactly the expected items, that
+	 * the ranges of the shards cover the ints in order, and that the tree of every shard is an
+	 * AVL tree of keys in the range of the shard, with the right sizes and parent links
+	 */
+	private static void checkSharded(AVLTree.ShardedAVLTree tree, TreeMap<Integer, String> expected) throws ReflectiveOperationException {
+		check(Arrays.equals(tree.keysToArray(), expected.keySet().stream().mapToInt(k -> k).toArray()), "keysToArray");
+		check(Arrays.equals(tree.infoToArray(), expected.values().toArray(new String[0])), "infoToArray");
+		check(tree.size() == expected.size(), "size " + tree.size() + " instead of " + expected.size());
+		check(Objects.equals(tree.min(), expected.isEmpty() ? null : expected.firstEntry().getValue()), "min");
+		check(Objects.equals(tree.max(), expected.isEmpty() ? null : expected.lastEntry().getValue()), "max");
+		Object[] shards = (Object[])SHARDS.get(tree);
+		long low = Integer.MIN_VALUE;
+		for(Object shard : shards) {
+			check(SHARD_LOW.getLong(shard) == low, "the range of a shard starts at " + SHARD_LOW.getLong(shard) + " instead of " + low);
+			long high = SHARD_HIGH.getLong(shard);
+			check(low <= high, "the range of a shard ends before it starts");
+			AVLTree shardTree = (AVLTree)SHARD_TREE.get(shard);
+			check(SHARD_SIZE.getInt(shard) == shardTree.size(), "the size of a shard");
+			walkAVL(shardTree.getRoot(), null, low, high);
+			check(size(shardTree.getRoot()) == shardTree.size(), "the size of a shard tree");
+			low = high;
+		}
+		check(low == Integer.MAX_VALUE + 1L, "the ranges of the shards end at " + low);
+	}
+
+	/**
+	 * private static int walkAVL(AVLTree.IAVLNode node, AVLTree.IAVLNode parent, long low, long high)
+	 *
+	 * checks the subtree of node for the keys in [low, high), the heights, the balance, the sizes
+	 * and the parent links, and returns its height
+	 */
+	private static int walkAVL(AVLTree.IAVLNode node, AVLTree.IAVLNode parent, long low, long high) {
+		if((node == null) || !node.isRealNode()) {
+			return -1;
+		}
+		int key = node.getKey();
+		check((low <= key) && (key < high), "the key " + key + " is out of [" + low + ", " + high + ")");
+		check(node.getParent() == parent, "the parent link of " + key);
+		int leftHeight = walkAVL(node.getLeft(), node, low, key);
+		int rightHeight = walkAVL(node.getRight(), node, key + 1L, high);
+		check(node.getHeight() == 1 + Math.max(leftHeight, rightHeight), "the height of " + key);
+		check(Math.abs(leftHeight - rightHeight) <= 1, "the balance of " + key + " is " + (leftHeight - rightHeight));
+		check(node.getSize() == 1 + size(node.getLeft()) + size(node.getRight()), "the size of " + key);
+		return node.getHeight();
+	}
+
+	private static int size(AVLTree.IAVLNode node) {
+		return ((node == null) || !node.isRealNode()) ? 0 : node.getSize();
+	}
+
+	/**
+	 * private static void checkConcurrent(AVLTree.ConcurrentAVLTree tree, Set<Integer> expected)
+	 *
+	 * checks, while no one changes the tree, that it holds exactly the expected keys in order,
+	 * and that every node has the height of its higher son + 1, sons whose heights differ by
+	 * at most 1, a parent link to its parent, a version that is neither unlinked nor shrinking,
+	 * and a value unless it is a routing node with two sons
+	 */
+	private static void checkConcurrent(AVLTree.ConcurrentAVLTree tree, Set<Integer> expected) throws ReflectiveOperationException {
+		Object holder = CONCURRENT_HOLDER.get(tree);
+		List<Integer> keys = new ArrayList<>();
+		walkConcurrent(NODE_RIGHT.get(holder), holder, keys);
+		check(keys.equals(new ArrayList<>(expected)), "the tree holds " + keys.size() + " keys instead of " + expected.size());
+		int[] array = tree.keysToArray();
+		check(array.length == keys.size(), "keysToArray has " + array.length + " keys");
+		for(int i = 0; i < array.length; i++) {
+			check(array[i] == keys.get(i), "keysToArray differs at " + i);
+		}
+		check(tree.size() == keys.size(), "size " + tree.size() + " instead of " + keys.size());
+	}
+
+	private static int walkConcurrent(Object node, Object parent, List<Integer> keys) throws ReflectiveOperationException {
+		if(node == null) {
+			return 0;
+		}
+		int key = NODE_KEY.getInt(node);
+		check(NODE_PARENT.get(node) == parent, "the parent link of " + key);
+		check((NODE_VERSION.getLong(node) & 3) == 0, "the version of " + key + " is unlinked or shrinking");
+		Object left = NODE_LEFT.get(node);
+		Object right = NODE_RIGHT.get(node);
+		int leftHeight = walkConcurrent(left, node, keys);
+		if(NODE_VALUE.get(node) != null) {
+			keys.add(key);
+		}
+		else {
+			check((left != null) && (right != null), "the routing node " + key + " has less than two sons");
+		}
+		int rightHeight = walkConcurrent(right, node, keys);
+		int height = NODE_HEIGHT.getInt(node);
+		check(height == 1 + Math.max(leftHeight, rightHeight), "the height of " + key);
+		check(Math.abs(leftHeight - rightHeight) <= 1, "the balance of " + key + " is " + (leftHeight - rightHeight));
+		return height;
+	}
+
+	/**
+	 * private static Field field(String type, String name)
+	 *
+	 * returns the private field name of the class type, since the invariants are private to the tree
+	 */
+	private static Field field(String type, String name) {
+		try {
+			Field field = Class.forName(type).getDeclaredField(name);
+			field.setAccessible(true);
+			return field;
+		}
+		catch(ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * private static void run(List<Runnable> tasks)
+	 *
+	 * runs the tasks in threads of their own and rethrows the first failure
+	 */
+	private static void run(List<Runnable> tasks) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for(Runnable task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for(Future<?> future : futures) {
+				future.get();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void check(boolean condition, String failure) {
+		if(!condition) {
+			throw new AssertionError(failure);
+		}
+	}
+}